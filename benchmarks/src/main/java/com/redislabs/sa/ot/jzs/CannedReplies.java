@@ -0,0 +1,83 @@
+package com.redislabs.sa.ot.jzs;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Builds RESP encoded replies that look like the ones redis sends for Query2 and for the aggregation
+ * so the client-side decoding can be benchmarked without a server
+ * The values are taken from documents created by JsonZewActivityBuilder
+ */
+final class CannedReplies {
+
+    private CannedReplies(){}
+
+    /**
+     * FT.SEARCH reply for Query2 (dialect 2): total, then key and field/value array for every document
+     * @param documents
+     * @return byte[]
+     */
+    static byte[] query2SearchReply(int documents){
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        array(out,1+documents*2);
+        integer(out,documents*10L);
+        for(int d=0;d<documents;d++){
+            JSONObject doc = JsonZewActivityBuilder.createFakeJsonZewActivityObject();
+            JSONArray times = doc.getJSONArray("times");
+            bulk(out,"zew:activities:"+(d+1));
+            array(out,16);
+            bulk(out,"location"); bulk(out,doc.getString("location"));
+            bulk(out,"first_event_time"); bulk(out,times.getJSONObject(0).getString("civilian"));
+            bulk(out,"all_times"); bulk(out,times.toString());
+            bulk(out,"matched_times"); bulk(out,times.getJSONObject(0).toString());
+            bulk(out,"days"); bulk(out,doc.getJSONArray("days").toString());
+            bulk(out,"hosts"); bulk(out,doc.getJSONObject("responsible_parties").getJSONArray("hosts").toString());
+            bulk(out,"event_name"); bulk(out,doc.getString("name"));
+            bulk(out,"hosts_size"); bulk(out,String.valueOf(doc.getJSONObject("responsible_parties").getInt("number_of_contacts")));
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * FT.AGGREGATE reply for the GROUPBY @cost @location @event_name REDUCE COUNT aggregation
+     * @param rows
+     * @return byte[]
+     */
+    static byte[] aggregationReply(int rows){
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        array(out,1+rows);
+        integer(out,rows);
+        for(int r=0;r<rows;r++){
+            JSONObject doc = JsonZewActivityBuilder.createFakeJsonZewActivityObject();
+            array(out,8);
+            bulk(out,"cost"); bulk(out,String.valueOf(doc.get("cost")));
+            bulk(out,"location"); bulk(out,doc.getString("location"));
+            bulk(out,"event_name"); bulk(out,doc.getString("name"));
+            bulk(out,"event_match_count"); bulk(out,String.valueOf(r%7+1));
+        }
+        return out.toByteArray();
+    }
+
+    private static void array(ByteArrayOutputStream out,int size){
+        write(out,"*"+size+"\r\n");
+    }
+
+    private static void integer(ByteArrayOutputStream out,long value){
+        write(out,":"+value+"\r\n");
+    }
+
+    private static void bulk(ByteArrayOutputStream out,String value){
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        write(out,"$"+bytes.length+"\r\n");
+        out.write(bytes,0,bytes.length);
+        write(out,"\r\n");
+    }
+
+    private static void write(ByteArrayOutputStream out,String s){
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.write(bytes,0,bytes.length);
+    }
+}
@@ -0,0 +1,36 @@
+package com.redislabs.sa.ot.jzs;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of creating one fake activity document - as done millions of times by the --quantity loader
+ * Run with -prof gc to see the allocation rate per document as well as the time
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class GeneratorBenchmark {
+
+    @Benchmark
+    public JSONObject builderJsonObject(){
+        return JsonZewActivityBuilder.createFakeJsonZewActivityObject();
+    }
+
+    // what the loader actually sends: the document serialized to bytes
+    @Benchmark
+    public byte[] builderJsonBytes(){
+        return JsonZewActivityBuilder.createFakeJsonZewActivityObject().toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] fastGeneratorJsonBytes(){
+        return FastJsonZewActivityGenerator.createFakeJsonZewActivityBytes();
+    }
+}
@@ -0,0 +1,56 @@
+package com.redislabs.sa.ot.jzs;
+
+import org.openjdk.jmh.annotations.*;
+import redis.clients.jedis.CommandArguments;
+import redis.clients.jedis.search.Query;
+import redis.clients.jedis.search.SearchProtocol;
+import redis.clients.jedis.search.aggr.AggregationBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of building each of the ZewQueries (Query / FieldName / AggregationBuilder objects)
+ * and of encoding them into the arguments Jedis writes to the socket
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class QueryBuildBenchmark {
+
+    private static final String INDEX_ALIAS_NAME = "idxa_zew_events";
+
+    @Param({ZewQueries.DIALECT3, ZewQueries.QUERY1, ZewQueries.QUERY2, ZewQueries.QUERY3, ZewQueries.AGGREGATION})
+    public String queryName;
+
+    @Param({"3"})
+    public int limit;
+
+    @Benchmark
+    public Object build(){
+        return buildQuery();
+    }
+
+    @Benchmark
+    public CommandArguments buildAndEncode(){
+        Object q = buildQuery();
+        if(q instanceof AggregationBuilder){
+            return new CommandArguments(SearchProtocol.SearchCommand.AGGREGATE).add(INDEX_ALIAS_NAME)
+                    .addObjects(((AggregationBuilder)q).getArgs());
+        }
+        return new CommandArguments(SearchProtocol.SearchCommand.SEARCH).add(INDEX_ALIAS_NAME)
+                .addParams((Query)q);
+    }
+
+    private Object buildQuery(){
+        switch (queryName){
+            case ZewQueries.DIALECT3: return ZewQueries.dialect3Query(limit,2);
+            case ZewQueries.QUERY1: return ZewQueries.query1(limit,2);
+            case ZewQueries.QUERY2: return ZewQueries.query2(limit,2);
+            case ZewQueries.QUERY3: return ZewQueries.query3(limit,2);
+            default: return ZewQueries.aggregation(2);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.redislabs.sa.ot.jzs;
+
+import org.openjdk.jmh.annotations.*;
+import redis.clients.jedis.Protocol;
+import redis.clients.jedis.search.Query;
+import redis.clients.jedis.search.SearchResult;
+import redis.clients.jedis.search.aggr.AggregationResult;
+import redis.clients.jedis.util.RedisInputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Client-side cost of turning a reply into results, measured against canned RESP replies (no server needed):
+ *  - respParse: reading the raw RESP reply into byte[] / List objects
+ *  - decode: respParse plus building the SearchResult / AggregationResult
+ *  - decodeTyped: respParse plus ActivityResultDecoder filling ZewActivity records (no SearchResult / Document maps)
+ *  - decodeAndPrint: decode plus what Main.printResultsToScreen / printAggregateResultsToScreen do (written to a null stream)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ResultDecodeBenchmark {
+
+    @Param({"3","100","1000"})
+    public int resultCount;
+
+    private byte[] searchReply;
+    private byte[] aggregationReply;
+    private PrintStream nullOut;
+    private ActivityResultDecoder typedDecoder;
+
+    @Setup
+    public void setup(){
+        searchReply = CannedReplies.query2SearchReply(resultCount);
+        aggregationReply = CannedReplies.aggregationReply(resultCount);
+        nullOut = new PrintStream(OutputStream.nullOutputStream());
+        typedDecoder = new ActivityResultDecoder(new Query("*"));
+    }
+
+    @Benchmark
+    public Object searchRespParse(){
+        return read(searchReply);
+    }
+
+    @Benchmark
+    public SearchResult searchDecode(){
+        return decodeSearch();
+    }
+
+    @Benchmark
+    public List<ZewActivity> searchDecodeTyped(){
+        return typedDecoder.decode(read(searchReply));
+    }
+
+    @Benchmark
+    public void searchDecodeAndPrint(){
+        Main.printResults(nullOut,ZewQueries.QUERY2_QUERY,decodeSearch(),resultCount);
+    }
+
+    @Benchmark
+    public Object aggregationRespParse(){
+        return read(aggregationReply);
+    }
+
+    @Benchmark
+    public AggregationResult aggregationDecode(){
+        return new AggregationResult(read(aggregationReply));
+    }
+
+    @Benchmark
+    public void aggregationDecodeAndPrint(){
+        Main.printAggregateResults(nullOut,ZewQueries.AGGREGATION_DISPLAY,new AggregationResult(read(aggregationReply)));
+    }
+
+    private SearchResult decodeSearch(){
+        return new SearchResult.SearchResultBuilder(true,false,false,true).build(read(searchReply));
+    }
+
+    private static Object read(byte[] reply){
+        return Protocol.read(new RedisInputStream(new ByteArrayInputStream(reply)));
+    }
+}
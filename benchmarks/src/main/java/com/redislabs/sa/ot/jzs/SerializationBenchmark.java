@@ -0,0 +1,74 @@
+package com.redislabs.sa.ot.jzs;
+
+import com.google.gson.Gson;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serializing the same activity document with org.json (what jsonSet does today) and with Gson (already a dependency)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SerializationBenchmark {
+
+    private final Gson gson = new Gson();
+    private JSONObject jsonObject;
+    private Map<String,Object> map;
+    private ZewActivity pojo;
+
+    @Setup
+    public void setup(){
+        jsonObject = JsonZewActivityBuilder.createFakeJsonZewActivityObject();
+        map = jsonObject.toMap();
+        pojo = gson.fromJson(jsonObject.toString(),ZewActivity.class);
+    }
+
+    @Benchmark
+    public String orgJsonObject(){
+        return jsonObject.toString();
+    }
+
+    @Benchmark
+    public String gsonMap(){
+        return gson.toJson(map);
+    }
+
+    @Benchmark
+    public String gsonPojo(){
+        return gson.toJson(pojo);
+    }
+
+    // plain classes with the same shape as the generated documents (field names match the JSON keys)
+    static class ZewActivity{
+        String name;
+        double cost;
+        String location;
+        List<Time> times;
+        List<String> days;
+        ResponsibleParties responsible_parties;
+    }
+
+    static class Time{
+        String military;
+        String civilian;
+    }
+
+    static class ResponsibleParties{
+        int number_of_contacts;
+        List<Host> hosts;
+    }
+
+    static class Host{
+        String name;
+        String phone;
+        String email;
+    }
+}
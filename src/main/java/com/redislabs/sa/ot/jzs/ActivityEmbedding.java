@@ -0,0 +1,105 @@
+package com.redislabs.sa.ot.jzs;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Builds the description of an activity and turns any text into a fixed-dimension vector - locally and deterministically, no model involved.
+ * The vector is a hashed bag of words: every word and every pair of neighbouring words is hashed (FNV-1a, then SplitMix64)
+ * to a few dimensions with a +/- sign and the result is L2 normalized. Texts that share words end up close in cosine distance,
+ * so "meet and pet the giraffe" lands next to the Giraffe Petting activities.
+ * The same text always gives the same vector (in any JVM) - so seeded datasets and their query vectors are reproducible.
+ */
+class ActivityEmbedding {
+
+    static final int DEFAULT_DIMENSION = 64;
+    static final String FIELD = "embedding";
+    private static final int HASHES_PER_FEATURE = 2;
+    private static final float PAIR_WEIGHT = 0.5f;
+    private static final Set<String> STOP_WORDS = new HashSet<>(Arrays.asList("a","an","and","at","the","of","to","with","all","about","how"));
+
+    // one phrase per JsonZewActivityBuilder.activityTypes entry (same order)
+    static final String[] ACTIVITY_PHRASES = {"Watch the keepers feed the","See how the keepers train the","A live show starring the",
+            "A keeper's talk all about the","A documentary about the","Meet and pet the","Take a ride with the"};
+
+    /**
+     * @param activityIndex index into JsonZewActivityBuilder.activityTypes
+     * @param species
+     * @param location
+     * @return the description both generators write to $.description
+     */
+    static String describe(int activityIndex,String species,String location){
+        return ACTIVITY_PHRASES[activityIndex%ACTIVITY_PHRASES.length]+" "+species+" at the "+location;
+    }
+
+    /**
+     * @param text
+     * @param dimension
+     * @return a unit length vector (all zeros if the text holds no words)
+     */
+    static float[] embed(String text,int dimension){
+        float[] vector = new float[dimension];
+        String previous = null;
+        for(String word:text.toLowerCase(Locale.ROOT).split("[^a-z0-9]+")){
+            if(word.isEmpty()||STOP_WORDS.contains(word)){
+                continue;
+            }
+            add(vector,word,1.0f);
+            if(previous!=null){
+                add(vector,previous+" "+word,PAIR_WEIGHT);
+            }
+            previous = word;
+        }
+        double norm = 0;
+        for(float f:vector){
+            norm+=f*f;
+        }
+        if(norm>0){
+            float scale = (float)(1.0/Math.sqrt(norm));
+            for(int i=0;i<vector.length;i++){
+                vector[i]*=scale;
+            }
+        }
+        return vector;
+    }
+
+    private static void add(float[] vector,String feature,float weight){
+        long hash = 0xcbf29ce484222325L;
+        for(byte b:feature.getBytes(StandardCharsets.UTF_8)){
+            hash = (hash^(b&0xff))*0x100000001b3L;
+        }
+        for(int i=0;i<HASHES_PER_FEATURE;i++){
+            long h = FastJsonZewActivityGenerator.mix(hash+i);
+            vector[(int)((h>>>1)%vector.length)]+=(h&1)==0?weight:-weight;
+        }
+    }
+
+    /**
+     * @param vector
+     * @return the FLOAT32 little-endian blob a KNN query takes as its vector parameter
+     */
+    static byte[] toBlob(float[] vector){
+        ByteBuffer blob = ByteBuffer.allocate(vector.length*4).order(ByteOrder.LITTLE_ENDIAN);
+        for(float f:vector){
+            blob.putFloat(f);
+        }
+        return blob.array();
+    }
+
+    /**
+     * @param vector
+     * @return the vector as a JSON array - the form a JSON document stores it in
+     */
+    static String toJson(float[] vector){
+        StringBuilder sb = new StringBuilder(vector.length*12).append('[');
+        for(int i=0;i<vector.length;i++){
+            sb.append(i>0?",":"").append(vector[i]);
+        }
+        return sb.append(']').toString();
+    }
+}
@@ -0,0 +1,418 @@
+package com.redislabs.sa.ot.jzs;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import redis.clients.jedis.search.Query;
+import redis.clients.jedis.util.SafeEncoder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Decodes raw FT.SEARCH replies (as read off the wire by Jedis - nested lists of byte[]) without going through
+ * SearchResult / Document, so no per-document property HashMap is built and no value is turned into a String
+ * unless it is actually used. Two ways to consume a reply:
+ *  - visit(): hands every document key and every returned field (name and value as bytes) to a FieldVisitor
+ *  - decode(): fills one ZewActivity per document and hands it to a Consumer (or returns them as a list)
+ * Returned JSON fragments (days, times, hosts, the whole document as $) are read with Gson's streaming JsonReader:
+ * values are copied straight into the typed records and everything else is skipped without being materialised.
+ * Dialect 3 wraps every JSONPath result in an extra array - nested arrays are flattened so both dialects decode the same way.
+ * Fields with no decoder (for example $.description) are ignored without being parsed - only() restricts the decoders further.
+ */
+class ActivityResultDecoder {
+
+    /**
+     * Receives the documents of a reply one field at a time
+     */
+    interface FieldVisitor{
+        /**
+         * @param key
+         * @return false to skip this document's fields
+         */
+        boolean startDocument(byte[] key);
+
+        /**
+         * @param name the field name (an alias such as event_name or a JSONPath such as $.days)
+         * @param value the raw value - may be null
+         */
+        void field(byte[] name,byte[] value);
+
+        void endDocument();
+    }
+
+    @FunctionalInterface
+    private interface FieldDecoder{
+        void decode(byte[] value,ZewActivity into) throws IOException;
+    }
+
+    private static final byte[][] ALL_NAMES;
+    private static final FieldDecoder[] ALL_DECODERS;
+    static {
+        List<byte[]> names = new ArrayList<>();
+        List<FieldDecoder> decoders = new ArrayList<>();
+        FieldDecoder eventName = (v,a) -> a.eventName = text(v);
+        FieldDecoder location = (v,a) -> a.location = text(v);
+        FieldDecoder cost = (v,a) -> a.cost = number(v);
+        FieldDecoder days = (v,a) -> readStrings(reader(v),a.days);
+        FieldDecoder contacts = (v,a) -> a.numberOfContacts = (int) number(v);
+        FieldDecoder times = (v,a) -> times(v,a.times,true);
+        FieldDecoder civilian = (v,a) -> times(v,a.times,true);
+        FieldDecoder military = (v,a) -> times(v,a.times,false);
+        FieldDecoder matchedTimes = (v,a) -> times(v,a.matchedTimes,false);
+        FieldDecoder hosts = (v,a) -> hosts(v,a.hosts,null);
+        FieldDecoder matchedHosts = (v,a) -> hosts(v,a.matchedHosts,null);
+        FieldDecoder emails = (v,a) -> hosts(v,a.hosts,"email");
+        FieldDecoder phones = (v,a) -> hosts(v,a.hosts,"phone");
+        FieldDecoder document = (v,a) -> readDocument(reader(v),a);
+        register(names,decoders,eventName,"event_name","$.name");
+        register(names,decoders,location,"location","$.location","EVENT_LOCATION");
+        register(names,decoders,cost,"cost","$.cost","cost_in_us_dollars");
+        register(names,decoders,days,"days","$.days");
+        register(names,decoders,contacts,"hosts_size","$.responsible_parties.number_of_contacts");
+        register(names,decoders,times,"all_times","$.times");
+        register(names,decoders,civilian,"civilian","first_event_time");
+        register(names,decoders,military,"military");
+        register(names,decoders,matchedTimes,"matched_times");
+        register(names,decoders,hosts,"hosts","$.responsible_parties.hosts");
+        register(names,decoders,matchedHosts,"matched_party_by_name");
+        register(names,decoders,emails,"contact_email");
+        register(names,decoders,phones,"contact_phone");
+        register(names,decoders,document,"$");
+        ALL_NAMES = names.toArray(new byte[0][]);
+        ALL_DECODERS = decoders.toArray(new FieldDecoder[0]);
+    }
+
+    private final boolean hasScores;
+    private final boolean hasPayloads;
+    private final byte[][] names;
+    private final FieldDecoder[] decoders;
+
+    /**
+     * @param query the query the replies belong to (WITHSCORES / WITHPAYLOADS change the reply layout)
+     */
+    ActivityResultDecoder(Query query){
+        this(query.getWithScores(),query.getWithPayloads(),ALL_NAMES,ALL_DECODERS);
+        if(query.getNoContent()){
+            throw new IllegalArgumentException("NOCONTENT replies have no fields to decode");
+        }
+    }
+
+    private ActivityResultDecoder(boolean hasScores,boolean hasPayloads,byte[][] names,FieldDecoder[] decoders){
+        this.hasScores = hasScores;
+        this.hasPayloads = hasPayloads;
+        this.names = names;
+        this.decoders = decoders;
+    }
+
+    /**
+     * @param fieldNames the returned fields that should be decoded - all others are skipped
+     * @return a decoder for the same reply layout that only decodes the given fields
+     */
+    ActivityResultDecoder only(String... fieldNames){
+        List<byte[]> keptNames = new ArrayList<>();
+        List<FieldDecoder> keptDecoders = new ArrayList<>();
+        for(String fieldName:fieldNames){
+            byte[] encoded = SafeEncoder.encode(fieldName);
+            for(int i=0;i<names.length;i++){
+                if(Arrays.equals(names[i],encoded)){
+                    keptNames.add(names[i]);
+                    keptDecoders.add(decoders[i]);
+                }
+            }
+        }
+        return new ActivityResultDecoder(hasScores,hasPayloads,keptNames.toArray(new byte[0][]),keptDecoders.toArray(new FieldDecoder[0]));
+    }
+
+    /**
+     * @param rawReply
+     * @return the total number of matches reported by the server
+     */
+    long visit(Object rawReply,FieldVisitor visitor){
+        List<?> reply = (List<?>) rawReply;
+        int step = 2+(hasScores?1:0)+(hasPayloads?1:0);
+        for(int i=1;i+step-1<reply.size();i+=step){
+            if(!visitor.startDocument((byte[]) reply.get(i))){
+                continue;
+            }
+            List<?> fields = (List<?>) reply.get(i+step-1);
+            if(fields!=null){
+                for(int f=0;f+1<fields.size();f+=2){
+                    visitor.field((byte[]) fields.get(f),(byte[]) fields.get(f+1));
+                }
+            }
+            visitor.endDocument();
+        }
+        return (Long) reply.get(0);
+    }
+
+    /**
+     * @param rawReply
+     * @param consumer receives one ZewActivity per document, in reply order
+     * @return the total number of matches reported by the server
+     */
+    long decode(Object rawReply,Consumer<ZewActivity> consumer){
+        return visit(rawReply,new FieldVisitor() {
+            ZewActivity current;
+
+            @Override
+            public boolean startDocument(byte[] key){
+                current = new ZewActivity();
+                current.key = SafeEncoder.encode(key);
+                return true;
+            }
+
+            @Override
+            public void field(byte[] name,byte[] value){
+                if(value==null){
+                    return;
+                }
+                for(int i=0;i<names.length;i++){
+                    if(Arrays.equals(names[i],name)){
+                        try {
+                            decoders[i].decode(value,current);
+                        }catch(IOException|IllegalStateException|NumberFormatException e){
+                            throw new UncheckedIOException(new IOException("Could not decode "+SafeEncoder.encode(name)+" of "+current.key,e));
+                        }
+                        return;
+                    }
+                }
+            }
+
+            @Override
+            public void endDocument(){
+                consumer.accept(current);
+            }
+        });
+    }
+
+    List<ZewActivity> decode(Object rawReply){
+        List<ZewActivity> activities = new ArrayList<>();
+        decode(rawReply,activities::add);
+        return activities;
+    }
+
+    private static void register(List<byte[]> names,List<FieldDecoder> decoders,FieldDecoder decoder,String... fieldNames){
+        for(String fieldName:fieldNames){
+            names.add(SafeEncoder.encode(fieldName));
+            decoders.add(decoder);
+        }
+    }
+
+    private static JsonReader reader(byte[] value){
+        JsonReader reader = new JsonReader(new InputStreamReader(new ByteArrayInputStream(value),StandardCharsets.UTF_8));
+        reader.setLenient(true);
+        return reader;
+    }
+
+    private static boolean isJson(byte[] value){
+        return value.length>0&&(value[0]=='"'||value[0]=='['||value[0]=='{');
+    }
+
+    // plain text for indexed attributes - a JSON string or array when a JSONPath was returned
+    private static String text(byte[] value) throws IOException{
+        if(!isJson(value)){
+            return SafeEncoder.encode(value);
+        }
+        List<String> strings = new ArrayList<>(1);
+        readStrings(reader(value),strings);
+        return strings.isEmpty()?null:strings.get(0);
+    }
+
+    private static double number(byte[] value) throws IOException{
+        if(!isJson(value)){
+            return Double.parseDouble(SafeEncoder.encode(value));
+        }
+        List<String> strings = new ArrayList<>(1);
+        readStrings(reader(value),strings);
+        return strings.isEmpty()?Double.NaN:Double.parseDouble(strings.get(0));
+    }
+
+    // dialect 2 returns only the first match of a multi-value JSONPath - as plain text
+    private static void times(byte[] value,List<ZewActivity.EventTime> times,boolean stringsAreCivilian) throws IOException{
+        if(isJson(value)){
+            readTimes(reader(value),times,0,stringsAreCivilian);
+        }else if(stringsAreCivilian){
+            ZewActivity.timeAt(times,0).civilian = SafeEncoder.encode(value);
+        }else{
+            ZewActivity.timeAt(times,0).military = SafeEncoder.encode(value);
+        }
+    }
+
+    private static void hosts(byte[] value,List<ZewActivity.Host> hosts,String stringField) throws IOException{
+        if(isJson(value)){
+            readHosts(reader(value),hosts,0,stringField);
+        }else if("email".equals(stringField)){
+            ZewActivity.hostAt(hosts,0).email = SafeEncoder.encode(value);
+        }else if("phone".equals(stringField)){
+            ZewActivity.hostAt(hosts,0).phone = SafeEncoder.encode(value);
+        }
+    }
+
+    private static void readStrings(JsonReader reader,List<String> into) throws IOException{
+        JsonToken token = reader.peek();
+        if(token==JsonToken.BEGIN_ARRAY){
+            reader.beginArray();
+            while(reader.hasNext()){
+                readStrings(reader,into);
+            }
+            reader.endArray();
+        }else if(token==JsonToken.STRING||token==JsonToken.NUMBER){
+            into.add(reader.nextString());
+        }else{
+            reader.skipValue();
+        }
+    }
+
+    private static String nextStringOrNull(JsonReader reader) throws IOException{
+        if(reader.peek()==JsonToken.NULL){
+            reader.nextNull();
+            return null;
+        }
+        if(reader.peek()==JsonToken.STRING||reader.peek()==JsonToken.NUMBER){
+            return reader.nextString();
+        }
+        reader.skipValue();
+        return null;
+    }
+
+    /**
+     * Reads time objects ({military, civilian}) or bare time strings into times - the n-th value read goes to the n-th EventTime
+     * @return the index the next value goes to
+     */
+    private static int readTimes(JsonReader reader,List<ZewActivity.EventTime> times,int index,boolean stringsAreCivilian) throws IOException{
+        JsonToken token = reader.peek();
+        if(token==JsonToken.BEGIN_ARRAY){
+            reader.beginArray();
+            while(reader.hasNext()){
+                index = readTimes(reader,times,index,stringsAreCivilian);
+            }
+            reader.endArray();
+            return index;
+        }
+        if(token==JsonToken.BEGIN_OBJECT){
+            ZewActivity.EventTime time = ZewActivity.timeAt(times,index);
+            reader.beginObject();
+            while(reader.hasNext()){
+                String name = reader.nextName();
+                if("military".equals(name)){
+                    time.military = nextStringOrNull(reader);
+                }else if("civilian".equals(name)){
+                    time.civilian = nextStringOrNull(reader);
+                }else{
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            return index+1;
+        }
+        if(token==JsonToken.STRING||token==JsonToken.NUMBER){
+            ZewActivity.EventTime time = ZewActivity.timeAt(times,index);
+            if(stringsAreCivilian){
+                time.civilian = reader.nextString();
+            }else{
+                time.military = reader.nextString();
+            }
+            return index+1;
+        }
+        reader.skipValue();
+        return index;
+    }
+
+    /**
+     * Reads host objects ({name, phone, email}) or - when stringField is given - bare strings for that one attribute
+     * @return the index the next value goes to
+     */
+    private static int readHosts(JsonReader reader,List<ZewActivity.Host> hosts,int index,String stringField) throws IOException{
+        JsonToken token = reader.peek();
+        if(token==JsonToken.BEGIN_ARRAY){
+            reader.beginArray();
+            while(reader.hasNext()){
+                index = readHosts(reader,hosts,index,stringField);
+            }
+            reader.endArray();
+            return index;
+        }
+        if(token==JsonToken.BEGIN_OBJECT){
+            ZewActivity.Host host = ZewActivity.hostAt(hosts,index);
+            reader.beginObject();
+            while(reader.hasNext()){
+                String name = reader.nextName();
+                if("name".equals(name)){
+                    host.name = nextStringOrNull(reader);
+                }else if("phone".equals(name)){
+                    host.phone = nextStringOrNull(reader);
+                }else if("email".equals(name)){
+                    host.email = nextStringOrNull(reader);
+                }else{
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            return index+1;
+        }
+        if(stringField!=null&&(token==JsonToken.STRING||token==JsonToken.NUMBER)){
+            ZewActivity.Host host = ZewActivity.hostAt(hosts,index);
+            if("email".equals(stringField)){
+                host.email = reader.nextString();
+            }else{
+                host.phone = reader.nextString();
+            }
+            return index+1;
+        }
+        reader.skipValue();
+        return index;
+    }
+
+    // the whole document (returned as $ when a query has no RETURN clause)
+    private static void readDocument(JsonReader reader,ZewActivity into) throws IOException{
+        if(reader.peek()==JsonToken.BEGIN_ARRAY){
+            reader.beginArray();
+            if(reader.hasNext()){
+                readDocument(reader,into);
+            }
+            while(reader.hasNext()){
+                reader.skipValue();
+            }
+            reader.endArray();
+            return;
+        }
+        reader.beginObject();
+        while(reader.hasNext()){
+            String name = reader.nextName();
+            if("name".equals(name)){
+                into.eventName = nextStringOrNull(reader);
+            }else if("location".equals(name)){
+                into.location = nextStringOrNull(reader);
+            }else if("cost".equals(name)){
+                into.cost = reader.nextDouble();
+            }else if("days".equals(name)){
+                readStrings(reader,into.days);
+            }else if("times".equals(name)){
+                readTimes(reader,into.times,0,true);
+            }else if("responsible_parties".equals(name)){
+                reader.beginObject();
+                while(reader.hasNext()){
+                    String partiesName = reader.nextName();
+                    if("number_of_contacts".equals(partiesName)){
+                        into.numberOfContacts = reader.nextInt();
+                    }else if("hosts".equals(partiesName)){
+                        readHosts(reader,into.hosts,0,null);
+                    }else{
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            }else{
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+}
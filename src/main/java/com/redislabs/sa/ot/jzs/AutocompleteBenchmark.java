@@ -0,0 +1,128 @@
+package com.redislabs.sa.ot.jzs;
+
+import org.HdrHistogram.Histogram;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+/**
+ * Replays what people typing into a search box send - for a randomly chosen word: its first letter, first two letters ...
+ * up to the whole word - without needing anyone at the keyboard.
+ * Each keystroke is one lookup. The same stream can be replayed against different lookup functions
+ * (FT.SUGGET on the server or the SuggestionPrefixCache) so their latencies can be compared.
+ * As in QueryLoadGenerator a targetRate > 0 gives every lookup an intended start time and latency is measured from it,
+ * a targetRate of 0 sends the next lookup as soon as the previous one returns.
+ * A failed lookup (e.g. while a replica is marked down) is counted as an error and the replay goes on.
+ */
+class AutocompleteBenchmark {
+
+    static final String TABLE_HEADER = LatencyStats.HEADER+String.format(" %8s","errors");
+
+    private final List<String> words;
+    private final int threadCount;
+    private final double targetRate;
+    private final long warmupNanos;
+    private final long measureNanos;
+
+    AutocompleteBenchmark(List<String> words,int threadCount,double targetRate,int warmupSeconds,int measureSeconds){
+        this.words = words;
+        this.threadCount = Math.max(1,threadCount);
+        this.targetRate = targetRate;
+        this.warmupNanos = TimeUnit.SECONDS.toNanos(warmupSeconds);
+        this.measureNanos = TimeUnit.SECONDS.toNanos(measureSeconds);
+    }
+
+    /**
+     * @param name shown in the results row
+     * @param lookup prefix -> suggestions
+     * @return the row for TABLE_HEADER
+     */
+    String run(String name,Function<String,List<String>> lookup){
+        System.out.println("Replaying keystrokes against "+name+" with "+threadCount+" threads "+
+                (targetRate>0?"at a target rate of "+targetRate+" lookups/sec":"in closed-loop mode")+" ...");
+        ExecutorService threadPool = Executors.newFixedThreadPool(threadCount);
+        long startTime = System.nanoTime();
+        List<Future<WorkerResults>> futures = new ArrayList<>();
+        for(int t=0;t<threadCount;t++){
+            futures.add(threadPool.submit(() -> replay(startTime,lookup)));
+        }
+        WorkerResults totals = new WorkerResults();
+        try {
+            for (Future<WorkerResults> f : futures) {
+                try {
+                    totals.add(f.get());
+                }catch(ExecutionException ee){
+                    System.out.println("Autocomplete worker failed: "+ee.getCause());
+                }
+            }
+        }catch(InterruptedException ie){
+            Thread.currentThread().interrupt();
+        }finally {
+            threadPool.shutdown();
+        }
+        return LatencyStats.row(name,totals.latencies,measureNanos/1_000_000_000.0)+String.format(" %8d",totals.errors);
+    }
+
+    private WorkerResults replay(long startTime,Function<String,List<String>> lookup){
+        WorkerResults results = new WorkerResults();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long warmupEnd = startTime+warmupNanos;
+        long measureEnd = warmupEnd+measureNanos;
+        long intervalNanos = targetRate>0 ? (long)(TimeUnit.SECONDS.toNanos(1)*threadCount/targetRate) : 0;
+        long nextIntendedStart = startTime+(intervalNanos>0?random.nextLong(intervalNanos):0);
+        String word = "";
+        int typed = 0;
+        while(true){
+            if(typed>=word.length()){
+                word = words.get(random.nextInt(words.size()));
+                typed = 0;
+            }
+            typed++;
+            long intendedStart;
+            if(intervalNanos>0){
+                intendedStart = nextIntendedStart;
+                nextIntendedStart+=intervalNanos;
+                long wait;
+                while((wait = intendedStart-System.nanoTime())>0){
+                    LockSupport.parkNanos(wait);
+                }
+            }else{
+                intendedStart = System.nanoTime();
+            }
+            if(intendedStart>=measureEnd){
+                break;
+            }
+            try {
+                lookup.apply(word.substring(0,typed));
+            }catch(RuntimeException re){
+                if(intendedStart>=warmupEnd){
+                    results.errors++;
+                }
+                continue;
+            }
+            if(intendedStart>=warmupEnd){
+                results.latencies.recordValue(System.nanoTime()-intendedStart);
+            }
+        }
+        return results;
+    }
+
+    // each worker records into its own histogram - they are only merged once all workers are done
+    private static class WorkerResults{
+        final Histogram latencies = LatencyStats.newHistogram();
+        long errors = 0;
+
+        void add(WorkerResults other){
+            latencies.add(other.latencies);
+            errors+=other.errors;
+        }
+    }
+}
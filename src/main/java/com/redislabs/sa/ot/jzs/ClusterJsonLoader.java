@@ -0,0 +1,166 @@
+package com.redislabs.sa.ot.jzs;
+
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Protocol;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.json.Path2;
+import redis.clients.jedis.util.JedisClusterCRC16;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+
+/**
+ * Cluster mode counterpart of ParallelJsonLoader.
+ * The slot -> primary node mapping is read from the cluster once, up front, and every key under the prefix
+ * is assigned to the node that owns its hash slot. Each primary node then gets its own writer thread and its own pipeline,
+ * so all shards are written to in parallel and no pipelined command has to be redirected.
+ * Commands rejected by a node (MOVED / ASK after a resharding started mid-load) are counted and reported - rerun the load to fill them in.
+ * To load 2 million documents into a cluster reachable through the node on port 30001:
+ * mvn compile exec:java -Dexec.cleanupDaemonThreads=false -Dexec.args="--host 127.0.0.1 --port 30001 --cluster true --quantity 2000000 --batchsize 500"
+ */
+class ClusterJsonLoader {
+
+    private final ConnectionHelper connectionHelper;
+    private final String keyPrefix;
+    private final IntFunction<byte[]> documentSource;
+    private final int batchSize;
+    private final AtomicLong objectsStillToGo = new AtomicLong();
+
+    /**
+     * @param documentSource returns the serialized JSON for the document stored under keyPrefix+keyNumber, with keyNumber as its seq
+     */
+    ClusterJsonLoader(ConnectionHelper connectionHelper,String keyPrefix,IntFunction<byte[]> documentSource,int batchSize){
+        this.connectionHelper = connectionHelper;
+        this.keyPrefix = keyPrefix;
+        this.documentSource = documentSource;
+        this.batchSize = Math.max(1,batchSize);
+    }
+
+    /**
+     * @return the primary node that owns each hash slot (index = slot)
+     */
+    HostAndPort[] slotOwners(){
+        HostAndPort[] owners = new HostAndPort[Protocol.CLUSTER_HASHSLOTS];
+        for(int slot=0;slot<owners.length;slot++){
+            owners[slot] = connectionHelper.clusterConnectionProvider.getNode(slot);
+        }
+        return owners;
+    }
+
+    /**
+     * Writes howManyObjects documents with keys keyPrefix+1 ... keyPrefix+howManyObjects
+     * and prints the throughput achieved against each node and overall
+     * @param howManyObjects
+     */
+    void load(int howManyObjects){
+        objectsStillToGo.set(howManyObjects);
+        HostAndPort[] owners = slotOwners();
+        Map<HostAndPort,Integer> slotsPerNode = new LinkedHashMap<>();
+        int coveredSlots = 0;
+        for(HostAndPort owner:owners){
+            if(owner!=null){
+                slotsPerNode.merge(owner,1,Integer::sum);
+                coveredSlots++;
+            }
+        }
+        System.out.println("Cluster topology ("+slotsPerNode.size()+" primary nodes):");
+        for(Map.Entry<HostAndPort,Integer> node:slotsPerNode.entrySet()){
+            System.out.println("\t"+node.getKey()+" owns "+node.getValue()+" slots");
+        }
+        if(coveredSlots<Protocol.CLUSTER_HASHSLOTS){
+            System.out.println("Warning: not every hash slot is covered - keys in uncovered slots will not be written");
+        }
+        System.out.println("Writing "+howManyObjects+" objects to Redis using one pipeline per node in batches of "+batchSize+" or less...");
+        long startTime = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1,slotsPerNode.size()));
+        List<Future<NodeStats>> futures = new ArrayList<>();
+        for(HostAndPort node:slotsPerNode.keySet()){
+            futures.add(executor.submit(() -> loadNode(node,owners,howManyObjects)));
+        }
+        ParallelJsonLoader.LoadStats overall = new ParallelJsonLoader.LoadStats("overall");
+        long rejected = 0;
+        try {
+            List<NodeStats> perNode = new ArrayList<>();
+            for (Future<NodeStats> f : futures) {
+                perNode.add(f.get());
+            }
+            overall.elapsedNanos = System.nanoTime()-startTime;
+            System.out.println("\n\n\tLoad Results (per node and overall):\n");
+            for(NodeStats stats:perNode){
+                overall.docs+=stats.load.docs;
+                overall.bytes+=stats.load.bytes;
+                rejected+=stats.rejected;
+                System.out.println(stats.load+(stats.rejected>0?"  ("+stats.rejected+" rejected)":""));
+            }
+            System.out.println(overall);
+            if(rejected>0){
+                System.out.println(rejected+" writes were rejected by the cluster (the topology probably changed during the load)");
+            }
+        }catch(Throwable t){
+            System.out.println("Cluster load failed: "+t.getMessage());
+        }finally {
+            executor.shutdown();
+        }
+    }
+
+    // every writer walks the whole key range but only writes the keys whose slot its node owns
+    private NodeStats loadNode(HostAndPort node,HostAndPort[] owners,int howManyObjects){
+        NodeStats stats = new NodeStats(node.toString());
+        long startTime = System.nanoTime();
+        try(Pipeline pipeline = connectionHelper.getPipeline(node)) {
+            int queued = 0;
+            for (int keyNumber = howManyObjects; keyNumber >= 1; keyNumber--) {
+                String key = keyPrefix + keyNumber;
+                if (!node.equals(owners[JedisClusterCRC16.getSlot(key)])) {
+                    continue;
+                }
+                byte[] json = documentSource.apply(keyNumber);
+                pipeline.jsonSet(key, Path2.ROOT_PATH, json);
+                stats.load.bytes += json.length;
+                queued++;
+                if (queued == batchSize) {
+                    stats.sync(pipeline, queued);
+                    queued = 0;
+                }
+            }
+            if (queued > 0) {
+                stats.sync(pipeline, queued);
+            }
+        }
+        stats.load.elapsedNanos = System.nanoTime()-startTime;
+        return stats;
+    }
+
+    private class NodeStats{
+        final ParallelJsonLoader.LoadStats load;
+        long rejected = 0;
+
+        NodeStats(String name){
+            load = new ParallelJsonLoader.LoadStats(name);
+        }
+
+        void sync(Pipeline pipeline,int batchQuantity){
+            int written = 0;
+            for(Object reply:pipeline.syncAndReturnAll()){ // execute batch of JSON Set commands
+                if(reply instanceof JedisDataException){
+                    rejected++;
+                }else{
+                    written++;
+                }
+            }
+            load.docs += written;
+            long remaining = objectsStillToGo.addAndGet(-batchQuantity);
+            if ((remaining + batchQuantity) / 10000 != remaining / 10000) {
+                System.out.print("<" + remaining + " JSON objects still to go> ");
+            }
+        }
+    }
+}
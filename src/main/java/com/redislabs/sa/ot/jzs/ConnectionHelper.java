@@ -0,0 +1,296 @@
+package com.redislabs.sa.ot.jzs;
+
+import org.apache.commons.pool2.impl.GenericObjectPool;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import redis.clients.jedis.CommandArguments;
+import redis.clients.jedis.Connection;
+import redis.clients.jedis.ConnectionFactory;
+import redis.clients.jedis.ConnectionPoolConfig;
+import redis.clients.jedis.DefaultJedisClientConfig;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.JedisClientConfig;
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.JedisPooled;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Transaction;
+import redis.clients.jedis.UnifiedJedis;
+import redis.clients.jedis.providers.ClusterConnectionProvider;
+import redis.clients.jedis.providers.PooledConnectionProvider;
+import redis.clients.jedis.util.JedisClusterCRC16;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+
+class ConnectionHelper{
+
+    final PooledConnectionProvider connectionProvider;
+    final JedisPooled jedisPooled;
+    final ClusterConnectionProvider clusterConnectionProvider;
+    final JedisCluster jedisCluster;
+    final PoolMetrics poolMetrics;
+    final WireMetrics wireMetrics;
+    private final JedisClientConfig clientConfig;
+    private final GenericObjectPoolConfig<Connection> poolConfig;
+
+    /**
+     * Used when you want to send a batch of commands to the Redis Server
+     * Closing the returned Pipeline syncs it and returns its connection to the pool
+     * In cluster mode use getPipelineForKey() or getPipeline(HostAndPort) instead
+     * @return Pipeline
+     */
+    public Pipeline getPipeline(){
+        if(isCluster()){
+            throw new IllegalStateException("A single pipeline cannot reach every node of a cluster - use getPipelineForKey() or getPipeline(HostAndPort)");
+        }
+        return pipelineOn(connectionProvider.getConnection());
+    }
+
+    /**
+     * A pipeline on the connection that serves the given key - the only node involved in cluster mode
+     * @param key
+     * @return Pipeline
+     */
+    public Pipeline getPipelineForKey(String key){
+        return pipelineOn(getConnectionForKey(key));
+    }
+
+    /**
+     * A connection borrowed from the pool that serves the given key (close it to give it back)
+     * @param key
+     * @return Connection
+     */
+    public Connection getConnectionForKey(String key){
+        if(!isCluster()){
+            return connectionProvider.getConnection();
+        }
+        return jedisCluster.getConnectionFromSlot(JedisClusterCRC16.getSlot(key));
+    }
+
+    /**
+     * Cluster mode only: a pipeline on a connection to one particular node
+     * @param node
+     * @return Pipeline
+     */
+    public Pipeline getPipeline(HostAndPort node){
+        return pipelineOn(clusterConnectionProvider.getConnection(node));
+    }
+
+    private static Pipeline pipelineOn(Connection connection){
+        return  new Pipeline(connection){
+            @Override
+            public void close(){
+                try {
+                    super.close();
+                }finally {
+                    connection.close();
+                }
+            }
+        };
+    }
+
+    /**
+     * Assuming use of Jedis 4.3.1:
+     * https://github.com/redis/jedis/blob/82f286b4d1441cf15e32cc629c66b5c9caa0f286/src/main/java/redis/clients/jedis/Transaction.java#L22-L23
+     * @return Transaction
+     */
+    public Transaction getTransaction(){
+        return new Transaction(jedisPooled.getPool().getResource());
+    }
+
+    /**
+     * Obtain the default object used to perform Redis commands
+     * (a JedisCluster in cluster mode - its search commands are routed by the cluster aware command objects)
+     * @return UnifiedJedis
+     */
+    public UnifiedJedis getPooledJedis(){
+        return isCluster() ? jedisCluster : jedisPooled;
+    }
+
+    public boolean isCluster(){
+        return jedisCluster!=null;
+    }
+
+    /**
+     * Use this to build the URI expected in this classes' Constructor
+     * @param host
+     * @param port
+     * @param username
+     * @param password
+     * @return
+     */
+    public static URI buildURI(String host,int port,String username,String password){
+        URI uri = null;
+        try {
+            if (!("".equalsIgnoreCase(password))) {
+                uri = new URI("redis://" + username + ":" + password + "@" + host + ":" + port);
+            } else {
+                uri = new URI("redis://" + host + ":" + port);
+            }
+        } catch (URISyntaxException use) {
+            use.printStackTrace();
+            System.exit(1);
+        }
+        return uri;
+    }
+
+
+    public ConnectionHelper(URI uri){
+        this(uri,false);
+    }
+
+    public ConnectionHelper(URI uri,boolean clusterMode){
+        this(uri,clusterMode,buildPoolConfig(1000,100,1,60000,true));
+    }
+
+    /**
+     * Use this to build the pool configuration expected in this classes' Constructor
+     * (each node gets a pool with these settings in cluster mode)
+     * @param maxTotal
+     * @param maxIdle
+     * @param minIdle
+     * @param maxWaitMillis how long a borrow waits for a free connection before the pool counts as exhausted
+     * @param testOnCreate
+     * @return GenericObjectPoolConfig
+     */
+    public static GenericObjectPoolConfig<Connection> buildPoolConfig(int maxTotal,int maxIdle,int minIdle,long maxWaitMillis,boolean testOnCreate){
+        GenericObjectPoolConfig<Connection> poolConfig = new ConnectionPoolConfig();
+        poolConfig.setMaxIdle(maxIdle);
+        poolConfig.setMaxTotal(maxTotal);
+        poolConfig.setMinIdle(minIdle);
+        poolConfig.setMaxWait(Duration.ofMillis(maxWaitMillis));
+        poolConfig.setTestOnCreate(testOnCreate);
+        poolConfig.setJmxEnabled(true); // commons-pool registers its own MBean for each pool as well
+        poolConfig.setJmxNamePrefix("jzs-pool");
+        return poolConfig;
+    }
+
+    /**
+     * @param uri any one node of the cluster is enough when clusterMode is true - the rest of the topology is discovered
+     * @param clusterMode
+     * @param poolConfig
+     */
+    public ConnectionHelper(URI uri,boolean clusterMode,GenericObjectPoolConfig<Connection> poolConfig){
+        this(uri,clusterMode,poolConfig,null);
+    }
+
+    /**
+     * @param uri
+     * @param clusterMode
+     * @param poolConfig
+     * @param wireMetrics counts the bytes and round trips of every connection (null means no counting - not supported in cluster mode)
+     */
+    public ConnectionHelper(URI uri,boolean clusterMode,GenericObjectPoolConfig<Connection> poolConfig,WireMetrics wireMetrics){
+        HostAndPort address = new HostAndPort(uri.getHost(), uri.getPort());
+        this.poolConfig = poolConfig;
+        this.wireMetrics = clusterMode ? null : wireMetrics;
+        if(clusterMode && wireMetrics!=null){
+            System.out.println("Wire byte counting is not supported in cluster mode - the node pools are created inside JedisCluster");
+        }
+        System.out.println("$$$ "+uri.getAuthority().split(":").length);
+        if(uri.getAuthority().split(":").length==3){
+            String user = uri.getAuthority().split(":")[0];
+            String password = uri.getAuthority().split(":")[1];
+            password = password.split("@")[0];
+            System.out.println("\n\nUsing user: "+user+" / password @@@@@@@@@@"+password);
+            this.clientConfig = DefaultJedisClientConfig.builder().user(user).password(password)
+                    .connectionTimeoutMillis(30000).timeoutMillis(120000).build(); // timeout and client settings
+
+        }else {
+            this.clientConfig = DefaultJedisClientConfig.builder()
+                    .connectionTimeoutMillis(30000).timeoutMillis(120000).build(); // timeout and client settings
+        }
+        // every borrow from the pool(s) goes through poolMetrics so the time spent waiting for a connection is recorded:
+        this.poolMetrics = new PoolMetrics(this::pools);
+
+        if(clusterMode){
+            // one pool per node - the slot to node mapping is fetched from the seed node and refreshed on MOVED replies
+            this.connectionProvider = null;
+            this.jedisPooled = null;
+            // (a borrow that falls back from a slot to a random node is recorded twice - that only happens while the slot cache is stale)
+            this.clusterConnectionProvider = new ClusterConnectionProvider(Collections.singleton(address), clientConfig, poolConfig){
+                @Override
+                public Connection getConnection(){
+                    return poolMetrics.timeBorrow(super::getConnection);
+                }
+
+                @Override
+                public Connection getConnection(HostAndPort node){
+                    return poolMetrics.timeBorrow(() -> super.getConnection(node));
+                }
+
+                @Override
+                public Connection getConnectionFromSlot(int slot){
+                    return poolMetrics.timeBorrow(() -> super.getConnectionFromSlot(slot));
+                }
+            };
+            this.jedisCluster = new JedisCluster(clusterConnectionProvider, JedisCluster.DEFAULT_MAX_ATTEMPTS, Duration.ofSeconds(30));
+            System.out.println("Connected to a cluster of "+jedisCluster.getClusterNodes().size()+" nodes: "+jedisCluster.getClusterNodes().keySet());
+        }else {
+            this.connectionProvider = new PooledConnectionProvider(connectionFactory(address), poolConfig){
+                @Override
+                public Connection getConnection(){
+                    return poolMetrics.timeBorrow(super::getConnection);
+                }
+
+                @Override
+                public Connection getConnection(CommandArguments args){
+                    return poolMetrics.timeBorrow(() -> super.getConnection(args));
+                }
+            };
+            this.jedisPooled = new JedisPooled(connectionProvider);
+            this.clusterConnectionProvider = null;
+            this.jedisCluster = null;
+        }
+        poolMetrics.registerMBean();
+        System.out.println("TESTING CONNECTION: "+getPooledJedis().incr("junk:incrme"));
+    }
+
+    /**
+     * A separate pool for another server - e.g. a replica of the primary - with the same credentials, timeouts and pool settings
+     * (its borrows are not recorded by poolMetrics - its bytes are counted by wireMetrics)
+     * @param address
+     * @return JedisPooled
+     */
+    public JedisPooled pooledFor(HostAndPort address){
+        return new JedisPooled(new PooledConnectionProvider(connectionFactory(address), poolConfig));
+    }
+
+    private ConnectionFactory connectionFactory(HostAndPort address){
+        return wireMetrics!=null ? wireMetrics.connectionFactory(address, clientConfig) : new ConnectionFactory(address, clientConfig);
+    }
+
+    private Collection<? extends GenericObjectPool<Connection>> pools(){
+        if(isCluster()){
+            return clusterConnectionProvider.getNodes().values();
+        }
+        return connectionProvider==null ? Collections.emptyList() : Collections.singletonList(connectionProvider.getPool());
+    }
+
+    /**
+     * Opens connections up front so the first requests of a measurement do not pay for connecting
+     * (in cluster mode every node's pool is warmed up)
+     * Connections beyond the pool's maxIdle are closed again straight away and idle connections beyond minIdle
+     * may be evicted later - so keep --poolminidle at least as large as the warm-up if it has to last
+     * @param connections how many connections each pool should hold
+     */
+    public void warmUp(int connections){
+        long start = System.currentTimeMillis();
+        for(GenericObjectPool<Connection> pool:pools()){
+            int target = pool.getMaxTotal()<0 ? connections : Math.min(connections,pool.getMaxTotal());
+            int toCreate = target-pool.getNumIdle()-pool.getNumActive();
+            for(int i=0;i<toCreate;i++){
+                try {
+                    pool.addObject();
+                }catch(Exception e){
+                    System.out.println("Connection pool warm-up stopped early: "+e.getMessage());
+                    break;
+                }
+            }
+        }
+        System.out.println("Connection pool warm-up to "+connections+" connections per pool took "+(System.currentTimeMillis()-start)+
+                " milliseconds - "+poolMetrics.getIdle()+" idle connections are ready");
+    }
+}
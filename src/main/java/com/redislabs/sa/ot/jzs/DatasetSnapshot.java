@@ -0,0 +1,148 @@
+package com.redislabs.sa.ot.jzs;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A generated dataset saved to disk so it can be loaded again (byte for byte the same) without generating it.
+ * File layout (all numbers big-endian):
+ *  - header: "JZSSNAP2", long seed, int documentCount, int maxDocumentLength, long indexOffset
+ *  - one record per document, in key number order: int length followed by the serialized JSON (which carries its key number as seq)
+ *  - index: one long per document holding the file offset of its record
+ * The file is memory-mapped when it is opened (in overlapping windows so no record is ever split between two mappings)
+ * and document() copies a record's bytes straight out of the mapping - nothing is parsed or re-serialized.
+ * An open snapshot is read-only and can be used by any number of threads at once.
+ */
+class DatasetSnapshot {
+
+    static final byte[] MAGIC = "JZSSNAP2".getBytes(StandardCharsets.US_ASCII);
+    // version 1 documents have no seq field - keyset paging needs it
+    private static final byte[] MAGIC_WITHOUT_SEQ = "JZSSNAP1".getBytes(StandardCharsets.US_ASCII);
+    static final int HEADER_LENGTH = 32;
+    private static final long WINDOW_SIZE = 1L<<30;
+
+    final Path path;
+    final long seed;
+    final int documentCount;
+    private final int maxDocumentLength;
+    private final long[] offsets;
+    private final MappedByteBuffer[] windows;
+
+    private DatasetSnapshot(Path path,long seed,int documentCount,int maxDocumentLength,long[] offsets,MappedByteBuffer[] windows){
+        this.path = path;
+        this.seed = seed;
+        this.documentCount = documentCount;
+        this.maxDocumentLength = maxDocumentLength;
+        this.offsets = offsets;
+        this.windows = windows;
+    }
+
+    /**
+     * Generates howManyDocuments documents with the seeded generator and writes them to path
+     * @param path
+     * @param seed
+     * @param howManyDocuments
+     * @throws IOException
+     */
+    static void write(Path path,long seed,int howManyDocuments) throws IOException{
+        long startTime = System.nanoTime();
+        long[] offsets = new long[howManyDocuments];
+        int maxDocumentLength = 0;
+        long position = HEADER_LENGTH;
+        try(OutputStream file = Files.newOutputStream(path);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file,1<<20))){
+            out.write(new byte[HEADER_LENGTH]); // filled in once the lengths and the index offset are known
+            for(int i=0;i<howManyDocuments;i++){
+                byte[] json = FastJsonZewActivityGenerator.createSeededJsonZewActivityBytes(seed,i+1);
+                offsets[i] = position;
+                out.writeInt(json.length);
+                out.write(json);
+                position+=4+json.length;
+                maxDocumentLength = Math.max(maxDocumentLength,json.length);
+            }
+            for(long offset:offsets){
+                out.writeLong(offset);
+            }
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        header.put(MAGIC).putLong(seed).putInt(howManyDocuments).putInt(maxDocumentLength).putLong(position).flip();
+        try(FileChannel channel = FileChannel.open(path,StandardOpenOption.WRITE)){
+            channel.write(header,0);
+        }
+        System.out.println(String.format("Wrote a snapshot of %d documents (seed %d, %.2f MB) to %s in %d milliseconds",
+                howManyDocuments,seed,Files.size(path)/(1024.0*1024.0),path,(System.nanoTime()-startTime)/1_000_000));
+    }
+
+    /**
+     * Maps a snapshot written by write()
+     * @param path
+     * @return the open snapshot
+     * @throws IOException when the file is not a snapshot or is truncated
+     */
+    static DatasetSnapshot open(Path path) throws IOException{
+        try(FileChannel channel = FileChannel.open(path,StandardOpenOption.READ)){
+            long size = channel.size();
+            if(size<HEADER_LENGTH){
+                throw new IOException(path+" is too short to be a snapshot");
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY,0,HEADER_LENGTH);
+            byte[] magic = new byte[MAGIC.length];
+            header.get(magic);
+            if(Arrays.equals(magic,MAGIC_WITHOUT_SEQ)){
+                throw new IOException(path+" was written before documents carried their key number as seq - delete it so a new one is written");
+            }
+            if(!Arrays.equals(magic,MAGIC)){
+                throw new IOException(path+" is not a snapshot (it does not start with "+new String(MAGIC,StandardCharsets.US_ASCII)+")");
+            }
+            long seed = header.getLong();
+            int documentCount = header.getInt();
+            int maxDocumentLength = header.getInt();
+            long indexOffset = header.getLong();
+            if(indexOffset+8L*documentCount!=size){
+                throw new IOException(path+" is truncated or was not completely written");
+            }
+            long[] offsets = new long[documentCount];
+            for(long read=0;read<documentCount;){
+                int chunk = (int) Math.min(documentCount-read,WINDOW_SIZE/8);
+                channel.map(FileChannel.MapMode.READ_ONLY,indexOffset+read*8,chunk*8L).asLongBuffer().get(offsets,(int) read,chunk);
+                read+=chunk;
+            }
+            // window w starts at w*WINDOW_SIZE and reaches one record further so every record it starts also ends in it
+            int windowCount = (int) Math.max(1,(indexOffset+WINDOW_SIZE-1)/WINDOW_SIZE);
+            MappedByteBuffer[] windows = new MappedByteBuffer[windowCount];
+            for(int w=0;w<windowCount;w++){
+                long start = w*WINDOW_SIZE;
+                windows[w] = channel.map(FileChannel.MapMode.READ_ONLY,start,Math.min(indexOffset,start+WINDOW_SIZE+4+maxDocumentLength)-start);
+            }
+            return new DatasetSnapshot(path,seed,documentCount,maxDocumentLength,offsets,windows);
+        }
+    }
+
+    /**
+     * @param documentNumber 1 ... documentCount (the number the document's key ends with)
+     * @return a copy of the serialized JSON
+     */
+    byte[] document(int documentNumber){
+        long offset = offsets[documentNumber-1];
+        ByteBuffer window = windows[(int) (offset/WINDOW_SIZE)].duplicate(); // the position is per view - views are cheap
+        window.position((int) (offset%WINDOW_SIZE));
+        byte[] json = new byte[window.getInt()];
+        window.get(json);
+        return json;
+    }
+
+    @Override
+    public String toString(){
+        return path+" ("+documentCount+" documents, seed "+seed+", largest document "+maxDocumentLength+" bytes)";
+    }
+}
@@ -0,0 +1,358 @@
+package com.redislabs.sa.ot.jzs;
+
+import redis.clients.jedis.UnifiedJedis;
+import redis.clients.jedis.search.Query;
+import redis.clients.jedis.search.SearchResult;
+import redis.clients.jedis.search.aggr.AggregationBuilder;
+import redis.clients.jedis.search.aggr.AggregationResult;
+import redis.clients.jedis.search.aggr.Reducers;
+import redis.clients.jedis.search.aggr.Row;
+import redis.clients.jedis.search.aggr.SortedField;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Counts the matches of one base query by several facets (days, times, cost band, location, species...)
+ * and sends every command involved as one pipelined batch - a page with four facets waits for one round trip, not four.
+ * There are three kinds of facet:
+ *  - a field facet: FT.AGGREGATE base GROUPBY 1 @field REDUCE COUNT 0 AS count SORTBY 2 @count DESC MAX topN
+ *    optionally with an APPLY first (cost bands) or with the groups folded together on the client (species, from the location)
+ *  - a tag facet, for the multi-value TAG fields (days, times): GROUPBY on a multi-value JSON field does not count
+ *    each element separately, so each known value gets its own count - base @field:{value} LIMIT 0 0
+ * The base query's own match count (LIMIT 0 0) travels in the same batch.
+ * The counts come back as one FacetResult holding the topN buckets of every facet, largest first.
+ * When a SearchResultCache is given, FacetResults are cached by index, base query, facets and topN
+ * and are invalidated along with the search results whenever an activity changes.
+ */
+class FacetedSearch {
+
+    static final String COUNT = "count";
+    static final int MAX_FOLDED_GROUPS = 10000;
+    static final String[] ALL_FACETS = {"days","times","cost","location","species"};
+
+    private final ConnectionHelper connectionHelper;
+    private final String indexName;
+    private final List<Facet> facets;
+    private final int topN;
+    private final int dialect;
+    private final SearchResultCache cache;
+
+    /**
+     * @param connectionHelper
+     * @param indexName
+     * @param facets
+     * @param topN how many buckets to keep per facet
+     * @param dialect
+     * @param cache null means every search goes to the server
+     */
+    FacetedSearch(ConnectionHelper connectionHelper,String indexName,List<Facet> facets,int topN,int dialect,SearchResultCache cache){
+        this.connectionHelper = connectionHelper;
+        this.indexName = indexName;
+        this.facets = facets;
+        this.topN = Math.max(1,topN);
+        this.dialect = dialect;
+        this.cache = cache;
+    }
+
+    /**
+     * @param names comma separated facet names from ALL_FACETS or "all"
+     * @return the matching facets
+     */
+    static List<Facet> select(String names){
+        List<String> wanted = "all".equalsIgnoreCase(names.trim()) ? Arrays.asList(ALL_FACETS) : Arrays.asList(names.split(","));
+        List<Facet> selected = new ArrayList<>();
+        for(String name:wanted){
+            switch(name.trim().toLowerCase()){
+                case "days":
+                    selected.add(Facet.tag("days","days",JsonZewActivityBuilder.DAYS_OF_WEEK));
+                    break;
+                case "times":
+                    selected.add(Facet.tag("times","times",JsonZewActivityBuilder.militaryTimes));
+                    break;
+                case "cost":
+                    selected.add(Facet.costBands("cost",5));
+                    break;
+                case "location":
+                    selected.add(Facet.field("location","location"));
+                    break;
+                case "species":
+                    selected.add(Facet.folded("species","location",FacetedSearch::speciesOf));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown facet '"+name+"' - use any of "+String.join(",",ALL_FACETS)+" or all");
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * Runs the base count and every facet pipelined on one connection (or answers from the cache)
+     * @param baseQuery
+     * @return the merged facet counts
+     */
+    FacetResult search(String baseQuery){
+        if(cache==null){
+            return fetch(baseQuery);
+        }
+        return (FacetResult) cache.get(cacheKey(baseQuery),() -> {
+            FacetResult result = fetch(baseQuery);
+            return new SearchResultCache.Fetched(result,result.size());
+        });
+    }
+
+    /**
+     * Fires the same commands one after another (one round trip each) - what the page would cost without the batch
+     * @param baseQuery
+     * @return the merged facet counts
+     */
+    FacetResult searchSequentially(String baseQuery){
+        UnifiedJedis jedis = connectionHelper.getPooledJedis();
+        long startTime = System.nanoTime();
+        List<ZewQueries.NamedQuery> commands = commands(baseQuery);
+        List<Object> replies = new ArrayList<>(commands.size());
+        for(ZewQueries.NamedQuery command:commands){
+            replies.add(command.execute(jedis,indexName));
+        }
+        return merge(baseQuery,replies,System.nanoTime()-startTime);
+    }
+
+    private FacetResult fetch(String baseQuery){
+        long startTime = System.nanoTime();
+        QueryBatch batch = new QueryBatch(connectionHelper);
+        for(ZewQueries.NamedQuery command:commands(baseQuery)){
+            batch.add(indexName,command);
+        }
+        List<Object> replies = new ArrayList<>(batch.size());
+        for(QueryBatch.Result result:batch.pipelined()){
+            if(result.failed()){
+                throw new RuntimeException("Facet command "+result.name+" failed: "+result.error.getMessage(),result.error);
+            }
+            replies.add(result.value);
+        }
+        return merge(baseQuery,replies,System.nanoTime()-startTime);
+    }
+
+    // the base count first, then each facet's commands in facet order
+    private List<ZewQueries.NamedQuery> commands(String baseQuery){
+        List<ZewQueries.NamedQuery> commands = new ArrayList<>();
+        commands.add(count("total",baseQuery));
+        for(Facet facet:facets){
+            if(facet.tagValues!=null){
+                for(String value:facet.tagValues){
+                    commands.add(count(facet.name+":"+value,and(baseQuery,"@"+facet.field+":{"+value+"}")));
+                }
+            }else{
+                AggregationBuilder aggregation = new AggregationBuilder(baseQuery);
+                if(facet.applyExpression!=null){
+                    aggregation.apply(facet.applyExpression,facet.groupField);
+                }
+                aggregation.groupBy("@"+facet.groupField,Reducers.count().as(COUNT));
+                if(facet.fold==null){
+                    aggregation.sortBy(topN,SortedField.desc("@"+COUNT)).limit(0,topN);
+                }else{
+                    // a folded bucket is only complete once every server group has been added to it:
+                    aggregation.limit(0,MAX_FOLDED_GROUPS);
+                }
+                if(dialect>0){
+                    aggregation.dialect(dialect);
+                }
+                commands.add(new ZewQueries.NamedQuery(facet.name,facet.name,aggregation));
+            }
+        }
+        return commands;
+    }
+
+    private ZewQueries.NamedQuery count(String name,String queryString){
+        Query query = new Query(queryString).setNoContent().limit(0,0);
+        if(dialect>0){
+            query.dialect(dialect);
+        }
+        return new ZewQueries.NamedQuery(name,queryString,query);
+    }
+
+    private FacetResult merge(String baseQuery,List<Object> replies,long elapsedNanos){
+        FacetResult result = new FacetResult(baseQuery,((SearchResult)replies.get(0)).getTotalResults(),elapsedNanos,replies.size());
+        int next = 1;
+        for(Facet facet:facets){
+            Map<String,Long> counts = new LinkedHashMap<>();
+            if(facet.tagValues!=null){
+                for(String value:facet.tagValues){
+                    counts.put(value,((SearchResult)replies.get(next++)).getTotalResults());
+                }
+            }else{
+                AggregationResult groups = (AggregationResult) replies.get(next++);
+                for(int i=0;i<groups.getResults().size();i++){
+                    Row row = groups.getRow(i);
+                    String value = row.getString(facet.groupField);
+                    if(facet.fold!=null){
+                        value = facet.fold.apply(value);
+                    }else if(facet.applyExpression!=null){
+                        value = facet.label(value);
+                    }
+                    counts.merge(String.valueOf(value),row.getLong(COUNT),Long::sum);
+                }
+            }
+            result.facets.put(facet.name,topBuckets(counts));
+        }
+        return result;
+    }
+
+    private List<Bucket> topBuckets(Map<String,Long> counts){
+        List<Bucket> buckets = new ArrayList<>();
+        for(Map.Entry<String,Long> e:counts.entrySet()){
+            if(e.getValue()>0){
+                buckets.add(new Bucket(e.getKey(),e.getValue()));
+            }
+        }
+        buckets.sort((a,b) -> Long.compare(b.count,a.count));
+        return buckets.size()>topN ? new ArrayList<>(buckets.subList(0,topN)) : buckets;
+    }
+
+    private String cacheKey(String baseQuery){
+        StringBuilder key = new StringBuilder("FACETS\u0000").append(indexName).append('\u0000').append(baseQuery)
+                .append('\u0000').append(topN).append('\u0000').append(dialect);
+        for(Facet facet:facets){
+            key.append('\u0000').append(facet.name);
+        }
+        return key.toString();
+    }
+
+    // a wildcard base query cannot be combined with another clause - the clause alone matches the same documents
+    private static String and(String baseQuery,String clause){
+        return "*".equals(baseQuery.trim()) ? clause : "("+baseQuery+") "+clause;
+    }
+
+    // the location starts with the species (which may be two words): "Giant Panda Habitat North" -> "Giant Panda"
+    static String speciesOf(String location){
+        String species = null;
+        if(location!=null){
+            for(String candidate:JsonZewActivityBuilder.animalSpecies){
+                if(location.startsWith(candidate)&&(species==null||candidate.length()>species.length())){
+                    species = candidate;
+                }
+            }
+        }
+        return species!=null?species:"other";
+    }
+
+    /**
+     * One way of counting the matches of the base query
+     */
+    static class Facet{
+        final String name;
+        final String field;
+        final String groupField;
+        final String[] tagValues;
+        final String applyExpression;
+        final double bandWidth;
+        final Function<String,String> fold;
+
+        private Facet(String name,String field,String[] tagValues,String applyExpression,double bandWidth,Function<String,String> fold){
+            this.name = name;
+            this.field = field;
+            this.groupField = applyExpression!=null?field+"_band":field;
+            this.tagValues = tagValues;
+            this.applyExpression = applyExpression;
+            this.bandWidth = bandWidth;
+            this.fold = fold;
+        }
+
+        static Facet field(String name,String field){
+            return new Facet(name,field,null,null,0,null);
+        }
+
+        /**
+         * @param name
+         * @param field
+         * @param fold maps each server-side group value to the bucket it is counted in
+         * @return a facet whose buckets are unions of the field's groups
+         */
+        static Facet folded(String name,String field,Function<String,String> fold){
+            return new Facet(name,field,null,null,0,fold);
+        }
+
+        /**
+         * @param name
+         * @param field a multi-value TAG field
+         * @param values the values to count
+         * @return a facet with one count per value
+         */
+        static Facet tag(String name,String field,String... values){
+            return new Facet(name,field,values,null,0,null);
+        }
+
+        /**
+         * @param name
+         * @param bandWidth in dollars - 5 gives [0,5) [5,10) ...
+         * @return a facet grouping the costs into equal bands
+         */
+        static Facet costBands(String name,double bandWidth){
+            return new Facet(name,"cost",null,"floor(@cost/"+bandWidth+")*"+bandWidth,bandWidth,null);
+        }
+
+        // the band a group's floor value stands for
+        String label(String bandStart){
+            if(bandStart==null||bandStart.isEmpty()){
+                return "none";
+            }
+            double start = Double.parseDouble(bandStart);
+            return String.format("[%.2f,%.2f)",start,start+bandWidth);
+        }
+    }
+
+    static class Bucket{
+        final String value;
+        final long count;
+
+        Bucket(String value,long count){
+            this.value = value;
+            this.count = count;
+        }
+    }
+
+    /**
+     * The base query's match count and the topN buckets of every facet
+     */
+    static class FacetResult{
+        final String baseQuery;
+        final long totalMatches;
+        final long elapsedNanos;
+        final int commands;
+        final Map<String,List<Bucket>> facets = new LinkedHashMap<>();
+
+        FacetResult(String baseQuery,long totalMatches,long elapsedNanos,int commands){
+            this.baseQuery = baseQuery;
+            this.totalMatches = totalMatches;
+            this.elapsedNanos = elapsedNanos;
+            this.commands = commands;
+        }
+
+        long size(){
+            long bytes = 64+baseQuery.length();
+            for(Map.Entry<String,List<Bucket>> e:facets.entrySet()){
+                bytes+=32+e.getKey().length();
+                for(Bucket b:e.getValue()){
+                    bytes+=32+b.value.length();
+                }
+            }
+            return bytes;
+        }
+
+        void print(){
+            System.out.println(String.format("\n\tFacets for \"%s\": %d matches (%d commands, %.1f us)\n",
+                    baseQuery,totalMatches,commands,LatencyStats.micros(elapsedNanos)));
+            for(Map.Entry<String,List<Bucket>> e:facets.entrySet()){
+                StringBuilder line = new StringBuilder(String.format("%-10s",e.getKey()));
+                for(Bucket b:e.getValue()){
+                    line.append("  ").append(b.value).append(" (").append(b.count).append(')');
+                }
+                System.out.println(line);
+            }
+        }
+    }
+}
@@ -0,0 +1,373 @@
+package com.redislabs.sa.ot.jzs;
+
+import com.github.javafaker.Faker;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * High-throughput alternative to JsonZewActivityBuilder.createFakeJsonZewActivityObject()
+ * The documents have the same shape and the same field distributions as the ones built by JsonZewActivityBuilder
+ * but the JSON bytes are written directly into a reusable per-thread buffer:
+ *  - randomness comes from ThreadLocalRandom (no new Random() per document)
+ *  - every vocabulary value is JSON-encoded to bytes once, up front
+ *  - contact names, emails and phones are drawn from pools that are filled (using Faker) only once
+ *  - no JSONObject / JSONArray tree is built and no String.split() happens per document
+ * Use --fastgenerator true to load data with this generator.
+ * Documents written for a key carry the key number as JsonZewActivityBuilder.SEQ_FIELD - written into the same buffer, so it costs no copy.
+ * createSeededJsonZewActivityBytes() is the reproducible variant: each document depends only on the seed and its number
+ * (not on which thread generates it or in which order) and the contact pool is filled from a Faker seeded with the same seed.
+ */
+class FastJsonZewActivityGenerator {
+
+    static final int CONTACT_POOL_SIZE = 4096;
+
+    private static final byte[] NAME_OPEN = ascii("{\"name\":\"");
+    private static final byte[] SEQ_OPEN = ascii("{\""+JsonZewActivityBuilder.SEQ_FIELD+"\":");
+    private static final byte[] NAME_AFTER_SEQ_OPEN = ascii(",\"name\":\"");
+    private static final byte[] COST_OPEN = ascii("\",\"cost\":");
+    private static final byte[] LOCATION_OPEN = ascii(",\"location\":\"");
+    private static final String DESCRIPTION_OPEN = "\",\"description\":\"";
+    private static final String EMBEDDING_OPEN = "\",\"embedding\":";
+    private static final byte[] TIMES_OPEN = ascii(",\"times\":[{\"military\":\"");
+    private static final byte[] CIVILIAN_OPEN = ascii("\",\"civilian\":\"");
+    private static final byte[] NEXT_TIME_OPEN = ascii("\"},{\"military\":\"");
+    // the third time object only ever holds null values - org.json drops null values so it is written as {}
+    private static final byte[] TIMES_CLOSE_DAYS_OPEN = ascii("\"},{}],\"days\":");
+    private static final byte[] CONTACTS_OPEN = ascii(",\"responsible_parties\":{\"number_of_contacts\":");
+    private static final byte[] HOSTS_OPEN = ascii(",\"hosts\":[");
+    private static final byte[] HOST_NAME_OPEN = ascii("{\"name\":\"");
+    private static final byte[] HOST_PHONE_OPEN = ascii("\",\"phone\":\"");
+    private static final byte[] HOST_EMAIL_OPEN = ascii("\",\"email\":\"");
+    private static final byte[] HOST_CLOSE = ascii("@zew.org\"}");
+    private static final byte[] DOCUMENT_CLOSE = ascii("]}}");
+
+    private static final byte[][] SPECIES = encodeAll(JsonZewActivityBuilder.animalSpecies);
+    private static final byte[][] ACTIVITIES = encodeAll(JsonZewActivityBuilder.activityTypes);
+    private static final byte[][] LOCATION_TYPES = encodeAll(JsonZewActivityBuilder.locationTypes);
+    private static final byte[][] DIRECTIONS = encodeAll(JsonZewActivityBuilder.locationDirections);
+    private static final byte[][] MILITARY_TIMES = encodeAll(JsonZewActivityBuilder.militaryTimes);
+    private static final byte[][] CIVILIAN_TIMES = encodeAll(JsonZewActivityBuilder.civilianTimes);
+    private static final byte[] ZERO_COST = ascii("0");
+    private static final byte[][] COSTS_OVER_ZERO = encodeCosts(JsonZewActivityBuilder.costsOverZero);
+    private static final byte[][] DAYS_BY_START = encodeDayArrays();
+    private static final byte[][] CONTACT_COUNTS = new byte[][]{ascii("1"),ascii("2"),ascii("3")};
+    private static final byte SPACE = ' ';
+    private static final byte COMMA = ',';
+
+    private static final ThreadLocal<JsonByteBuffer> BUFFERS = ThreadLocal.withInitial(() -> new JsonByteBuffer(1024));
+    private static final ThreadLocal<Random> SEEDED_RANDOMS = ThreadLocal.withInitial(Random::new);
+    private static volatile ContactPool seededPool = null;
+    private static volatile DescriptionCache descriptions = null;
+
+    /**
+     * Writes one fake activity into the calling thread's reusable buffer and returns a copy of exactly the written bytes
+     * (the copy is needed because the pipelined command keeps a reference to its arguments until it is synced)
+     * @return byte[] holding one JSON document
+     */
+    static byte[] createFakeJsonZewActivityBytes(){
+        return createFakeJsonZewActivityBytes(0);
+    }
+
+    /**
+     * @param seq the number of the key the document is stored under (0 leaves the seq field out)
+     * @return byte[] holding one JSON document
+     */
+    static byte[] createFakeJsonZewActivityBytes(int seq){
+        JsonByteBuffer buffer = BUFFERS.get();
+        buffer.reset();
+        writeFakeJsonZewActivity(ThreadLocalRandom.current(),ContactPool.INSTANCE,seq,buffer);
+        return buffer.toByteArray();
+    }
+
+    /**
+     * @param seed
+     * @param documentNumber
+     * @return the same JSON document every time it is called with the same seed and documentNumber
+     */
+    static byte[] createSeededJsonZewActivityBytes(long seed,int documentNumber){
+        Random random = SEEDED_RANDOMS.get();
+        random.setSeed(mix(seed+documentNumber*0x9E3779B97F4A7C15L));
+        JsonByteBuffer buffer = BUFFERS.get();
+        buffer.reset();
+        writeFakeJsonZewActivity(random,seededPool(seed),documentNumber,buffer);
+        return buffer.toByteArray();
+    }
+
+    // java.util.Random gives correlated first values for neighbouring seeds - so document numbers are scrambled first (SplitMix64)
+    static long mix(long z){
+        z = (z^(z>>>30))*0xBF58476D1CE4E5B9L;
+        z = (z^(z>>>27))*0x94D049BB133111EBL;
+        return z^(z>>>31);
+    }
+
+    private static ContactPool seededPool(long seed){
+        ContactPool pool = seededPool;
+        if(pool==null||pool.seed!=seed){
+            synchronized(FastJsonZewActivityGenerator.class){
+                pool = seededPool;
+                if(pool==null||pool.seed!=seed){
+                    pool = new ContactPool(CONTACT_POOL_SIZE,new Faker(new Random(seed)),seed);
+                    seededPool = pool;
+                }
+            }
+        }
+        return pool;
+    }
+
+    private static DescriptionCache descriptions(){
+        DescriptionCache cache = descriptions;
+        int dimension = JsonZewActivityBuilder.embeddingDimension;
+        if(cache==null||cache.dimension!=dimension){
+            cache = new DescriptionCache(dimension); // a racing thread may build its own - they hold the same bytes
+            descriptions = cache;
+        }
+        return cache;
+    }
+
+    static void writeFakeJsonZewActivity(Random random,JsonByteBuffer out){
+        writeFakeJsonZewActivity(random,ContactPool.INSTANCE,0,out);
+    }
+
+    /**
+     * Mirrors the random choices made by JsonZewActivityBuilder.createFakeJsonZewActivityObject() one for one
+     * so the generated values are distributed in the same way
+     * @param random
+     * @param pool the names, emails and phone numbers to pick contacts from
+     * @param seq the key number written as the first field (0 leaves it out)
+     * @param out
+     */
+    private static void writeFakeJsonZewActivity(Random random,ContactPool pool,int seq,JsonByteBuffer out){
+        int randomValue = random.nextInt(111);
+        int speciesIndex = randomValue%SPECIES.length;
+        int activityIndex = randomValue%ACTIVITIES.length;
+        if(seq!=0){
+            out.write(SEQ_OPEN).write(seq).write(NAME_AFTER_SEQ_OPEN);
+        }else{
+            out.write(NAME_OPEN);
+        }
+        out.write(SPECIES[speciesIndex]).write(SPACE).write(ACTIVITIES[activityIndex]);
+        out.write(COST_OPEN).write(random.nextInt(3)>1?ZERO_COST:COSTS_OVER_ZERO[random.nextInt(111)%COSTS_OVER_ZERO.length]);
+        int locationTypeIndex = random.nextInt(111)%LOCATION_TYPES.length;
+        int directionIndex = random.nextInt(111)%DIRECTIONS.length;
+        out.write(LOCATION_OPEN).write(SPECIES[speciesIndex]).write(SPACE).write(LOCATION_TYPES[locationTypeIndex])
+                .write(SPACE).write(DIRECTIONS[directionIndex]);
+        out.write(descriptions().get(activityIndex,speciesIndex,locationTypeIndex,directionIndex));
+
+        randomValue = randomValue+random.nextInt(111);
+        out.write(TIMES_OPEN).write(MILITARY_TIMES[randomValue%MILITARY_TIMES.length])
+                .write(CIVILIAN_OPEN).write(CIVILIAN_TIMES[randomValue%CIVILIAN_TIMES.length]);
+        randomValue = randomValue+3;
+        out.write(NEXT_TIME_OPEN).write(MILITARY_TIMES[randomValue%MILITARY_TIMES.length])
+                .write(CIVILIAN_OPEN).write(CIVILIAN_TIMES[randomValue%CIVILIAN_TIMES.length]);
+        out.write(TIMES_CLOSE_DAYS_OPEN).write(DAYS_BY_START[random.nextInt(111)%DAYS_BY_START.length]);
+
+        int numberOfContacts = (random.nextInt(111)%3)+1; //1-3 contacts for the event
+        out.write(CONTACTS_OPEN).write(CONTACT_COUNTS[numberOfContacts-1]).write(HOSTS_OPEN);
+        for(int c=0;c<numberOfContacts;c++){
+            if(c>0){
+                out.write(COMMA);
+            }
+            int nameIndex = random.nextInt(CONTACT_POOL_SIZE);
+            out.write(HOST_NAME_OPEN).write(pool.names[nameIndex])
+                    .write(HOST_PHONE_OPEN).write(pool.phones[random.nextInt(CONTACT_POOL_SIZE)])
+                    .write(HOST_EMAIL_OPEN).write(pool.emailNames[nameIndex]).write(HOST_CLOSE);
+        }
+        out.write(DOCUMENT_CLOSE);
+    }
+
+    /*
+    The days array is built by starting with all 7 days and then removing every second remaining entry
+    from a random starting position - there are only 7 possible outcomes so they are all encoded up front
+    using exactly the same removal logic as JsonZewActivityBuilder
+     */
+    private static byte[][] encodeDayArrays(){
+        String[] days = JsonZewActivityBuilder.DAYS_OF_WEEK;
+        byte[][] encoded = new byte[days.length][];
+        for(int start=0;start<days.length;start++){
+            List<String> remaining = new ArrayList<>(Arrays.asList(days));
+            for(int dayVal=start;dayVal < days.length;dayVal=dayVal+2){
+                if(dayVal<remaining.size()) {
+                    remaining.remove(dayVal);
+                }
+            }
+            StringBuilder sb = new StringBuilder("[");
+            for(int i=0;i<remaining.size();i++){
+                sb.append(i>0?",":"").append('"').append(escape(remaining.get(i))).append('"');
+            }
+            encoded[start] = sb.append(']').toString().getBytes(StandardCharsets.UTF_8);
+        }
+        return encoded;
+    }
+
+    // org.json writes whole-number floats without a fraction (2.00f becomes 2)
+    private static byte[][] encodeCosts(float[] costs){
+        byte[][] encoded = new byte[costs.length][];
+        for(int i=0;i<costs.length;i++){
+            float cost = costs[i];
+            encoded[i] = ascii(cost==(long)cost?Long.toString((long)cost):Float.toString(cost));
+        }
+        return encoded;
+    }
+
+    private static byte[][] encodeAll(String[] values){
+        byte[][] encoded = new byte[values.length][];
+        for(int i=0;i<values.length;i++){
+            encoded[i] = escape(values[i]).getBytes(StandardCharsets.UTF_8);
+        }
+        return encoded;
+    }
+
+    private static byte[] ascii(String s){
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    // escapes a value so it can be placed between double quotes in a JSON document
+    static String escape(String value){
+        StringBuilder sb = new StringBuilder(value.length());
+        for(int i=0;i<value.length();i++){
+            char c = value.charAt(i);
+            if(c=='"'||c=='\\'){
+                sb.append('\\').append(c);
+            }else if(c<0x20){
+                sb.append(String.format("\\u%04x",(int)c));
+            }else{
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /*
+    Faker is only used here - once - to fill the pools of names and phone numbers
+    The pool is created lazily the first time a document is generated
+     */
+    private static class ContactPool{
+        static final ContactPool INSTANCE = new ContactPool(CONTACT_POOL_SIZE,JsonZewActivityBuilder.faker,0);
+        final byte[][] names;
+        final byte[][] emailNames;
+        final byte[][] phones;
+        final long seed;
+
+        ContactPool(int size,Faker faker,long seed){
+            this.seed = seed;
+            names = new byte[size][];
+            emailNames = new byte[size][];
+            phones = new byte[size][];
+            for(int i=0;i<size;i++){
+                String name = faker.name().fullName();
+                int firstSpace = name.indexOf(' ');
+                names[i] = escape(name).getBytes(StandardCharsets.UTF_8);
+                emailNames[i] = escape(firstSpace<0?name:name.substring(0,firstSpace)).getBytes(StandardCharsets.UTF_8);
+                phones[i] = escape(faker.phoneNumber().cellPhone()).getBytes(StandardCharsets.UTF_8);
+            }
+        }
+    }
+
+    /*
+    The description (and the embedding computed from it) depends only on the activity, species, location type and direction
+    - there are a few thousand combinations so each one is encoded the first time it is needed and reused after that
+     */
+    private static class DescriptionCache{
+        final int dimension;
+        private final AtomicReferenceArray<byte[]> encoded = new AtomicReferenceArray<>(
+                ACTIVITIES.length*SPECIES.length*LOCATION_TYPES.length*DIRECTIONS.length);
+
+        DescriptionCache(int dimension){
+            this.dimension = dimension;
+        }
+
+        // everything from the quote that closes the location up to (not including) the times
+        byte[] get(int activity,int species,int locationType,int direction){
+            int slot = ((activity*SPECIES.length+species)*LOCATION_TYPES.length+locationType)*DIRECTIONS.length+direction;
+            byte[] bytes = encoded.get(slot);
+            if(bytes==null){
+                String description = ActivityEmbedding.describe(activity,JsonZewActivityBuilder.animalSpecies[species],
+                        JsonZewActivityBuilder.animalSpecies[species]+" "+JsonZewActivityBuilder.locationTypes[locationType]+" "+
+                                JsonZewActivityBuilder.locationDirections[direction]);
+                StringBuilder sb = new StringBuilder(DESCRIPTION_OPEN).append(escape(description));
+                if(dimension>0){
+                    sb.append(EMBEDDING_OPEN).append(ActivityEmbedding.toJson(ActivityEmbedding.embed(description,dimension)));
+                }else{
+                    sb.append('"');
+                }
+                bytes = sb.toString().getBytes(StandardCharsets.UTF_8);
+                encoded.set(slot,bytes);
+            }
+            return bytes;
+        }
+    }
+
+    /**
+     * Minimal growable byte buffer that can be reset and reused for every document
+     */
+    static class JsonByteBuffer{
+        private byte[] bytes;
+        private int size = 0;
+
+        JsonByteBuffer(int initialCapacity){
+            bytes = new byte[initialCapacity];
+        }
+
+        JsonByteBuffer write(byte[] b){
+            ensureCapacity(size+b.length);
+            System.arraycopy(b,0,bytes,size,b.length);
+            size+=b.length;
+            return this;
+        }
+
+        JsonByteBuffer write(byte b){
+            ensureCapacity(size+1);
+            bytes[size++] = b;
+            return this;
+        }
+
+        // the decimal digits of n - written in place, without a String
+        JsonByteBuffer write(int n){
+            long value = n;
+            if(value<0){
+                write((byte)'-');
+                value = -value;
+            }
+            int digits = 1;
+            for(long v=value;v>=10;v/=10){
+                digits++;
+            }
+            ensureCapacity(size+digits);
+            for(int i=size+digits-1;i>=size;i--){
+                bytes[i] = (byte)('0'+value%10);
+                value/=10;
+            }
+            size+=digits;
+            return this;
+        }
+
+        void reset(){
+            size = 0;
+        }
+
+        int size(){
+            return size;
+        }
+
+        byte[] toByteArray(){
+            return Arrays.copyOf(bytes,size);
+        }
+
+        @Override
+        public String toString(){
+            return new String(bytes,0,size,StandardCharsets.UTF_8);
+        }
+
+        private void ensureCapacity(int needed){
+            if(needed>bytes.length){
+                bytes = Arrays.copyOf(bytes,Math.max(needed,bytes.length*2));
+            }
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.redislabs.sa.ot.jzs;
+
+import redis.clients.jedis.UnifiedJedis;
+
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Rebuilds the search index without a gap in query availability:
+ * 1) create idx_zew_events_vN (N is one more than the version the alias currently points at) next to the live index
+ * 2) poll FT.INFO on the new index until it has finished indexing the existing documents
+ *    (indexing, percent_indexed, num_docs and hash_indexing_failures are reported along with the indexing rate)
+ * 3) point the alias at the new index with FT.ALIASUPDATE - queries switch over atomically
+ * 4) drop the old index (its documents are kept)
+ * Queries always go through the alias so they only ever see a complete index.
+ */
+class IndexRebuilder {
+
+    static final String VERSION_SEPARATOR = "_v";
+
+    private final UnifiedJedis jedis;
+    private final String baseIndexName;
+    private final String aliasName;
+    private final Consumer<String> indexCreator;
+    private final long pollIntervalMillis;
+    private final long timeoutMillis;
+
+    /**
+     * @param jedis
+     * @param baseIndexName versions are named baseIndexName_v1, baseIndexName_v2 ...
+     * @param aliasName the alias queries use
+     * @param indexCreator creates an index (with the usual schema) under the name it is given
+     * @param pollIntervalMillis how often FT.INFO is checked
+     * @param timeoutMillis how long to wait for indexing to finish before giving up (the new index is dropped and the alias is left alone)
+     */
+    IndexRebuilder(UnifiedJedis jedis,String baseIndexName,String aliasName,Consumer<String> indexCreator,long pollIntervalMillis,long timeoutMillis){
+        this.jedis = jedis;
+        this.baseIndexName = baseIndexName;
+        this.aliasName = aliasName;
+        this.indexCreator = indexCreator;
+        this.pollIntervalMillis = Math.max(10,pollIntervalMillis);
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * @return the name of the index the alias points at when the rebuild finishes
+     */
+    String rebuild() throws InterruptedException{
+        String oldIndex = currentIndex();
+        int version = versionOf(oldIndex)+1;
+        String newIndex = baseIndexName+VERSION_SEPARATOR+version;
+        while(true) {
+            try {
+                indexCreator.accept(newIndex);
+                break;
+            } catch (RuntimeException re) {
+                // a left-over from an earlier, interrupted rebuild may already use this name
+                if(re.getMessage()==null||!re.getMessage().toLowerCase().contains("already exists")){
+                    throw re;
+                }
+                version++;
+                newIndex = baseIndexName+VERSION_SEPARATOR+version;
+            }
+        }
+        System.out.println("Created "+newIndex+" alongside "+(oldIndex==null?"(no live index)":oldIndex)+" - waiting for it to index the existing documents");
+        if(!waitUntilIndexed(jedis,newIndex,pollIntervalMillis,timeoutMillis)){
+            System.out.println("Gave up waiting for "+newIndex+" after "+timeoutMillis+" milliseconds - "+aliasName+" still points at "+oldIndex);
+            try {
+                jedis.ftDropIndex(newIndex); // keeps the documents
+                System.out.println("Dropped unfinished index "+newIndex);
+            }catch(Throwable t){
+                System.out.println("While attempting to drop unfinished index "+newIndex+"    >>> "+t.getMessage());
+            }
+            return oldIndex;
+        }
+        if(oldIndex==null){
+            jedis.ftAliasAdd(aliasName,newIndex);
+        }else {
+            jedis.ftAliasUpdate(aliasName, newIndex);
+        }
+        System.out.println(aliasName+" now points at "+newIndex);
+        if(oldIndex!=null){
+            try {
+                jedis.ftDropIndex(oldIndex); // keeps the documents
+                System.out.println("Dropped old index "+oldIndex);
+            }catch(Throwable t){
+                System.out.println("While attempting to drop old index "+oldIndex+"    >>> "+t.getMessage());
+            }
+        }
+        return newIndex;
+    }
+
+    /**
+     * @return the index the alias currently points at - or null if the alias does not exist
+     */
+    String currentIndex(){
+        return indexBehind(jedis,aliasName);
+    }
+
+    /**
+     * @param jedis
+     * @param aliasName
+     * @return the index the alias points at (FT.INFO resolves an alias) - or null if the alias does not exist
+     */
+    static String indexBehind(UnifiedJedis jedis,String aliasName){
+        try {
+            Object name = jedis.ftInfo(aliasName).get("index_name");
+            return name==null?null:String.valueOf(name);
+        }catch(Throwable t){
+            return null;
+        }
+    }
+
+    private int versionOf(String indexName){
+        if(indexName==null||!indexName.startsWith(baseIndexName+VERSION_SEPARATOR)){
+            return 0;
+        }
+        try {
+            return Integer.parseInt(indexName.substring((baseIndexName+VERSION_SEPARATOR).length()));
+        }catch(NumberFormatException nfe){
+            return 0;
+        }
+    }
+
+    /**
+     * Polls FT.INFO until the index has finished indexing the documents that existed when it was created
+     * @return false if timeoutMillis passed first
+     */
+    static boolean waitUntilIndexed(UnifiedJedis jedis,String indexName,long pollIntervalMillis,long timeoutMillis) throws InterruptedException{
+        long start = System.currentTimeMillis();
+        long lastDocs = 0;
+        long lastTime = start;
+        while(true){
+            Map<String,Object> info = jedis.ftInfo(indexName);
+            boolean indexing = number(info.get("indexing"))!=0;
+            // servers that do not report percent_indexed are done once indexing drops to 0
+            double percentIndexed = info.containsKey("percent_indexed")?number(info.get("percent_indexed")):(indexing?0:1);
+            long docs = (long)number(info.get("num_docs"));
+            long failures = (long)number(info.get("hash_indexing_failures"));
+            long now = System.currentTimeMillis();
+            double rate = now>lastTime?(docs-lastDocs)*1000.0/(now-lastTime):0;
+            System.out.println(String.format("%s: %.1f%% indexed, %d docs, %d indexing failures, %.0f docs/sec",
+                    indexName,percentIndexed*100,docs,failures,rate));
+            if(!indexing&&percentIndexed>=1.0){
+                long elapsed = Math.max(1,now-start);
+                System.out.println(String.format("%s finished indexing %d docs in %d milliseconds (%.0f docs/sec overall)",
+                        indexName,docs,elapsed,docs*1000.0/elapsed));
+                return true;
+            }
+            if(now-start>timeoutMillis){
+                return false;
+            }
+            lastDocs = docs;
+            lastTime = now;
+            Thread.sleep(pollIntervalMillis);
+        }
+    }
+
+    // FT.INFO values arrive as strings, longs or doubles depending on the field and the server version
+    static double number(Object value){
+        if(value==null){
+            return 0;
+        }
+        if(value instanceof Number){
+            return ((Number)value).doubleValue();
+        }
+        try {
+            return Double.parseDouble(String.valueOf(value));
+        }catch(NumberFormatException nfe){
+            return 0;
+        }
+    }
+}
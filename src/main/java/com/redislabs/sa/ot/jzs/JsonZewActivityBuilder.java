@@ -0,0 +1,100 @@
+package com.redislabs.sa.ot.jzs;
+
+import com.github.javafaker.Faker;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Random;
+
+class JsonZewActivityBuilder{
+
+    static final String[] DAYS_OF_WEEK = {"Mon","Tue","Wed","Thu","Fri","Sat","Sun"};
+    static Faker faker = new Faker();
+    static String[] activityTypes = new String[]{"Feeding","Training","Live Show","Lecture","Documentary","Petting","Ride"};
+    static String[] locationTypes = new String[]{"House","Habitat","Theater","Lecture Hall","Area"};
+    static String[] locationDirections = new String[]{"North","South","East","West"};
+    static float[] costsOverZero = new float[]{2.00f,5.00f,10.00f,25.00f};
+    static String[] animalSpecies = new String[]{"Lion","Tiger","Elephant","Giant Panda","Gorilla","Giraffe","Polar Bear","Hippo","Cheeta","Zebra","Meerkat","Penguin","Kangaroo","Flamingo","Koala","Chimpanzee","Llama","Green Anaconda","Hyena","Bonobo","Alligator","Orangutan"};
+    static String[] militaryTimes = new String[]{"0800","0900","1000","1100","1130","1200","1230","1300","1330","1400","1430","1500","1600","1700","1800","1900","2000","2030","2100","2200"};
+    static final String SEQ_FIELD = "seq";
+    static int embeddingDimension = 0; // 0 means the documents carry a description but no embedding
+    static String[] civilianTimes = new String[]{"8 AM","9 AM","10 AM","11 AM","11:30 AM","12 Noon","12:30 PM","1:00 PM","1:30 PM","2:00 PM","2:30 PM","3:00 PM","4:00 PM","5:00 PM","6:00 PM","7:00 PM","8:00 PM","8:30 PM","9:00 PM","10:00 PM"};
+
+    static JSONObject createFakeJsonZewActivityObject(){
+        Random random = new Random();
+        int randomValue = random.nextInt(111);
+        JSONObject obj = new JSONObject();
+        obj.put("name", animalSpecies[randomValue%animalSpecies.length]+" "+activityTypes[randomValue%activityTypes.length]);
+        obj.put("cost", random.nextInt(3)>1?0.00f:costsOverZero[random.nextInt(111) % costsOverZero.length]);
+        obj.put("location", animalSpecies[randomValue%animalSpecies.length]+" "+locationTypes[random.nextInt(111)%locationTypes.length]+" "+locationDirections[random.nextInt(111)%locationDirections.length]);
+        String description = ActivityEmbedding.describe(randomValue%activityTypes.length,animalSpecies[randomValue%animalSpecies.length],obj.getString("location"));
+        obj.put("description", description);
+        if(embeddingDimension>0) {
+            obj.put(ActivityEmbedding.FIELD, new JSONArray(ActivityEmbedding.embed(description, embeddingDimension)));
+        }
+
+        JSONObject timeObj1 = new JSONObject();
+        randomValue = randomValue+random.nextInt(111);
+        timeObj1.put("military", militaryTimes[randomValue%militaryTimes.length]);
+        timeObj1.put("civilian", civilianTimes[randomValue%civilianTimes.length]);
+        JSONObject timeObj2 = new JSONObject();
+        randomValue = randomValue+3;
+        timeObj2.put("military", militaryTimes[randomValue%militaryTimes.length]);
+        timeObj2.put("civilian", civilianTimes[randomValue%civilianTimes.length]);
+        JSONObject timeObj3 = new JSONObject();
+        //included a null value to test the processing of null:
+        timeObj3.put("military", (Object) null);
+        timeObj3.put("civilian", (Object) null);
+
+        ArrayList<JSONObject> timeObjects = new ArrayList<>();
+        timeObjects.add(timeObj1);
+        timeObjects.add(timeObj2);
+        timeObjects.add(timeObj3);
+
+        JSONArray times = new JSONArray(timeObjects);
+        obj.put("times", times);
+        JSONArray days = new JSONArray(DAYS_OF_WEEK);//start with 7 days - then remove some random days:
+        for(int dayVal=random.nextInt(111)%DAYS_OF_WEEK.length;dayVal < DAYS_OF_WEEK.length;dayVal=dayVal+2){
+            days.remove(dayVal);
+        }
+        obj.put("days", days);
+
+        JSONObject hostsHolder = new JSONObject();
+        int numberOfContacts = (random.nextInt(111)%3)+1; //1-3 contacts for the event
+        hostsHolder.put("number_of_contacts", numberOfContacts);
+        JSONArray hosts = new JSONArray();
+        JSONObject contact = new JSONObject();
+        contact.put("name", faker.name().fullName());
+        contact.put("phone", faker.phoneNumber().cellPhone());
+        contact.put("email", ((String)contact.get("name")).split(" ")[0]+"@zew.org");
+        hosts.put(contact);
+        if(numberOfContacts>1) {
+            JSONObject contact2 = new JSONObject();
+            contact2.put("name", faker.name().fullName());
+            contact2.put("phone", faker.phoneNumber().cellPhone());
+            contact2.put("email", ((String)contact2.get("name")).split(" ")[0]+"@zew.org");
+            hosts.put(contact2);
+        }
+        if(numberOfContacts>2) {
+            JSONObject contact3 = new JSONObject();
+            contact3.put("name", faker.name().fullName());
+            contact3.put("phone", faker.phoneNumber().cellPhone());
+            contact3.put("email", ((String)contact3.get("name")).split(" ")[0]+"@zew.org");
+            hosts.put(contact3);
+        }
+
+        hostsHolder.put("hosts", hosts);
+        obj.put("responsible_parties", hostsHolder);
+        return obj;
+    }
+
+    /**
+     * @param seq the number of the key the document is stored under - put in as SEQ_FIELD, the tie-breaker keyset paging sorts on
+     * @return the serialized document
+     */
+    static byte[] createFakeJsonZewActivityBytes(int seq){
+        return createFakeJsonZewActivityObject().put(SEQ_FIELD,seq).toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,236 @@
+package com.redislabs.sa.ot.jzs;
+
+import redis.clients.jedis.Connection;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Protocol;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.params.ScanParams;
+import redis.clients.jedis.resps.ScanResult;
+import redis.clients.jedis.util.JedisClusterCRC16;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Deletes every key under a prefix without blocking the server:
+ *  - a scanner thread walks the keyspace with SCAN MATCH prefix* COUNT scanCount and queues the keys in batches
+ *  - deleter threads - each on its own connection - pipeline UNLINK for each batch (the memory is freed in the background by the server)
+ *  - in cluster mode every primary node gets its own scanner and deleters (SCAN only sees the keys of the node it is sent to)
+ *    and a batch is split into one UNLINK per hash slot so no command spans slots
+ *  - keysPerSecond caps the deletion rate across all deleters (0 means as fast as they can go) so live queries are not starved
+ * Progress (keys scanned, keys unlinked, keys/sec) is printed every progressSeconds.
+ * SCAN may return a key more than once - UNLINK of a key that is already gone simply counts 0, so the total unlinked is exact.
+ * Keys written under the prefix while the purge runs may or may not be deleted.
+ */
+class KeyPurger {
+
+    private static final List<String> END_OF_SCAN = Collections.emptyList();
+
+    private final ConnectionHelper connectionHelper;
+    private final String prefix;
+    private final int scanCount;
+    private final int batchSize;
+    private final int deleteThreads;
+    private final long nanosPerKey;
+    private final int progressSeconds;
+    private final AtomicLong scanned = new AtomicLong();
+    private final AtomicLong unlinked = new AtomicLong();
+    private final AtomicLong failedBatches = new AtomicLong();
+    private final AtomicLong nextPermitNanos = new AtomicLong();
+
+    /**
+     * @param connectionHelper
+     * @param prefix
+     * @param scanCount the COUNT hint of each SCAN call
+     * @param batchSize how many keys each pipelined UNLINK batch holds
+     * @param deleteThreads deleters per node
+     * @param keysPerSecond 0 means unlimited
+     * @param progressSeconds 0 means no progress lines
+     */
+    KeyPurger(ConnectionHelper connectionHelper,String prefix,int scanCount,int batchSize,int deleteThreads,double keysPerSecond,int progressSeconds){
+        this.connectionHelper = connectionHelper;
+        this.prefix = prefix;
+        this.scanCount = Math.max(1,scanCount);
+        this.batchSize = Math.max(1,batchSize);
+        this.deleteThreads = Math.max(1,deleteThreads);
+        this.nanosPerKey = keysPerSecond>0?(long)(TimeUnit.SECONDS.toNanos(1)/keysPerSecond):0;
+        this.progressSeconds = progressSeconds;
+    }
+
+    /**
+     * @return how many keys were unlinked
+     */
+    long purge(){
+        Map<String,Supplier<Connection>> nodes = new LinkedHashMap<>();
+        if(connectionHelper.isCluster()){
+            for(HostAndPort node:primaryNodes()){
+                nodes.put(node.toString(),() -> connectionHelper.clusterConnectionProvider.getConnection(node));
+            }
+        }else{
+            nodes.put("server",connectionHelper.connectionProvider::getConnection);
+        }
+        System.out.println("Purging "+prefix+"* from "+nodes.size()+" node(s): SCAN COUNT "+scanCount+", UNLINK batches of "+batchSize+
+                ", "+deleteThreads+" deleter(s) per node"+(nanosPerKey>0?", at most "+(TimeUnit.SECONDS.toNanos(1)/nanosPerKey)+" keys/sec":""));
+        long startTime = System.nanoTime();
+        nextPermitNanos.set(startTime);
+        ScheduledExecutorService reporter = startProgressReports(startTime);
+        ExecutorService threads = Executors.newFixedThreadPool(nodes.size()*(deleteThreads+1));
+        List<Future<?>> futures = new ArrayList<>();
+        for(Map.Entry<String,Supplier<Connection>> node:nodes.entrySet()){
+            BlockingQueue<List<String>> batches = new ArrayBlockingQueue<>(deleteThreads*2);
+            futures.add(threads.submit(() -> scan(node.getKey(),node.getValue(),batches)));
+            for(int i=0;i<deleteThreads;i++){
+                futures.add(threads.submit(() -> unlink(node.getValue(),batches)));
+            }
+        }
+        try {
+            for(Future<?> f:futures){
+                f.get();
+            }
+        }catch(Exception e){
+            System.out.println("Purge failed: "+e.getMessage());
+        }finally {
+            threads.shutdownNow();
+            if(reporter!=null){
+                reporter.shutdownNow();
+            }
+        }
+        double seconds = (System.nanoTime()-startTime)/1_000_000_000.0;
+        System.out.println(String.format("Purged %d keys (%d scanned, %d failed batches) in %.2f seconds - %.0f keys/sec",
+                unlinked.get(),scanned.get(),failedBatches.get(),seconds,unlinked.get()/Math.max(seconds,0.001)));
+        return unlinked.get();
+    }
+
+    // hands full batches to the deleters, then one END_OF_SCAN per deleter
+    private Void scan(String nodeName,Supplier<Connection> connections,BlockingQueue<List<String>> batches) throws InterruptedException{
+        ScanParams params = new ScanParams().match(prefix+"*").count(scanCount);
+        List<String> batch = new ArrayList<>(batchSize);
+        try(Jedis jedis = new Jedis(connections.get())){
+            String cursor = ScanParams.SCAN_POINTER_START;
+            do{
+                ScanResult<String> page = jedis.scan(cursor,params);
+                scanned.addAndGet(page.getResult().size());
+                for(String key:page.getResult()){
+                    batch.add(key);
+                    if(batch.size()==batchSize){
+                        batches.put(batch);
+                        batch = new ArrayList<>(batchSize);
+                    }
+                }
+                cursor = page.getCursor();
+            }while(!ScanParams.SCAN_POINTER_START.equals(cursor));
+        }catch(RuntimeException re){
+            System.out.println("SCAN of "+nodeName+" stopped early: "+re.getMessage());
+        }finally {
+            if(!batch.isEmpty()){
+                batches.put(batch);
+            }
+            for(int i=0;i<deleteThreads;i++){
+                batches.put(END_OF_SCAN);
+            }
+        }
+        return null;
+    }
+
+    private Void unlink(Supplier<Connection> connections,BlockingQueue<List<String>> batches) throws InterruptedException{
+        try(Connection connection = connections.get()){
+            Pipeline pipeline = new Pipeline(connection);
+            List<String> batch;
+            while((batch = batches.take())!=END_OF_SCAN){
+                acquire(batch.size());
+                List<Response<Long>> replies = new ArrayList<>();
+                if(connectionHelper.isCluster()){
+                    for(List<String> sameSlot:bySlot(batch)){
+                        replies.add(pipeline.unlink(sameSlot.toArray(new String[0])));
+                    }
+                }else{
+                    replies.add(pipeline.unlink(batch.toArray(new String[0])));
+                }
+                pipeline.sync();
+                for(Response<Long> reply:replies){
+                    try {
+                        unlinked.addAndGet(reply.get());
+                    }catch(RuntimeException re){
+                        failedBatches.incrementAndGet(); // e.g. MOVED after a slot migration - rerun the purge to catch these
+                    }
+                }
+            }
+        }catch(RuntimeException re){
+            System.out.println("A purge deleter lost its connection: "+re.getMessage());
+            // keep taking batches so the scanner never waits for room in the queue
+            while(batches.take()!=END_OF_SCAN){
+                failedBatches.incrementAndGet();
+            }
+        }
+        return null;
+    }
+
+    // waits until the rate limit allows another `keys` deletions (a slow start is not made up for with a burst)
+    private void acquire(int keys){
+        if(nanosPerKey==0){
+            return;
+        }
+        long cost = keys*nanosPerKey;
+        long permitAt = nextPermitNanos.updateAndGet(next -> Math.max(next,System.nanoTime())+cost)-cost;
+        long wait;
+        while((wait = permitAt-System.nanoTime())>0){
+            LockSupport.parkNanos(wait);
+        }
+    }
+
+    private static List<List<String>> bySlot(List<String> keys){
+        Map<Integer,List<String>> slots = new LinkedHashMap<>();
+        for(String key:keys){
+            slots.computeIfAbsent(JedisClusterCRC16.getSlot(key),s -> new ArrayList<>()).add(key);
+        }
+        return new ArrayList<>(slots.values());
+    }
+
+    private Set<HostAndPort> primaryNodes(){
+        Set<HostAndPort> nodes = new LinkedHashSet<>();
+        for(int slot=0;slot<Protocol.CLUSTER_HASHSLOTS;slot++){
+            HostAndPort owner = connectionHelper.clusterConnectionProvider.getNode(slot);
+            if(owner!=null){
+                nodes.add(owner);
+            }
+        }
+        return nodes;
+    }
+
+    private ScheduledExecutorService startProgressReports(long startTime){
+        if(progressSeconds<=0){
+            return null;
+        }
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r,"purge-progress");
+            t.setDaemon(true);
+            return t;
+        });
+        long[] previous = {0};
+        reporter.scheduleAtFixedRate(() -> {
+            long done = unlinked.get();
+            System.out.println(String.format("Purge: %d scanned, %d unlinked | %.0f keys/sec over the last %d seconds, %.0f keys/sec overall",
+                    scanned.get(),done,(done-previous[0])/(double)progressSeconds,progressSeconds,
+                    done/((System.nanoTime()-startTime)/1_000_000_000.0)));
+            previous[0] = done;
+        },progressSeconds,progressSeconds,TimeUnit.SECONDS);
+        return reporter;
+    }
+}
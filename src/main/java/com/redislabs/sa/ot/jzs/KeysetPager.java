@@ -0,0 +1,143 @@
+package com.redislabs.sa.ot.jzs;
+
+import redis.clients.jedis.UnifiedJedis;
+import redis.clients.jedis.search.FieldName;
+import redis.clients.jedis.search.aggr.AggregationBuilder;
+import redis.clients.jedis.search.aggr.AggregationResult;
+import redis.clients.jedis.search.aggr.Row;
+import redis.clients.jedis.search.aggr.SortedField;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Walks every match of a query in (cost, seq) order one page at a time using keyset continuation instead of LIMIT offset
+ * With LIMIT offset the engine has to produce, load and sort every earlier match before it can skip them, so deep pages get slower.
+ * Here each page starts where the previous one ended, and the continuation is part of the index query itself:
+ *   FT.AGGREGATE idx "(base query) ((@cost:[lastCost lastCost] @seq:[(lastSeq +inf]) | @cost:[(lastCost +inf])"
+ *     SORTBY 4 @cost ASC @seq ASC MAX pageSize LOAD ... LIMIT 0 pageSize
+ * cost and seq are declared SORTABLE in the index so the sort needs no document access, and seq (the key number every
+ * loaded document carries) is the unique tie-breaker that makes the order total - many activities share the same cost.
+ * Matches from earlier pages are never produced, nothing is loaded before the sort has cut the rows down to pageSize,
+ * and the sort only keeps pageSize rows. The numeric range iterators still walk every match that is left, so a page
+ * costs O(remaining matches) rather than O(offset + pageSize) - deep pages get cheaper, not slower.
+ */
+class KeysetPager implements Iterator<List<Map<String,Object>>> {
+
+    static final String KEY_FIELD = "__key";
+    static final String COST_FIELD = "cost";
+    static final String SEQ_FIELD = JsonZewActivityBuilder.SEQ_FIELD;
+
+    private final UnifiedJedis jedis;
+    private final String indexName;
+    private final String baseQuery;
+    private final int pageSize;
+    private final int dialect;
+    private final FieldName[] loadFields;
+    private String lastCost = null;
+    private String lastSeq = null;
+    private boolean exhausted = false;
+    private List<Map<String,Object>> nextPage = null;
+    private long lastPageNanos = 0;
+    private long pagesRead = 0;
+
+    /**
+     * @param jedis
+     * @param indexName
+     * @param baseQuery any query (use * to walk every document in the index)
+     * @param pageSize
+     * @param dialect
+     * @param returnFields fields to load for every row (the key, cost and seq are always returned)
+     */
+    KeysetPager(UnifiedJedis jedis,String indexName,String baseQuery,int pageSize,int dialect,FieldName... returnFields){
+        this.jedis = jedis;
+        this.indexName = indexName;
+        this.baseQuery = baseQuery==null||baseQuery.trim().isEmpty()?"*":baseQuery.trim();
+        this.pageSize = Math.max(1,pageSize);
+        this.dialect = dialect;
+        List<FieldName> fields = new ArrayList<>();
+        fields.add(FieldName.of("@"+KEY_FIELD));
+        fields.addAll(Arrays.asList(returnFields));
+        this.loadFields = fields.toArray(new FieldName[0]);
+    }
+
+    @Override
+    public boolean hasNext(){
+        if(nextPage==null&&!exhausted){
+            nextPage = fetchPage();
+        }
+        return nextPage!=null&&!nextPage.isEmpty();
+    }
+
+    @Override
+    public List<Map<String,Object>> next(){
+        if(!hasNext()){
+            throw new NoSuchElementException();
+        }
+        List<Map<String,Object>> page = nextPage;
+        nextPage = null;
+        return page;
+    }
+
+    /**
+     * @return how long the server round trip for the most recent page took
+     */
+    long lastPageNanos(){
+        return lastPageNanos;
+    }
+
+    long pagesRead(){
+        return pagesRead;
+    }
+
+    /**
+     * Reads the page at the given offset the LIMIT way - for comparing with the keyset pages
+     * @param offset how many matches to skip
+     * @return how long the server round trip took
+     */
+    long offsetPageNanos(long offset){
+        int skip = (int)Math.min(Integer.MAX_VALUE-pageSize,offset);
+        AggregationBuilder builder = new AggregationBuilder(baseQuery)
+                .sortBy(skip+pageSize,SortedField.asc("@"+COST_FIELD),SortedField.asc("@"+SEQ_FIELD))
+                .load(loadFields).limit(skip,pageSize).dialect(dialect);
+        long start = System.nanoTime();
+        jedis.ftAggregate(indexName,builder);
+        return System.nanoTime()-start;
+    }
+
+    private List<Map<String,Object>> fetchPage(){
+        AggregationBuilder builder = new AggregationBuilder(pageQuery())
+                .sortBy(pageSize,SortedField.asc("@"+COST_FIELD),SortedField.asc("@"+SEQ_FIELD))
+                .load(loadFields).limit(0,pageSize).dialect(dialect);
+        long start = System.nanoTime();
+        AggregationResult result = jedis.ftAggregate(indexName,builder);
+        lastPageNanos = System.nanoTime()-start;
+        pagesRead++;
+        List<Map<String,Object>> rows = result.getResults();
+        if(rows.size()<pageSize){
+            exhausted = true;
+        }
+        if(!rows.isEmpty()){
+            Row last = result.getRow(rows.size()-1);
+            lastCost = last.getString(COST_FIELD);
+            lastSeq = last.getString(SEQ_FIELD);
+            if(lastSeq.isEmpty()&&!exhausted){
+                throw new IllegalStateException(last.getString(KEY_FIELD)+" has no $."+SEQ_FIELD+
+                        " - reload the data so every document carries the tie-breaker keyset paging needs");
+            }
+        }
+        return rows;
+    }
+
+    private String pageQuery(){
+        if(lastCost==null){
+            return baseQuery;
+        }
+        String after = "((@"+COST_FIELD+":["+lastCost+" "+lastCost+"] @"+SEQ_FIELD+":[("+lastSeq+" +inf]) | @"+COST_FIELD+":[("+lastCost+" +inf])";
+        return "*".equals(baseQuery)?after:"("+baseQuery+") "+after;
+    }
+}
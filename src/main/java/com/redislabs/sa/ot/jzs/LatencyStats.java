@@ -0,0 +1,52 @@
+package com.redislabs.sa.ot.jzs;
+
+import org.HdrHistogram.Histogram;
+
+/**
+ * Small helpers for recording latencies (in nanoseconds) with HdrHistogram and printing them as a table
+ * All tables printed by the benchmark modes share this layout so their numbers can be compared side by side
+ */
+class LatencyStats {
+
+    static final String HEADER = String.format("%-28s %10s %10s %10s %10s %10s %10s %10s",
+            "name","count","ops/sec","p50(us)","p90(us)","p99(us)","p99.9(us)","max(us)");
+
+    /**
+     * @return an auto-resizing histogram with 3 significant digits of precision
+     */
+    static Histogram newHistogram(){
+        return new Histogram(3);
+    }
+
+    /**
+     * @param name
+     * @param histogram latencies recorded in nanoseconds
+     * @param elapsedSeconds the duration the values were recorded over (used to calculate ops/sec)
+     * @return one row of the table that HEADER describes
+     */
+    static String row(String name,Histogram histogram,double elapsedSeconds){
+        return row(name,histogram,histogram.getTotalCount(),elapsedSeconds);
+    }
+
+    /**
+     * @param name
+     * @param histogram latencies recorded in nanoseconds
+     * @param count how many operations really ran - a histogram corrected for coordinated omission also holds synthetic values
+     * @param elapsedSeconds the duration the operations ran for (used to calculate ops/sec)
+     * @return one row of the table that HEADER describes
+     */
+    static String row(String name,Histogram histogram,long count,double elapsedSeconds){
+        return String.format("%-28s %10d %10.1f %10.1f %10.1f %10.1f %10.1f %10.1f",
+                name,count,
+                elapsedSeconds>0?count/elapsedSeconds:0.0,
+                micros(histogram.getValueAtPercentile(50.0)),
+                micros(histogram.getValueAtPercentile(90.0)),
+                micros(histogram.getValueAtPercentile(99.0)),
+                micros(histogram.getValueAtPercentile(99.9)),
+                micros(histogram.getMaxValue()));
+    }
+
+    static double micros(long nanos){
+        return nanos/1000.0;
+    }
+}
@@ -1,19 +1,23 @@
 package com.redislabs.sa.ot.jzs;
-import com.github.javafaker.Faker;
-import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
 import org.json.JSONArray;
 import org.json.JSONObject;
 import redis.clients.jedis.*;
-import redis.clients.jedis.providers.PooledConnectionProvider;
 import redis.clients.jedis.search.*;
 import redis.clients.jedis.search.aggr.*;
 
 import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.InputStreamReader;
-import java.net.URI;
-import java.net.URISyntaxException;
-import java.time.Duration;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.IntFunction;
 
 /**
  * You will need an instance of Redis running Search and JSON modules to use this example.
@@ -42,6 +46,62 @@ import java.util.*;
  * mvn compile exec:java -Dexec.cleanupDaemonThreads=false -Dexec.args="--host 192.168.1.21 --port 12000 --user default --password secretpassword12 --quantity 2 --limitsize 2 --indexsleeptime 30000"
  * If you want to try out JSON multi-value search https://github.com/RediSearch/RediSearch/releases/tag/v2.6.1 and have search V2.6.1 and JSON 2.4.0 or better installed you can specify --multivalue true
  * mvn compile exec:java -Dexec.cleanupDaemonThreads=false -Dexec.args="--host 192.168.1.21 --port 12000 --user default --password secretpassword12 --quantity 2 --multivalue true --limitsize 2 --indexsleeptime 30000"
+ * Large quantities can be loaded using several writer threads, each with its own pipeline and range of keys:
+ * mvn compile exec:java -Dexec.cleanupDaemonThreads=false -Dexec.args="--host 192.168.1.21 --port 12000 --quantity 2000000 --loadthreads 8 --batchsize 500 --maxinflight 4"
+ * Document generation can be switched to the allocation-light generator (same document shape, no per-document Faker calls):
+ * mvn compile exec:java -Dexec.cleanupDaemonThreads=false -Dexec.args="--host 192.168.1.21 --port 12000 --quantity 2000000 --loadthreads 8 --fastgenerator true"
+ * To measure the queries under load (throughput and latency percentiles per query) add --querybenchmark true:
+ * mvn compile exec:java -Dexec.cleanupDaemonThreads=false -Dexec.args="--host 192.168.1.21 --port 12000 --quantity 0 --querybenchmark true --querythreads 16 --targetrate 2000 --warmupseconds 10 --measureseconds 60 --querymix Query1:4,Query2:2,Query3:2,Dialect3:1,Aggregation:1"
+ * To see server-side (FT.PROFILE) and client-side (round trip and decode) time for each query add --profile true:
+ * mvn compile exec:java -Dexec.cleanupDaemonThreads=false -Dexec.args="--host 192.168.1.21 --port 12000 --quantity 0 --profile true --profileiterations 5"
+ * The query benchmark can fire its queries through a client-side result cache (invalidated by keyspace notifications on zew:activities:*):
+ * mvn compile exec:java -Dexec.cleanupDaemonThreads=false -Dexec.args="--host 192.168.1.21 --port 12000 --quantity 0 --querybenchmark true --cache true --cachemaxentries 10000 --cachemaxmb 64 --cachemaxstalenessmillis 1000"
+ * The aggregation can be streamed back in chunks using a cursor (bounded client memory however many groups there are):
+ * mvn compile exec:java -Dexec.cleanupDaemonThreads=false -Dexec.args="--host 192.168.1.21 --port 12000 --quantity 0 --aggregatecursorcount 100 --aggregatecursormaxidle 60000"
+ * To walk every match of a query in cost order using keyset paging (pages cost the same however deep they are):
+ * mvn compile exec:java -Dexec.cleanupDaemonThreads=false -Dexec.args="--host 192.168.1.21 --port 12000 --quantity 0 --keysetpaging * --pagesize 1000"
+ * Instead of dropping the index and sleeping for --indexsleeptime, a new version of the index can be built next to the live one
+ * and the alias swapped over once FT.INFO shows it has finished indexing (queries never see a partial index):
+ * mvn compile exec:java -Dexec.cleanupDaemonThreads=false -Dexec.args="--host 192.168.1.21 --port 12000 --quantity 200000 --rebuildindex true --indexpollmillis 1000"
+ * To compare the index memory, indexing rate and query latency of alternative schemas over the loaded documents:
+ * mvn compile exec:java -Dexec.cleanupDaemonThreads=false -Dexec.args="--host 192.168.1.21 --port 12000 --quantity 0 --schemavariants all --variantqueryiterations 500 --indexpollmillis 100"
+ * To compare autocomplete latency with and without the local prefix cache (no typing needed):
+ * mvn compile exec:java -Dexec.cleanupDaemonThreads=false -Dexec.args="--host 192.168.1.21 --port 12000 --quantity 0 --autocompletebenchmark true --autocompleterate 5000 --autocompletethreads 4 --measureseconds 20"
+ * The interactive autocomplete can also be answered from the local prefix cache: --autocomplete 3 --suggestcache true --suggestrefreshmillis 5000
+ * To run against a Redis Cluster (any node can be given - the rest of the topology is discovered) add --cluster true:
+ * mvn compile exec:java -Dexec.cleanupDaemonThreads=false -Dexec.args="--host 127.0.0.1 --port 30001 --cluster true --quantity 2000000 --batchsize 500 --fastgenerator true"
+ * To send all the queries together as one batch (pipelined on one connection or fanned out over pooled connections) and compare page latency:
+ * mvn compile exec:java -Dexec.cleanupDaemonThreads=false -Dexec.args="--host 192.168.1.21 --port 12000 --quantity 0 --querybatch fanout --querybatchthreads 5"
+ * The connection pool can be sized from the command line, warmed up before anything is measured and reported on every few seconds
+ * (the same numbers are available through JMX as com.redislabs.sa.ot.jzs:type=ConnectionPool):
+ * mvn compile exec:java -Dexec.cleanupDaemonThreads=false -Dexec.args="--host 192.168.1.21 --port 12000 --quantity 0 --querybenchmark true --querythreads 64 --poolmaxtotal 128 --poolmaxidle 64 --poolminidle 64 --poolmaxwaitmillis 2000 --poolwarmup 64 --poolstatsseconds 5"
+ * To compare storing the activities as JSON documents with storing them as flattened HASHes (load rate, memory, index size and query latency):
+ * mvn compile exec:java -Dexec.cleanupDaemonThreads=false -Dexec.args="--host 192.168.1.21 --port 12000 --quantity 0 --storagecompare 100000 --storagemodes json,hash --loadthreads 4 --fastgenerator true"
+ * To run the query benchmark while activities are being edited (and measure write latency and how long a change takes to become searchable):
+ * mvn compile exec:java -Dexec.cleanupDaemonThreads=false -Dexec.args="--host 192.168.1.21 --port 12000 --quantity 0 --mixedworkload true --updaterate 500 --updatethreads 4 --visibilityprobemillis 100 --querythreads 16 --targetrate 2000 --measureseconds 60"
+ * To load the same dataset every run use --seed (documents are generated by the fast generator from the seed and their key number):
+ * mvn compile exec:java -Dexec.cleanupDaemonThreads=false -Dexec.args="--host 192.168.1.21 --port 12000 --quantity 2000000 --loadthreads 8 --seed 42"
+ * or save it once to a snapshot file and replay it from there (the first run writes the file, later runs only read it):
+ * mvn compile exec:java -Dexec.cleanupDaemonThreads=false -Dexec.args="--host 192.168.1.21 --port 12000 --quantity 2000000 --loadthreads 8 --seed 42 --snapshot /tmp/zew-2m.snapshot"
+ * The query benchmark, profiler and mixed workload can fire parameterized templates (new values from the generator's vocabularies every call) instead of the fixed queries:
+ * mvn compile exec:java -Dexec.cleanupDaemonThreads=false -Dexec.args="--host 192.168.1.21 --port 12000 --quantity 0 --querybenchmark true --querytemplates true --querythreads 16 --measureseconds 60"
+ * To count the matches of a query by day, time, cost band, location and species with all the facet commands pipelined together
+ * (add --cache true to serve repeated base queries from the client-side cache):
+ * mvn compile exec:java -Dexec.cleanupDaemonThreads=false -Dexec.args="--host 192.168.1.21 --port 12000 --quantity 0 --facets days,times,cost,location,species --facetquery @cost:[1.00 +inf] --facettopn 5"
+ * To give every activity an embedding of its description, index it as a VECTOR field (hnsw or flat) and run a KNN and a hybrid KNN query:
+ * mvn compile exec:java -Dexec.cleanupDaemonThreads=false -Dexec.args="--host 192.168.1.21 --port 12000 --quantity 200000 --vectorindex hnsw --vectordim 64 --hnswm 16 --hnswefconstruction 200 --hnswefruntime 10"
+ * To compare FLAT and HNSW vector indexes over the loaded activities (build time, memory, KNN / hybrid latency and recall@k against FLAT):
+ * mvn compile exec:java -Dexec.cleanupDaemonThreads=false -Dexec.args="--host 192.168.1.21 --port 12000 --quantity 200000 --vectorbenchmark true --vectork 10 --vectorqueries 500 --vectorfilter @days:{Sat}"
+ * To delete every zew:activities: document left by earlier runs before loading (SCAN + pipelined UNLINK, rate limited so live queries keep running):
+ * mvn compile exec:java -Dexec.cleanupDaemonThreads=false -Dexec.args="--host 192.168.1.21 --port 12000 --purge true --purgescancount 1000 --purgebatchsize 500 --purgethreads 4 --purgerate 50000 --quantity 200000"
+ * To send the benchmark reads (FT.SEARCH, FT.AGGREGATE, FT.SUGGET) to replicas while the writes stay on the primary:
+ * mvn compile exec:java -Dexec.cleanupDaemonThreads=false -Dexec.args="--host 127.0.0.1 --port 6379 --quantity 0 --mixedworkload true --replicas 127.0.0.1:6380,127.0.0.1:6381 --replicarouting leastlatency --replicamaxlagmillis 1000"
+ * To count the bytes sent and received and the round trips per command type and per named query (summary at the end, counters over JMX):
+ * mvn compile exec:java -Dexec.cleanupDaemonThreads=false -Dexec.args="--host 192.168.1.21 --port 12000 --quantity 0 --limitsize 20 --wirestats true --wirestatsiterations 10"
+ * To report the cold first call of each query separately from its steady-state latency (measured after a warm-up that waits for stable latency):
+ * mvn compile exec:java -Dexec.cleanupDaemonThreads=false -Dexec.args="--host 192.168.1.21 --port 12000 --quantity 0 --querywarmup true --querywarmupiterations 200 --querywarmupmaxseconds 30 --querywarmuptolerance 0.05 --steadystateiterations 500"
+ * To print the search results as typed records decoded straight from the raw reply (and compare the decode time with SearchResult):
+ * mvn compile exec:java -Dexec.cleanupDaemonThreads=false -Dexec.args="--host 192.168.1.21 --port 12000 --quantity 0 --typeddecode true"
  */
 public class Main {
 
@@ -54,6 +114,87 @@ public class Main {
     private static int quantity = 0;
     private static boolean multiValueSearch = false;
     private static int dialectVersion = 2;//Dialect 3 is needed for complete multivalue results
+    private static int loadThreads = 1;
+    private static int loadBatchSize = 200;
+    private static int maxInFlightBatches = 0; // 0 means each writer thread may have its own batch in flight
+    private static boolean useFastGenerator = false;
+    private static boolean runQueryBenchmark = false;
+    private static int queryThreads = 4;
+    private static double targetQueryRate = 0; // 0 means closed-loop
+    private static int warmupSeconds = 5;
+    private static int measureSeconds = 30;
+    private static String queryMix = "";
+    private static boolean runProfiler = false;
+    private static int profileIterations = 5;
+    private static boolean useResultCache = false;
+    private static int cacheMaxEntries = 10000;
+    private static int cacheMaxMegabytes = 64;
+    private static long cacheMaxStalenessMillis = 1000;
+    private static int aggregateCursorCount = 0; // 0 means read the whole aggregation result in one reply
+    private static long aggregateCursorMaxIdle = 300000;
+    private static String keysetPagingQuery = null;
+    private static int keysetPageSize = 1000;
+    private static boolean rebuildIndex = false;
+    private static boolean clusterMode = false;
+    private static String queryBatchMode = null; // pipelined or fanout
+    private static int queryBatchThreads = 4;
+    private static boolean compareTypedDecoding = false;
+    private static int poolMaxTotal = 1000;
+    private static int poolMaxIdle = 100;
+    private static int poolMinIdle = 1;
+    private static long poolMaxWaitMillis = 60000;
+    private static boolean poolTestOnCreate = true;
+    private static int poolStatsSeconds = 0; // 0 means no periodic pool log line
+    private static int poolWarmUpConnections = 0;
+    private static long indexPollMillis = 1000;
+    private static long indexTimeoutMillis = 3600000;
+    private static String schemaVariants = null;
+    private static int variantQueryIterations = 200;
+    private static int storageCompareDocuments = 0; // 0 means no storage mode comparison
+    private static String storageModes = "json,hash";
+    private static int storageQueryIterations = 200;
+    private static Long datasetSeed = null; // null means the dataset is different every run
+    private static String snapshotPath = null;
+    private static boolean useQueryTemplates = false;
+    private static String facetNames = null; // null means no facet counts
+    private static String facetQuery = "*";
+    private static int facetTopN = 5;
+    private static boolean purgeFirst = false;
+    private static int purgeScanCount = 1000;
+    private static int purgeBatchSize = 500;
+    private static int purgeThreads = 4;
+    private static double purgeRate = 0; // keys/sec - 0 means unlimited
+    private static int purgeProgressSeconds = 5;
+    private static String vectorIndexAlgorithm = null; // null means idx_zew_events has no VECTOR field
+    private static int vectorDimension = ActivityEmbedding.DEFAULT_DIMENSION;
+    private static int hnswM = 16;
+    private static int hnswEfConstruction = 200;
+    private static int hnswEfRuntime = 10;
+    private static boolean runVectorBenchmark = false;
+    private static int vectorK = 10;
+    private static int vectorQueries = 200;
+    private static String vectorFilter = "@days:{Sat} @cost:[-inf 5]";
+    private static boolean runMixedWorkload = false;
+    private static int updateThreads = 2;
+    private static double updateRate = 100; // 0 means closed-loop
+    private static long visibilityProbeMillis = 100;
+    private static boolean runAutocompleteBenchmark = false;
+    private static double autocompleteRate = 0; // 0 means closed-loop
+    private static int autocompleteThreads = 1;
+    private static boolean useSuggestionCache = false;
+    private static long suggestionRefreshMillis = 5000;
+    private static String replicaAddresses = null; // null means every read goes to the primary
+    private static String replicaRouting = ReplicaRouter.ROUND_ROBIN;
+    private static long replicaMaxLagMillis = 1000; // -1 means any lag is fine
+    private static long replicaHealthMillis = 500;
+    private static ReplicaRouter replicaRouter = null;
+    private static boolean countWireBytes = false;
+    private static int wireStatsIterations = 10;
+    private static boolean warmUpQueries = false;
+    private static int queryWarmUpIterations = 200;
+    private static int queryWarmUpMaxSeconds = 30;
+    private static double queryWarmUpTolerance = 0.05;
+    private static int steadyStateIterations = 200;
     private static ConnectionHelper connectionHelper = null;
 
     public static void main(String[] args) {
@@ -105,12 +246,361 @@ public class Main {
                     dialectVersion = 2;
                 }
             }
+            if (argList.contains("--loadthreads")) {
+                int loadThreadsIndex = argList.indexOf("--loadthreads");
+                loadThreads = Integer.parseInt(argList.get(loadThreadsIndex + 1));
+            }
+            if (argList.contains("--batchsize")) {
+                int batchSizeIndex = argList.indexOf("--batchsize");
+                loadBatchSize = Integer.parseInt(argList.get(batchSizeIndex + 1));
+            }
+            if (argList.contains("--maxinflight")) {
+                int maxInFlightIndex = argList.indexOf("--maxinflight");
+                maxInFlightBatches = Integer.parseInt(argList.get(maxInFlightIndex + 1));
+            }
+            if (argList.contains("--fastgenerator")) {
+                int fastGeneratorIndex = argList.indexOf("--fastgenerator");
+                useFastGenerator = Boolean.parseBoolean(argList.get(fastGeneratorIndex + 1));
+            }
+            if (argList.contains("--querybenchmark")) {
+                int queryBenchmarkIndex = argList.indexOf("--querybenchmark");
+                runQueryBenchmark = Boolean.parseBoolean(argList.get(queryBenchmarkIndex + 1));
+            }
+            if (argList.contains("--querythreads")) {
+                int queryThreadsIndex = argList.indexOf("--querythreads");
+                queryThreads = Integer.parseInt(argList.get(queryThreadsIndex + 1));
+            }
+            if (argList.contains("--targetrate")) {
+                int targetRateIndex = argList.indexOf("--targetrate");
+                targetQueryRate = Double.parseDouble(argList.get(targetRateIndex + 1));
+            }
+            if (argList.contains("--warmupseconds")) {
+                int warmupSecondsIndex = argList.indexOf("--warmupseconds");
+                warmupSeconds = Integer.parseInt(argList.get(warmupSecondsIndex + 1));
+            }
+            if (argList.contains("--measureseconds")) {
+                int measureSecondsIndex = argList.indexOf("--measureseconds");
+                measureSeconds = Integer.parseInt(argList.get(measureSecondsIndex + 1));
+            }
+            if (argList.contains("--querymix")) {
+                int queryMixIndex = argList.indexOf("--querymix");
+                queryMix = argList.get(queryMixIndex + 1);
+            }
+            if (argList.contains("--profile")) {
+                int profileIndex = argList.indexOf("--profile");
+                runProfiler = Boolean.parseBoolean(argList.get(profileIndex + 1));
+            }
+            if (argList.contains("--profileiterations")) {
+                int profileIterationsIndex = argList.indexOf("--profileiterations");
+                profileIterations = Integer.parseInt(argList.get(profileIterationsIndex + 1));
+            }
+            if (argList.contains("--cache")) {
+                int cacheIndex = argList.indexOf("--cache");
+                useResultCache = Boolean.parseBoolean(argList.get(cacheIndex + 1));
+            }
+            if (argList.contains("--cachemaxentries")) {
+                int cacheMaxEntriesIndex = argList.indexOf("--cachemaxentries");
+                cacheMaxEntries = Integer.parseInt(argList.get(cacheMaxEntriesIndex + 1));
+            }
+            if (argList.contains("--cachemaxmb")) {
+                int cacheMaxMegabytesIndex = argList.indexOf("--cachemaxmb");
+                cacheMaxMegabytes = Integer.parseInt(argList.get(cacheMaxMegabytesIndex + 1));
+            }
+            if (argList.contains("--cachemaxstalenessmillis")) {
+                int cacheMaxStalenessIndex = argList.indexOf("--cachemaxstalenessmillis");
+                cacheMaxStalenessMillis = Long.parseLong(argList.get(cacheMaxStalenessIndex + 1));
+            }
+            if (argList.contains("--aggregatecursorcount")) {
+                int cursorCountIndex = argList.indexOf("--aggregatecursorcount");
+                aggregateCursorCount = Integer.parseInt(argList.get(cursorCountIndex + 1));
+            }
+            if (argList.contains("--aggregatecursormaxidle")) {
+                int cursorMaxIdleIndex = argList.indexOf("--aggregatecursormaxidle");
+                aggregateCursorMaxIdle = Long.parseLong(argList.get(cursorMaxIdleIndex + 1));
+            }
+            if (argList.contains("--keysetpaging")) {
+                int keysetPagingIndex = argList.indexOf("--keysetpaging");
+                keysetPagingQuery = argList.get(keysetPagingIndex + 1);
+            }
+            if (argList.contains("--pagesize")) {
+                int pageSizeIndex = argList.indexOf("--pagesize");
+                keysetPageSize = Integer.parseInt(argList.get(pageSizeIndex + 1));
+            }
+            if (argList.contains("--cluster")) {
+                int clusterIndex = argList.indexOf("--cluster");
+                clusterMode = Boolean.parseBoolean(argList.get(clusterIndex + 1));
+            }
+            if (argList.contains("--querybatch")) {
+                int queryBatchIndex = argList.indexOf("--querybatch");
+                queryBatchMode = argList.get(queryBatchIndex + 1);
+            }
+            if (argList.contains("--querybatchthreads")) {
+                int queryBatchThreadsIndex = argList.indexOf("--querybatchthreads");
+                queryBatchThreads = Integer.parseInt(argList.get(queryBatchThreadsIndex + 1));
+            }
+            if (argList.contains("--typeddecode")) {
+                int typedDecodeIndex = argList.indexOf("--typeddecode");
+                compareTypedDecoding = Boolean.parseBoolean(argList.get(typedDecodeIndex + 1));
+            }
+            if (argList.contains("--storagecompare")) {
+                int storageCompareIndex = argList.indexOf("--storagecompare");
+                storageCompareDocuments = Integer.parseInt(argList.get(storageCompareIndex + 1));
+            }
+            if (argList.contains("--storagemodes")) {
+                int storageModesIndex = argList.indexOf("--storagemodes");
+                storageModes = argList.get(storageModesIndex + 1);
+            }
+            if (argList.contains("--storagequeryiterations")) {
+                int storageQueryIterationsIndex = argList.indexOf("--storagequeryiterations");
+                storageQueryIterations = Integer.parseInt(argList.get(storageQueryIterationsIndex + 1));
+            }
+            if (argList.contains("--seed")) {
+                int seedIndex = argList.indexOf("--seed");
+                datasetSeed = Long.parseLong(argList.get(seedIndex + 1));
+            }
+            if (argList.contains("--snapshot")) {
+                int snapshotIndex = argList.indexOf("--snapshot");
+                snapshotPath = argList.get(snapshotIndex + 1);
+            }
+            if (argList.contains("--querytemplates")) {
+                int queryTemplatesIndex = argList.indexOf("--querytemplates");
+                useQueryTemplates = Boolean.parseBoolean(argList.get(queryTemplatesIndex + 1));
+            }
+            if (argList.contains("--facets")) {
+                int facetsIndex = argList.indexOf("--facets");
+                facetNames = argList.get(facetsIndex + 1);
+            }
+            if (argList.contains("--facetquery")) {
+                int facetQueryIndex = argList.indexOf("--facetquery");
+                facetQuery = argList.get(facetQueryIndex + 1);
+            }
+            if (argList.contains("--facettopn")) {
+                int facetTopNIndex = argList.indexOf("--facettopn");
+                facetTopN = Integer.parseInt(argList.get(facetTopNIndex + 1));
+            }
+            if (argList.contains("--purge")) {
+                int purgeIndex = argList.indexOf("--purge");
+                purgeFirst = Boolean.parseBoolean(argList.get(purgeIndex + 1));
+            }
+            if (argList.contains("--purgescancount")) {
+                int purgeScanCountIndex = argList.indexOf("--purgescancount");
+                purgeScanCount = Integer.parseInt(argList.get(purgeScanCountIndex + 1));
+            }
+            if (argList.contains("--purgebatchsize")) {
+                int purgeBatchSizeIndex = argList.indexOf("--purgebatchsize");
+                purgeBatchSize = Integer.parseInt(argList.get(purgeBatchSizeIndex + 1));
+            }
+            if (argList.contains("--purgethreads")) {
+                int purgeThreadsIndex = argList.indexOf("--purgethreads");
+                purgeThreads = Integer.parseInt(argList.get(purgeThreadsIndex + 1));
+            }
+            if (argList.contains("--purgerate")) {
+                int purgeRateIndex = argList.indexOf("--purgerate");
+                purgeRate = Double.parseDouble(argList.get(purgeRateIndex + 1));
+            }
+            if (argList.contains("--purgeprogressseconds")) {
+                int purgeProgressIndex = argList.indexOf("--purgeprogressseconds");
+                purgeProgressSeconds = Integer.parseInt(argList.get(purgeProgressIndex + 1));
+            }
+            if (argList.contains("--vectorindex")) {
+                int vectorIndexIndex = argList.indexOf("--vectorindex");
+                vectorIndexAlgorithm = argList.get(vectorIndexIndex + 1);
+            }
+            if (argList.contains("--vectordim")) {
+                int vectorDimIndex = argList.indexOf("--vectordim");
+                vectorDimension = Integer.parseInt(argList.get(vectorDimIndex + 1));
+            }
+            if (argList.contains("--hnswm")) {
+                int hnswMIndex = argList.indexOf("--hnswm");
+                hnswM = Integer.parseInt(argList.get(hnswMIndex + 1));
+            }
+            if (argList.contains("--hnswefconstruction")) {
+                int efConstructionIndex = argList.indexOf("--hnswefconstruction");
+                hnswEfConstruction = Integer.parseInt(argList.get(efConstructionIndex + 1));
+            }
+            if (argList.contains("--hnswefruntime")) {
+                int efRuntimeIndex = argList.indexOf("--hnswefruntime");
+                hnswEfRuntime = Integer.parseInt(argList.get(efRuntimeIndex + 1));
+            }
+            if (argList.contains("--vectorbenchmark")) {
+                int vectorBenchmarkIndex = argList.indexOf("--vectorbenchmark");
+                runVectorBenchmark = Boolean.parseBoolean(argList.get(vectorBenchmarkIndex + 1));
+            }
+            if (argList.contains("--vectork")) {
+                int vectorKIndex = argList.indexOf("--vectork");
+                vectorK = Integer.parseInt(argList.get(vectorKIndex + 1));
+            }
+            if (argList.contains("--vectorqueries")) {
+                int vectorQueriesIndex = argList.indexOf("--vectorqueries");
+                vectorQueries = Integer.parseInt(argList.get(vectorQueriesIndex + 1));
+            }
+            if (argList.contains("--vectorfilter")) {
+                int vectorFilterIndex = argList.indexOf("--vectorfilter");
+                vectorFilter = argList.get(vectorFilterIndex + 1);
+            }
+            if (argList.contains("--mixedworkload")) {
+                int mixedWorkloadIndex = argList.indexOf("--mixedworkload");
+                runMixedWorkload = Boolean.parseBoolean(argList.get(mixedWorkloadIndex + 1));
+            }
+            if (argList.contains("--updatethreads")) {
+                int updateThreadsIndex = argList.indexOf("--updatethreads");
+                updateThreads = Integer.parseInt(argList.get(updateThreadsIndex + 1));
+            }
+            if (argList.contains("--updaterate")) {
+                int updateRateIndex = argList.indexOf("--updaterate");
+                updateRate = Double.parseDouble(argList.get(updateRateIndex + 1));
+            }
+            if (argList.contains("--visibilityprobemillis")) {
+                int visibilityProbeIndex = argList.indexOf("--visibilityprobemillis");
+                visibilityProbeMillis = Long.parseLong(argList.get(visibilityProbeIndex + 1));
+            }
+            if (argList.contains("--poolmaxtotal")) {
+                int poolMaxTotalIndex = argList.indexOf("--poolmaxtotal");
+                poolMaxTotal = Integer.parseInt(argList.get(poolMaxTotalIndex + 1));
+            }
+            if (argList.contains("--poolmaxidle")) {
+                int poolMaxIdleIndex = argList.indexOf("--poolmaxidle");
+                poolMaxIdle = Integer.parseInt(argList.get(poolMaxIdleIndex + 1));
+            }
+            if (argList.contains("--poolminidle")) {
+                int poolMinIdleIndex = argList.indexOf("--poolminidle");
+                poolMinIdle = Integer.parseInt(argList.get(poolMinIdleIndex + 1));
+            }
+            if (argList.contains("--poolmaxwaitmillis")) {
+                int poolMaxWaitIndex = argList.indexOf("--poolmaxwaitmillis");
+                poolMaxWaitMillis = Long.parseLong(argList.get(poolMaxWaitIndex + 1));
+            }
+            if (argList.contains("--pooltestoncreate")) {
+                int poolTestOnCreateIndex = argList.indexOf("--pooltestoncreate");
+                poolTestOnCreate = Boolean.parseBoolean(argList.get(poolTestOnCreateIndex + 1));
+            }
+            if (argList.contains("--poolstatsseconds")) {
+                int poolStatsIndex = argList.indexOf("--poolstatsseconds");
+                poolStatsSeconds = Integer.parseInt(argList.get(poolStatsIndex + 1));
+            }
+            if (argList.contains("--poolwarmup")) {
+                int poolWarmUpIndex = argList.indexOf("--poolwarmup");
+                poolWarmUpConnections = Integer.parseInt(argList.get(poolWarmUpIndex + 1));
+            }
+            if (argList.contains("--rebuildindex")) {
+                int rebuildIndexIndex = argList.indexOf("--rebuildindex");
+                rebuildIndex = Boolean.parseBoolean(argList.get(rebuildIndexIndex + 1));
+            }
+            if (argList.contains("--indexpollmillis")) {
+                int indexPollIndex = argList.indexOf("--indexpollmillis");
+                indexPollMillis = Long.parseLong(argList.get(indexPollIndex + 1));
+            }
+            if (argList.contains("--indextimeoutmillis")) {
+                int indexTimeoutIndex = argList.indexOf("--indextimeoutmillis");
+                indexTimeoutMillis = Long.parseLong(argList.get(indexTimeoutIndex + 1));
+            }
+            if (argList.contains("--schemavariants")) {
+                int schemaVariantsIndex = argList.indexOf("--schemavariants");
+                schemaVariants = argList.get(schemaVariantsIndex + 1);
+            }
+            if (argList.contains("--variantqueryiterations")) {
+                int variantIterationsIndex = argList.indexOf("--variantqueryiterations");
+                variantQueryIterations = Integer.parseInt(argList.get(variantIterationsIndex + 1));
+            }
+            if (argList.contains("--autocompletebenchmark")) {
+                int autocompleteBenchmarkIndex = argList.indexOf("--autocompletebenchmark");
+                runAutocompleteBenchmark = Boolean.parseBoolean(argList.get(autocompleteBenchmarkIndex + 1));
+            }
+            if (argList.contains("--autocompleterate")) {
+                int autocompleteRateIndex = argList.indexOf("--autocompleterate");
+                autocompleteRate = Double.parseDouble(argList.get(autocompleteRateIndex + 1));
+            }
+            if (argList.contains("--autocompletethreads")) {
+                int autocompleteThreadsIndex = argList.indexOf("--autocompletethreads");
+                autocompleteThreads = Integer.parseInt(argList.get(autocompleteThreadsIndex + 1));
+            }
+            if (argList.contains("--suggestcache")) {
+                int suggestCacheIndex = argList.indexOf("--suggestcache");
+                useSuggestionCache = Boolean.parseBoolean(argList.get(suggestCacheIndex + 1));
+            }
+            if (argList.contains("--suggestrefreshmillis")) {
+                int suggestRefreshIndex = argList.indexOf("--suggestrefreshmillis");
+                suggestionRefreshMillis = Long.parseLong(argList.get(suggestRefreshIndex + 1));
+            }
+            if (argList.contains("--replicas")) {
+                int replicasIndex = argList.indexOf("--replicas");
+                replicaAddresses = argList.get(replicasIndex + 1);
+            }
+            if (argList.contains("--replicarouting")) {
+                int replicaRoutingIndex = argList.indexOf("--replicarouting");
+                replicaRouting = argList.get(replicaRoutingIndex + 1);
+            }
+            if (argList.contains("--replicamaxlagmillis")) {
+                int replicaMaxLagIndex = argList.indexOf("--replicamaxlagmillis");
+                replicaMaxLagMillis = Long.parseLong(argList.get(replicaMaxLagIndex + 1));
+            }
+            if (argList.contains("--replicahealthmillis")) {
+                int replicaHealthIndex = argList.indexOf("--replicahealthmillis");
+                replicaHealthMillis = Long.parseLong(argList.get(replicaHealthIndex + 1));
+            }
+            if (argList.contains("--wirestats")) {
+                int wireStatsIndex = argList.indexOf("--wirestats");
+                countWireBytes = Boolean.parseBoolean(argList.get(wireStatsIndex + 1));
+            }
+            if (argList.contains("--wirestatsiterations")) {
+                int wireStatsIterationsIndex = argList.indexOf("--wirestatsiterations");
+                wireStatsIterations = Integer.parseInt(argList.get(wireStatsIterationsIndex + 1));
+            }
+            if (argList.contains("--querywarmup")) {
+                int queryWarmUpIndex = argList.indexOf("--querywarmup");
+                warmUpQueries = Boolean.parseBoolean(argList.get(queryWarmUpIndex + 1));
+            }
+            if (argList.contains("--querywarmupiterations")) {
+                int queryWarmUpIterationsIndex = argList.indexOf("--querywarmupiterations");
+                queryWarmUpIterations = Integer.parseInt(argList.get(queryWarmUpIterationsIndex + 1));
+            }
+            if (argList.contains("--querywarmupmaxseconds")) {
+                int queryWarmUpMaxSecondsIndex = argList.indexOf("--querywarmupmaxseconds");
+                queryWarmUpMaxSeconds = Integer.parseInt(argList.get(queryWarmUpMaxSecondsIndex + 1));
+            }
+            if (argList.contains("--querywarmuptolerance")) {
+                int queryWarmUpToleranceIndex = argList.indexOf("--querywarmuptolerance");
+                queryWarmUpTolerance = Double.parseDouble(argList.get(queryWarmUpToleranceIndex + 1));
+            }
+            if (argList.contains("--steadystateiterations")) {
+                int steadyStateIterationsIndex = argList.indexOf("--steadystateiterations");
+                steadyStateIterations = Integer.parseInt(argList.get(steadyStateIterationsIndex + 1));
+            }
+        }
+        if (vectorIndexAlgorithm != null || runVectorBenchmark) {
+            JsonZewActivityBuilder.embeddingDimension = vectorDimension; // both generators add $.embedding from now on
+        }
+        connectionHelper = new ConnectionHelper(ConnectionHelper.buildURI(host,port,username,password),clusterMode,
+                ConnectionHelper.buildPoolConfig(poolMaxTotal,poolMaxIdle,poolMinIdle,poolMaxWaitMillis,poolTestOnCreate),
+                countWireBytes ? new WireMetrics().registerMBean() : null);
+        connectionHelper.poolMetrics.startLogging(poolStatsSeconds);
+        if (poolWarmUpConnections > 0) {
+            connectionHelper.warmUp(poolWarmUpConnections);
+        }
+        if (replicaAddresses != null) {
+            try {
+                replicaRouter = new ReplicaRouter(connectionHelper, ReplicaRouter.parseAddresses(replicaAddresses), replicaRouting,
+                        replicaMaxLagMillis, replicaHealthMillis).start();
+            } catch (IllegalArgumentException iae) {
+                System.out.println(iae.getMessage() + " - every read goes to the primary");
+            }
+        }
+        if (purgeFirst) {
+            // stale documents from an earlier, larger run would otherwise be indexed and searched along with the new ones
+            // the index goes first - otherwise it has to de-index and garbage collect every document the purge UNLINKs
+            dropIndex();
+            new KeyPurger(connectionHelper, PREFIX_FOR_SEARCH, purgeScanCount, purgeBatchSize, purgeThreads, purgeRate,
+                    purgeProgressSeconds).purge();
         }
-        connectionHelper = new ConnectionHelper(ConnectionHelper.buildURI(host,port,username,password));
         //Make sure index and alias are in place before we start writing data or querying:
         // dropping and recreating the index can result in partial matches on existing data
         try {
-            if (quantity > 0 || isOnlyTwo) {
+            boolean createIndex = quantity > 0 || isOnlyTwo || purgeFirst; // the purge dropped the index
+            if (createIndex && rebuildIndex) {
+                // build a new version of the index next to the live one and only switch the alias over once it is ready:
+                new IndexRebuilder(connectionHelper.getPooledJedis(), INDEX_1_NAME, INDEX_ALIAS_NAME, Main::createIndex,
+                        indexPollMillis, indexTimeoutMillis).rebuild();
+            } else if (createIndex) {
                 dropIndex();
                 addIndex();
                 System.out.println("Sleeping for " + indexSleepTime + " milliseconds to give the newly created index time to catch up with pre-loaded documents");
@@ -119,7 +609,7 @@ public class Main {
         } catch (Throwable t) {
             System.out.println("" + t.getMessage());
             try {
-                JedisPooled jedis = connectionHelper.getPooledJedis();
+                UnifiedJedis jedis = connectionHelper.getPooledJedis();
                 System.out.println("There are " + jedis.dbSize() + " keys in the redis database");
             } catch (Throwable t2) {
                 System.out.println("" + t2.getMessage());
@@ -127,24 +617,360 @@ public class Main {
         }
         System.out.println("LOADING JSON DATA...");
         loadData(isOnlyTwo, quantity);
+        if (warmUpQueries) {
+            // before anything else queries the index - so the cold column really is the first call of each query
+            new QueryWarmUp(connectionHelper, readExecutor(), INDEX_ALIAS_NAME, benchmarkQueries(),
+                    Math.max(poolWarmUpConnections, queryThreads), queryWarmUpIterations, queryWarmUpMaxSeconds,
+                    queryWarmUpTolerance, steadyStateIterations).run();
+        }
         testJedisConnection();
         System.out.println("\n\nTESTING SEARCH QUERY ...");
         testJSONSearchQuery();
+        if (connectionHelper.wireMetrics != null) {
+            measureWireCost(wireStatsIterations);
+        }
+        if (vectorIndexAlgorithm != null) {
+            testVectorSearch("Meet and pet the Giraffe");
+        }
+        if (queryBatchMode != null) {
+            compareQueryBatch(queryBatchMode);
+        }
+        if (compareTypedDecoding) {
+            compareTypedDecoding(200);
+        }
+        if (facetNames != null) {
+            try {
+                compareFacets(FacetedSearch.select(facetNames));
+            } catch (Throwable t) {
+                System.out.println("Facet counts failed: " + t.getMessage());
+            }
+        }
+        if (keysetPagingQuery != null) {
+            walkAllPages(keysetPagingQuery);
+        }
+        if (runProfiler) {
+            try {
+                new SearchProfiler(connectionHelper.getPooledJedis(), INDEX_ALIAS_NAME, profileIterations)
+                        .profile(benchmarkQueries());
+            } catch (Throwable t) {
+                System.out.println("Profiling failed: " + t.getMessage());
+            }
+        }
+        if (schemaVariants != null) {
+            try {
+                new SchemaVariantHarness(connectionHelper.getPooledJedis(),
+                        SchemaVariantHarness.select(schemaVariants, PREFIX_FOR_SEARCH, howManyResultsToShow, dialectVersion),
+                        ZewQueries.all(howManyResultsToShow, dialectVersion),
+                        variantQueryIterations, indexPollMillis, indexTimeoutMillis).run();
+            } catch (Throwable t) {
+                System.out.println("Schema variant comparison failed: " + t.getMessage());
+            }
+        }
+        if (runVectorBenchmark) {
+            try {
+                new VectorSearchBenchmark(connectionHelper.getPooledJedis(), PREFIX_FOR_SEARCH, vectorIndexSettings(VectorIndexSettings.HNSW),
+                        vectorK, vectorQueries, vectorFilter, indexPollMillis, indexTimeoutMillis).run();
+            } catch (Throwable t) {
+                System.out.println("Vector index comparison failed: " + t.getMessage());
+            }
+        }
+        if (storageCompareDocuments > 0) {
+            try {
+                new StorageModeComparison(connectionHelper,
+                        useFastGenerator ? FastJsonZewActivityGenerator::createFakeJsonZewActivityBytes :
+                                () -> JsonZewActivityBuilder.createFakeJsonZewActivityObject().toString().getBytes(StandardCharsets.UTF_8),
+                        storageModes, howManyResultsToShow, dialectVersion, loadThreads, loadBatchSize,
+                        storageQueryIterations, indexPollMillis, indexTimeoutMillis).run(storageCompareDocuments);
+            } catch (Throwable t) {
+                System.out.println("Storage mode comparison failed: " + t.getMessage());
+            }
+        }
+        if (runQueryBenchmark) {
+            QueryExecutor executor = readExecutor();
+            SearchResultCache cache = null;
+            if (useResultCache && connectionHelper.isCluster()) {
+                // keyspace notifications are only published by the node that owns the key - one subscription is not enough
+                System.out.println("--cache is not supported in cluster mode - running the query benchmark without it");
+            } else if (useResultCache) {
+                cache = new SearchResultCache(connectionHelper.jedisPooled, PREFIX_FOR_SEARCH, cacheMaxEntries,
+                        cacheMaxMegabytes * 1024L * 1024L, cacheMaxStalenessMillis).start();
+                executor = connectionHelper.wireMetrics != null ? connectionHelper.wireMetrics.labelled(cache) : cache;
+            }
+            new QueryLoadGenerator(executor, INDEX_ALIAS_NAME,
+                    benchmarkQueries(), QueryLoadGenerator.parseMix(queryMix),
+                    queryThreads, targetQueryRate, warmupSeconds, measureSeconds).run();
+            if (cache != null) {
+                cache.printStats();
+                cache.close();
+            }
+            printReplicaStats();
+        }
+        if (runMixedWorkload) {
+            runMixedWorkload();
+        }
+        if (runAutocompleteBenchmark) {
+            benchmarkAutoComplete();
+        }
         if (autocompleteTries > 0) {
             prepareAutoComplete();
             System.out.println("\nTesting auto-complete ...[try the letter h or l]");
             testAutoComplete(autocompleteTries);
         }
+        if (connectionHelper.wireMetrics != null) {
+            connectionHelper.wireMetrics.printSummary();
+        }
+        if (replicaRouter != null) {
+            replicaRouter.close();
+        }
+    }
+
+    // fires every benchmark query a few times under its own name so the summary at the end shows what each one costs on the wire
+    private static void measureWireCost(int iterations) {
+        QueryExecutor executor = readExecutor();
+        for (ZewQueries.NamedQuery q : benchmarkQueries()) {
+            for (int i = 0; i < iterations; i++) {
+                executor.execute(q, INDEX_ALIAS_NAME);
+            }
+        }
+    }
+
+    // fires the queries of testJSONSearchQuery() one after another and then as a single batch and compares the page latency
+    private static void compareQueryBatch(String mode) {
+        UnifiedJedis jedis = connectionHelper.getPooledJedis();
+        List<ZewQueries.NamedQuery> queries = ZewQueries.all(howManyResultsToShow, dialectVersion);
+        QueryBatch batch = new QueryBatch(connectionHelper);
+        for (ZewQueries.NamedQuery q : queries) {
+            batch.add(INDEX_ALIAS_NAME, q);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, queryBatchThreads));
+        try {
+            boolean fanOut = "fanout".equalsIgnoreCase(mode);
+            // one untimed round of each so connections and server caches are warm:
+            batch.pipelined();
+            batch.fanOut(executor);
+            long sequentialNanos = 0;
+            long slowestNanos = 0;
+            for (ZewQueries.NamedQuery q : queries) {
+                long start = System.nanoTime();
+                try {
+                    q.execute(jedis, INDEX_ALIAS_NAME);
+                } catch (RuntimeException re) {
+                    System.out.println(q.name + " failed: " + re.getMessage());
+                }
+                long elapsed = System.nanoTime() - start;
+                sequentialNanos += elapsed;
+                slowestNanos = Math.max(slowestNanos, elapsed);
+            }
+            long batchNanos = QueryBatch.print(fanOut ? "Batch fanned out over " + queryBatchThreads + " pooled connections" : "Batch pipelined on one connection",
+                    fanOut ? batch.fanOut(executor) : batch.pipelined());
+            System.out.println(String.format("\nPage latency for %d queries: one after another %.1f us | batched %.1f us | slowest single query %.1f us",
+                    queries.size(), LatencyStats.micros(sequentialNanos), LatencyStats.micros(batchNanos), LatencyStats.micros(slowestNanos)));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    // counts the facets of --facetquery one command after another, then pipelined (and then from the cache when --cache true)
+    private static void compareFacets(List<FacetedSearch.Facet> facets) {
+        FacetedSearch uncached = new FacetedSearch(connectionHelper, INDEX_ALIAS_NAME, facets, facetTopN, dialectVersion, null);
+        uncached.search(facetQuery); // untimed - so connections and server caches are warm
+        FacetedSearch.FacetResult sequential = uncached.searchSequentially(facetQuery);
+        FacetedSearch.FacetResult pipelined = uncached.search(facetQuery);
+        pipelined.print();
+        System.out.println(String.format("\nFacet latency for %d commands: one after another %.1f us | pipelined %.1f us",
+                pipelined.commands, LatencyStats.micros(sequential.elapsedNanos), LatencyStats.micros(pipelined.elapsedNanos)));
+        if (useResultCache && connectionHelper.isCluster()) {
+            System.out.println("--cache is not supported in cluster mode - facet counts are not cached");
+        } else if (useResultCache) {
+            SearchResultCache cache = new SearchResultCache(connectionHelper.jedisPooled, PREFIX_FOR_SEARCH, cacheMaxEntries,
+                    cacheMaxMegabytes * 1024L * 1024L, cacheMaxStalenessMillis).start();
+            try {
+                FacetedSearch cached = new FacetedSearch(connectionHelper, INDEX_ALIAS_NAME, facets, facetTopN, dialectVersion, cache);
+                long deadline = System.currentTimeMillis() + 5000;
+                while (cache.size() == 0 && System.currentTimeMillis() < deadline) {
+                    cached.search(facetQuery); // bypassed until the invalidation subscriber is listening
+                }
+                long start = System.nanoTime();
+                cached.search(facetQuery);
+                System.out.println(String.format("Facet counts for a repeated base query from the cache: %.1f us",
+                        LatencyStats.micros(System.nanoTime() - start)));
+                cache.printStats();
+            } finally {
+                cache.close();
+            }
+        }
+    }
+
+    private static VectorIndexSettings vectorIndexSettings(String algorithm) {
+        return new VectorIndexSettings(algorithm, vectorDimension, hnswM, hnswEfConstruction, hnswEfRuntime);
+    }
+
+    // the activities nearest to a text - then the nearest among those matching --vectorfilter
+    private static void testVectorSearch(String text) {
+        UnifiedJedis jedis = connectionHelper.getPooledJedis();
+        float[] vector = ActivityEmbedding.embed(text, vectorDimension);
+        int efRuntime = vectorIndexSettings(vectorIndexAlgorithm).queryEfRuntime();
+        try {
+            printResultsToScreen("KNN " + howManyResultsToShow + " nearest to \"" + text + "\"",
+                    jedis.ftSearch(INDEX_ALIAS_NAME, ZewQueries.knn("*", vector, howManyResultsToShow, efRuntime)));
+            printResultsToScreen("KNN " + howManyResultsToShow + " nearest to \"" + text + "\" among " + vectorFilter,
+                    jedis.ftSearch(INDEX_ALIAS_NAME, ZewQueries.knn(vectorFilter, vector, howManyResultsToShow, efRuntime)));
+        } catch (RuntimeException re) {
+            System.out.println("Vector search failed (the index needs a VECTOR field - recreate it with --vectorindex and a --quantity above 0): " + re.getMessage());
+        }
+    }
+
+    // the queries the benchmark modes fire: the fixed queries or their parameterized templates
+    private static List<ZewQueries.NamedQuery> benchmarkQueries() {
+        return useQueryTemplates ? ZewQueries.templates(howManyResultsToShow, dialectVersion) : ZewQueries.all(howManyResultsToShow, dialectVersion);
+    }
+
+    // the query benchmark without and then with concurrent path-level updates to the loaded activities
+    private static void runMixedWorkload() {
+        UnifiedJedis jedis = connectionHelper.getPooledJedis();
+        int keyCount = quantity;
+        if (keyCount <= 0) {
+            keyCount = highestLoadedKeyNumber(jedis);
+        }
+        QueryExecutor executor = readExecutor();
+        new MixedWorkload(jedis, INDEX_ALIAS_NAME, PREFIX_FOR_SEARCH, keyCount, updateThreads, updateRate,
+                visibilityProbeMillis, dialectVersion, warmupSeconds, measureSeconds).run(
+                new QueryLoadGenerator(executor, INDEX_ALIAS_NAME, benchmarkQueries(),
+                        QueryLoadGenerator.parseMix(queryMix), queryThreads, targetQueryRate, warmupSeconds, measureSeconds),
+                new QueryLoadGenerator(executor, INDEX_ALIAS_NAME, benchmarkQueries(),
+                        QueryLoadGenerator.parseMix(queryMix), queryThreads, targetQueryRate, warmupSeconds, measureSeconds));
+        printReplicaStats();
+    }
+
+    // the loaded activities are keyed 1..n and carry their key number as $.seq - num_docs would also count gf and bl
+    private static int highestLoadedKeyNumber(UnifiedJedis jedis) {
+        SearchResult highest = jedis.ftSearch(INDEX_ALIAS_NAME, new Query("@" + JsonZewActivityBuilder.SEQ_FIELD + ":[1 +inf]")
+                .setSortBy(JsonZewActivityBuilder.SEQ_FIELD, false).returnFields(FieldName.of(JsonZewActivityBuilder.SEQ_FIELD))
+                .limit(0, 1).dialect(dialectVersion));
+        if (!highest.getDocuments().isEmpty()) {
+            return (int) IndexRebuilder.number(highest.getDocuments().get(0).get(JsonZewActivityBuilder.SEQ_FIELD));
+        }
+        // data loaded before seq existed - leave out the two hand-made activities
+        long keyCount = (long) IndexRebuilder.number(jedis.ftInfo(INDEX_ALIAS_NAME).get("num_docs"));
+        for (String handMade : new String[]{"zew:activities:gf", "zew:activities:bl"}) {
+            if (jedis.exists(handMade)) { // one key per call - they may live in different cluster slots
+                keyCount--;
+            }
+        }
+        return (int) Math.max(0, keyCount);
+    }
+
+    // the benchmark reads go to the replicas when --replicas was given (the writes always stay on the primary)
+    private static QueryExecutor readExecutor() {
+        QueryExecutor executor = replicaRouter;
+        if (executor == null) {
+            UnifiedJedis jedis = connectionHelper.getPooledJedis();
+            executor = (q, indexName) -> q.execute(jedis, indexName);
+        }
+        return connectionHelper.wireMetrics != null ? connectionHelper.wireMetrics.labelled(executor) : executor;
+    }
+
+    private static List<String> suggestions(String prefix) {
+        return replicaRouter != null ? replicaRouter.ftSugGet(SUGGESTION_KEY, prefix) : connectionHelper.getPooledJedis().ftSugGet(SUGGESTION_KEY, prefix);
+    }
+
+    private static void printReplicaStats() {
+        if (replicaRouter != null) {
+            replicaRouter.printStats();
+        }
+    }
+
+    // decodes the raw reply of each search query into ZewActivity records and compares the time taken with SearchResultBuilder
+    private static void compareTypedDecoding(int iterations) {
+        UnifiedJedis jedis = connectionHelper.getPooledJedis();
+        System.out.println("\nDecoding search replies straight into typed records (times are per reply, averaged over " + iterations + " decodes):");
+        for (ZewQueries.NamedQuery q : ZewQueries.all(howManyResultsToShow, dialectVersion)) {
+            if (q.isAggregation()) {
+                continue;
+            }
+            Object raw = jedis.executeCommand(new CommandObject<>(q.command(INDEX_ALIAS_NAME), BuilderFactory.RAW_OBJECT));
+            ActivityResultDecoder decoder = new ActivityResultDecoder(q.query);
+            System.out.println("\n" + q.name + ":");
+            for (ZewActivity activity : decoder.decode(raw)) {
+                System.out.println("\t" + activity);
+            }
+            long builderNanos = 0;
+            long typedNanos = 0;
+            long sink = 0;
+            for (int i = 0; i < iterations; i++) {
+                long start = System.nanoTime();
+                sink += ((SearchResult) q.decode(raw)).getDocuments().size();
+                long middle = System.nanoTime();
+                sink += decoder.decode(raw).size();
+                typedNanos += System.nanoTime() - middle;
+                builderNanos += middle - start;
+            }
+            System.out.println(String.format("SearchResultBuilder %.1f us | typed decoder %.1f us | (%d documents decoded)",
+                    LatencyStats.micros(builderNanos / iterations), LatencyStats.micros(typedNanos / iterations), sink));
+        }
+    }
+
+    // walks every match of the query in cost order, printing how long each page takes - each page still costs more the more matches remain past the cursor
+    private static void walkAllPages(String query) {
+        System.out.println("\nWalking every match of \"" + query + "\" in pages of " + keysetPageSize + " using keyset paging on @cost and @seq:");
+        KeysetPager pager = new KeysetPager(connectionHelper.getPooledJedis(), INDEX_ALIAS_NAME, query, keysetPageSize, dialectVersion,
+                FieldName.of("event_name"), FieldName.of("location"));
+        long rows = 0;
+        long totalNanos = 0;
+        long firstPageNanos = 0;
+        long deepestOffset = 0;
+        long deepestPageNanos = 0;
+        while (pager.hasNext()) {
+            deepestOffset = rows;
+            rows += pager.next().size();
+            totalNanos += pager.lastPageNanos();
+            deepestPageNanos = pager.lastPageNanos();
+            if (pager.pagesRead() == 1) {
+                firstPageNanos = pager.lastPageNanos();
+            }
+            if (pager.pagesRead() == 1 || pager.pagesRead() % 50 == 0) {
+                System.out.println("page " + pager.pagesRead() + " took " + (pager.lastPageNanos() / 1000) + " microseconds (" + rows + " rows so far)");
+            }
+        }
+        System.out.println("Walked " + rows + " rows in " + pager.pagesRead() + " pages - average page took " +
+                (pager.pagesRead() == 0 ? 0 : totalNanos / pager.pagesRead() / 1000) + " microseconds");
+        if (pager.pagesRead() > 1) {
+            System.out.println("first page (offset 0) took " + (firstPageNanos / 1000) + " microseconds - deepest page (offset " + deepestOffset +
+                    ") took " + (deepestPageNanos / 1000) + " microseconds with keyset paging and " +
+                    (pager.offsetPageNanos(deepestOffset) / 1000) + " microseconds with LIMIT " + deepestOffset + " " + keysetPageSize);
+        }
     }
 
     private static void testJedisConnection() {
-        JedisPooled jedis = connectionHelper.getPooledJedis();
+        UnifiedJedis jedis = connectionHelper.getPooledJedis();
         System.out.println("Testing connection by executing 'DBSIZE' response is: " + jedis.dbSize());
-        System.out.println("Testing index state by executing 'FT.INFO' " + INDEX_1_NAME + " response is: " + jedis.ftInfo(INDEX_1_NAME));
+        System.out.println("Testing index state by executing 'FT.INFO' " + INDEX_ALIAS_NAME + " response is: " + jedis.ftInfo(INDEX_ALIAS_NAME));
+    }
+
+    // replays typed prefixes of the suggestion vocabulary against the server and then against the local prefix cache
+    private static void benchmarkAutoComplete() {
+        prepareAutoComplete();
+        List<String> words = new ArrayList<>();
+        words.addAll(Arrays.asList(JsonZewActivityBuilder.animalSpecies));
+        words.addAll(Arrays.asList(JsonZewActivityBuilder.activityTypes));
+        words.addAll(Arrays.asList(JsonZewActivityBuilder.locationTypes));
+        words.addAll(Arrays.asList(JsonZewActivityBuilder.locationDirections));
+        AutocompleteBenchmark benchmark = new AutocompleteBenchmark(words, autocompleteThreads, autocompleteRate, warmupSeconds, measureSeconds);
+        String serverRow = benchmark.run(replicaRouter != null ? "replica FT.SUGGET" : "server FT.SUGGET", Main::suggestions);
+        try (SuggestionPrefixCache cache = new SuggestionPrefixCache(connectionHelper, SUGGESTION_KEY, 5, 1000, suggestionRefreshMillis).start()) {
+            String cacheRow = benchmark.run("cache-assisted", cache::get);
+            System.out.println("\n\tAutocomplete lookup latency (measured from each keystroke's intended time):\n");
+            System.out.println(AutocompleteBenchmark.TABLE_HEADER);
+            System.out.println(serverRow);
+            System.out.println(cacheRow);
+            cache.printStats();
+        }
+        printReplicaStats();
     }
 
     private static void testAutoComplete(int howManyTimes) {
-        JedisPooled jedis = connectionHelper.getPooledJedis();
+        SuggestionPrefixCache cache = useSuggestionCache ?
+                new SuggestionPrefixCache(connectionHelper, SUGGESTION_KEY, 5, 1000, suggestionRefreshMillis).start() : null;
         BufferedReader reader = new BufferedReader(
                 new InputStreamReader(System.in));
         for (int x = 0; x < howManyTimes; x++) {
@@ -153,37 +979,52 @@ public class Main {
             try{
                 input = reader.readLine();
             }catch(Throwable t){System.out.println("\nNOW ITS ALL MESSED UP! "+t.getMessage());}
-            List<String> stringList = jedis.ftSugGet(SUGGESTION_KEY, input);
+            List<String> stringList = cache != null ? cache.get(input) : suggestions(input);
             System.out.println("Did you mean one of these:");
             for (String suggestion : stringList) {
                 System.out.print("[ " + suggestion + " ],");
             }
             System.out.println("\n*****  End of Suggestions *****");
         }
+        if (cache != null) {
+            cache.printStats();
+            cache.close();
+        }
     }
     /*
     This example provides a single auto-complete key for: species of animal, the activities, and the locations available
     Each category could live in its own auto-complete suggestion key which would allow for more discreet treatment of the suggestions
     That would, however, require multiple calls to fetch the results as each key would need to be checked separately
      */
+    // all suggestions are sent in one pipeline - one round trip instead of one per suggestion
     private static void prepareAutoComplete(){
-        JedisPooled jedis = connectionHelper.getPooledJedis();
+        try (Pipeline pipeline = connectionHelper.getPipelineForKey(SUGGESTION_KEY)) {
             for(String animal:JsonZewActivityBuilder.animalSpecies) {
-                jedis.ftSugAdd(SUGGESTION_KEY,animal,1.0 );
+                pipeline.ftSugAdd(SUGGESTION_KEY,animal,1.0 );
             }
             for(String activity : JsonZewActivityBuilder.activityTypes){
-                jedis.ftSugAdd(SUGGESTION_KEY,activity,1.0 );
+                pipeline.ftSugAdd(SUGGESTION_KEY,activity,1.0 );
             }
             for(String location : JsonZewActivityBuilder.locationTypes){
-                jedis.ftSugAdd(SUGGESTION_KEY,location,.75 );
+                pipeline.ftSugAdd(SUGGESTION_KEY,location,.75 );
             }
             for(String direction :JsonZewActivityBuilder.locationDirections){
-                jedis.ftSugAdd(SUGGESTION_KEY,direction,.5 );
+                pipeline.ftSugAdd(SUGGESTION_KEY,direction,.5 );
             }
+            pipeline.sync();
+        }
     }
 
+    // drops the index the alias points at - after --rebuildindex that is a versioned idx_zew_events_vN rather than INDEX_1_NAME
     private static void dropIndex() {
-        JedisPooled jedis = connectionHelper.getPooledJedis();
+        UnifiedJedis jedis = connectionHelper.getPooledJedis();
+        String liveIndex = IndexRebuilder.indexBehind(jedis, INDEX_ALIAS_NAME);
+        if (liveIndex != null && !liveIndex.equals(INDEX_1_NAME)) {
+            try{
+                jedis.ftDropIndex(liveIndex);
+                System.out.println("Dropped index " + liveIndex + " that " + INDEX_ALIAS_NAME + " pointed at");
+            }catch(Throwable t){System.out.println("While attempting to drop index "+liveIndex+"    >>> "+t.getMessage());}
+        }
         try{
             jedis.ftDropIndex(INDEX_1_NAME);
         }catch(Throwable t){System.out.println("While attempting to drop index "+INDEX_1_NAME+"    >>> "+t.getMessage());}
@@ -202,7 +1043,7 @@ public class Main {
      */
     private static void testJSONSearchQuery() {
         ArrayList<String> perfTestResults = new ArrayList<>();
-        JedisPooled jedis = connectionHelper.getPooledJedis();
+        UnifiedJedis jedis = connectionHelper.getPooledJedis();
         long startTime = System.currentTimeMillis();
         // Query that works with Dialect 3 to showcase when more than one match exists within a document
 
@@ -279,86 +1120,51 @@ public class Main {
         the contact_name in our query we need to specify the filter in both the query and in the returned field
         NB: this will not work with Phonetic matching nor synonyms
          */
-        String query = "@contact_name:(Chadw*)";
-        SearchResult result = jedis.ftSearch(INDEX_ALIAS_NAME, new Query(query)
-                .returnFields(
-                        FieldName.of("event_name"),// This is a simple field from the root of the JSON doc (it is aliased in the index)
-                        FieldName.of("$.location").as("EVENT_LOCATION"),// This is a simple field from the root of the JSON doc
-                        FieldName.of("$.responsible_parties.hosts[?(@.name =~ \"(?i)^Chadw\")]") // note the ability to partially match with regex
-                                .as("matched_party_by_name") // this demonstrates the discreet and aligned response capability
-                ).limit(0,howManyResultsToShow).dialect(dialectVersion)
-        );
+        String query = ZewQueries.DIALECT3_QUERY;
+        SearchResult result = jedis.ftSearch(INDEX_ALIAS_NAME, ZewQueries.dialect3Query(howManyResultsToShow,dialectVersion));
         perfTestResults.add("Dialect3 (with "+result.getTotalResults()+" results and limit size of "+howManyResultsToShow+") Execution took: "+(System.currentTimeMillis()-startTime)+" milliseconds");
         printResultsToScreen(query, result);
         perfTestResults.add("Dialect3 (with "+result.getTotalResults()+" results and limit size of "+howManyResultsToShow+")) Execution plus printing results to screen took: "+(System.currentTimeMillis()-startTime)+" milliseconds");
         // first Query:
-        query = "@days:{Sat} @days:{Sun} @times:{1400,2000} -@location:(House)";
-        result = jedis.ftSearch(INDEX_ALIAS_NAME, new Query(query)
-                .returnFields(
-                        FieldName.of("location"), // only a single value exists in a document
-                        FieldName.of("$.times[?(@.military==\"1400\" || @.military==\"2000\")]")
-                                .as("matched_times"),
-                        FieldName.of("$.times[*].civilian").as("civilian"), //  dialect determines multiple or single results
-                        FieldName.of("$.days").as("days"), // multiple days may be returned
-                        FieldName.of("$.responsible_parties.hosts.[*].email").as("contact_email"), //  dialect determines multiple or single results
-                        FieldName.of("$.responsible_parties.hosts.[*].phone").as("contact_phone"), //  dialect determines multiple or single results
-                        FieldName.of("event_name"), // only a single value exists in a document
-                        FieldName.of("$.times[*].military").as("military"), //  dialect determines multiple or single results
-                        FieldName.of("$.description")
-                ).limit(0,howManyResultsToShow).dialect(dialectVersion)
-        );
+        startTime = System.currentTimeMillis();
+        query = ZewQueries.QUERY1_QUERY;
+        result = jedis.ftSearch(INDEX_ALIAS_NAME, ZewQueries.query1(howManyResultsToShow,dialectVersion));
         perfTestResults.add("Query1 (with "+result.getTotalResults()+" results and limit size of "+howManyResultsToShow+") Execution took: "+(System.currentTimeMillis()-startTime)+" milliseconds");
         printResultsToScreen(query, result);
         perfTestResults.add("Query1 (with "+result.getTotalResults()+" results and limit size of "+howManyResultsToShow+")) Execution plus printing results to screen took: "+(System.currentTimeMillis()-startTime)+" milliseconds");
 
         //Second query:
         startTime = System.currentTimeMillis();
-        query = "@contact_name:(Jo* Hu*) @times:{2000}";
-        result = jedis.ftSearch(INDEX_ALIAS_NAME, new Query(query)
-                .returnFields(
-                        FieldName.of("location"), // only a single value exists in a document
-                        FieldName.of("$.times[*].civilian").as("first_event_time"), // Dialect determines if this is a single result
-                        FieldName.of("$.times").as("all_times"), // multiple times may be returned when not filtered
-                        FieldName.of("$.times[?(@.military==\"2000\")]").as("matched_times"),//Dialect determines if this is a single result
-                        FieldName.of("$.days").as("days"), // multiple days may be returned
-                        FieldName.of("$.responsible_parties[*].hosts").as("hosts"),//Dialect determines if this is a single result
-                        FieldName.of("event_name"), // only a single value exists in a document
-                        FieldName.of("$.responsible_parties.number_of_contacts").as("hosts_size")
-                ).limit(0,howManyResultsToShow).dialect(dialectVersion)
-        );
+        query = ZewQueries.QUERY2_QUERY;
+        result = jedis.ftSearch(INDEX_ALIAS_NAME, ZewQueries.query2(howManyResultsToShow,dialectVersion));
         perfTestResults.add("Query2 (with "+result.getTotalResults()+" results and limit size of "+howManyResultsToShow+") Execution took: "+(System.currentTimeMillis()-startTime)+" milliseconds");
         printResultsToScreen(query, result);
         perfTestResults.add("Query2 (with "+result.getTotalResults()+" results and limit size of "+howManyResultsToShow+")) Execution plus printing results to screen took: "+(System.currentTimeMillis()-startTime)+" milliseconds");
 
         //Third query:
         startTime = System.currentTimeMillis();
-        query = "@cost:[-inf 5.00]";
-        result = jedis.ftSearch(INDEX_ALIAS_NAME, new Query(query)
-                .returnFields(
-                        FieldName.of("location"), // only a single value exists in a document
-                        FieldName.of("$.times.[*].civilian").as("all_times"), //  dialect determines multiple or single results
-                        FieldName.of("$.days").as("days"), // multiple days may be returned
-                        FieldName.of("event_name"), // only a single value exists in a document
-                        FieldName.of("$.cost").as("cost_in_us_dollars")
-                ).limit(0,howManyResultsToShow).dialect(dialectVersion)
-        );
+        query = ZewQueries.QUERY3_QUERY;
+        result = jedis.ftSearch(INDEX_ALIAS_NAME, ZewQueries.query3(howManyResultsToShow,dialectVersion));
         perfTestResults.add("Query3 (with "+result.getTotalResults()+" results and limit size of "+howManyResultsToShow+") Execution took: "+(System.currentTimeMillis()-startTime)+" milliseconds");
         printResultsToScreen(query, result);
         perfTestResults.add("Query3 (with "+result.getTotalResults()+" results and limit size of "+howManyResultsToShow+")) Execution plus printing results to screen took: "+(System.currentTimeMillis()-startTime)+" milliseconds");
 
         //TEST Simple AGGREGATION...
-        ArrayList<String> groupByFields = new ArrayList<>();
-        groupByFields.add("@cost");
-        groupByFields.add("@location");
-        groupByFields.add("@event_name");
-        ArrayList<Reducer> reducerCollection = new ArrayList<>();
-        reducerCollection.add(Reducers.count().as("event_match_count"));
-        AggregationBuilder builder = new AggregationBuilder("@event_name:Petting @cost:[1.00 +inf] " +
-                "@location:Gorilla @location:East -@days:{Tue} -@days:{Wed} -@days:{Thu}")
-                .groupBy(groupByFields,reducerCollection).filter("@cost <= 9").dialect(dialectVersion);
-        AggregationResult aggregationResult = jedis.ftAggregate(INDEX_ALIAS_NAME,builder);
-        String queryForDisplay = "FT.AGGREGATE idxa_zew_events \"@event_name:Petting @cost:[1.00 +inf] @location:Gorilla @location:East -@days:{Tue Wed Thu}\" GROUPBY 3 @cost @location @event_name REDUCE COUNT 0 AS event_match_count FILTER @cost <= 9";
-        printAggregateResultsToScreen(queryForDisplay,aggregationResult);
+        // groups by @cost @location @event_name and counts the matches in each group:
+        String queryForDisplay = ZewQueries.AGGREGATION_DISPLAY;
+        if(aggregateCursorCount>0){
+            // stream the groups back in chunks so only one chunk is held in memory at a time:
+            System.out.println("\nFired Aggregation Query (WITHCURSOR COUNT "+aggregateCursorCount+"):\n"+queryForDisplay);
+            long rows = new StreamingAggregator(jedis,aggregateCursorCount,aggregateCursorMaxIdle)
+                    .stream(INDEX_ALIAS_NAME,ZewQueries.aggregation(dialectVersion),chunk -> {
+                        printAggregateRows(System.out,chunk);
+                        return true;
+                    });
+            System.out.println("\nStreamed "+rows+" rows");
+        }else {
+            AggregationResult aggregationResult = jedis.ftAggregate(INDEX_ALIAS_NAME, ZewQueries.aggregation(dialectVersion));
+            printAggregateResultsToScreen(queryForDisplay, aggregationResult);
+        }
 
         System.out.println("\n\tPerformance Results from this test run: \n");
         for(String perfResults : perfTestResults){
@@ -367,23 +1173,37 @@ public class Main {
     }
 
     private static void printAggregateResultsToScreen(String query,AggregationResult result){
-        System.out.println("\nFired Aggregation Query:\n"+query+"\n\t -  received "+result.getTotalResults()+" results:\n");
+        printAggregateResults(System.out,query,result);
+    }
+
+    // package-private (and writing to any PrintStream) so the client-side cost of printing can be benchmarked
+    static void printAggregateResults(PrintStream out,String query,AggregationResult result){
+        out.println("\nFired Aggregation Query:\n"+query+"\n\t -  received "+result.getTotalResults()+" results:\n");
+        List<Map<String, Object>> r = result.getResults();
+        out.println("The number of rows returned is affected by any filters applied.  Returning this many: "+r.size());
+        printAggregateRows(out,result);
+        out.println(""); // returning display cursor to start of page on next line
+    }
+
+    static void printAggregateRows(PrintStream out,AggregationResult result){
         List<Map<String, Object>> r = result.getResults();
-        System.out.println("The number of rows returned is affected by any filters applied.  Returning this many: "+r.size());
         for(int row = 0;row < r.size();row++){
             Set<String> rr = r.get(row).keySet();
             Iterator<String> keySetIterator = rr.iterator();
-            System.out.println("");
+            out.println("");
             while(keySetIterator.hasNext()) {
                 String keyName = keySetIterator.next();
-                System.out.print(keyName+":   "+result.getRow(row).getString(keyName)+"\t");
+                out.print(keyName+":   "+result.getRow(row).getString(keyName)+"\t");
             }
         }
-        System.out.println(""); // returning display cursor to start of page on next line
     }
 
     private static void printResultsToScreen(String query,SearchResult result){
-        System.out.println("\n\tFired Query - \""+query+"\"\n Received a total of "+result.getTotalResults()+" results.\nDisplaying a maximum of "+howManyResultsToShow+" results:\n");
+        printResults(System.out,query,result,howManyResultsToShow);
+    }
+
+    static void printResults(PrintStream out,String query,SearchResult result,int howManyResultsToShow){
+        out.println("\n\tFired Query - \""+query+"\"\n Received a total of "+result.getTotalResults()+" results.\nDisplaying a maximum of "+howManyResultsToShow+" results:\n");
 
         List<Document> doclist = result.getDocuments();
         Iterator<Document> iterator = doclist.iterator();
@@ -394,7 +1214,7 @@ public class Main {
                 Map.Entry<String, Object> pi = propertiesIterator.next();
                 String propertyName = pi.getKey();
                 Object propertyValue = pi.getValue();
-                System.out.println(propertyName + " " + propertyValue);
+                out.println(propertyName + " " + propertyValue);
             }
         }
     }
@@ -424,37 +1244,48 @@ public class Main {
         $.location AS location TEXT PHONETIC dm:en
         $.responsible_parties.*.phone AS phone TEXT $.times.*.military as times TAG
          */
-        JedisPooled jedis = connectionHelper.getPooledJedis();
+        createIndex(INDEX_1_NAME);
+            //AND THEN: add schema alias so we can toggle between indexes:
+        /*
+        Added use of search index Alias (this allows for possible
+        re-assigning of the alias to an alternate index that perhaps targets a different underlying dataset
+        - maybe including additional or entirely different prefixes
+        IndexRebuilder (--rebuildindex true) demonstrates that reassignment by swapping the alias over to a freshly built index.
+         */
+            // ALIASUPDATE rather than ALIASADD - it also moves an alias that still points at another index
+            connectionHelper.getPooledJedis().ftAliasUpdate(INDEX_ALIAS_NAME, INDEX_1_NAME);
+            System.out.println("Successfully created search index and search index alias");
+    }
+
+    // creates an index with the schema described above under the given name
+    static void createIndex(String indexName){
+        UnifiedJedis jedis = connectionHelper.getPooledJedis();
             Schema schema = new Schema().addField(new Schema.TextField(FieldName.of("$.name").as("event_name")))
                     .addSortableNumericField("$.cost").as("cost")
+                    .addSortableNumericField("$."+JsonZewActivityBuilder.SEQ_FIELD).as(JsonZewActivityBuilder.SEQ_FIELD)
                     .addField(new Schema.Field(FieldName.of("$.days.*").as("days"), Schema.FieldType.TAG))
                     .addField(new Schema.Field(FieldName.of("$.times[*].military").as("times"), Schema.FieldType.TAG))
                     .addField(new Schema.Field(FieldName.of("$.location").as("location"), Schema.FieldType.TEXT))
                     .addTextField("$.responsible_parties.hosts[*].name", .75).as("contact_name"); //use with search 2.6.1 allows TEXT in multivalues
+            if (vectorIndexAlgorithm != null) {
+                vectorIndexSettings(vectorIndexAlgorithm).addTo(schema);
+            }
             IndexDefinition indexDefinition = new IndexDefinition(IndexDefinition.Type.JSON)
                     .setPrefixes(new String[]{PREFIX_FOR_SEARCH});
 
-            jedis.ftCreate(INDEX_1_NAME, IndexOptions.defaultOptions().setDefinition(indexDefinition), schema);
-            //AND THEN: add schema alias so we can toggle between indexes:
-        /*
-        Added use of search index Alias (this allows for possible
-        re-assigning of the alias to an alternate index that perhaps targets a different underlying dataset
-        - maybe including additional or entirely different prefixes
-        This example doesn't demonstrate that reassignment of the alias - just its effective use as a layer of indirection.
-         */
-            jedis.ftAliasAdd(INDEX_ALIAS_NAME, INDEX_1_NAME);
-            System.out.println("Successfully created search index and search index alias");
+            jedis.ftCreate(indexName, IndexOptions.defaultOptions().setDefinition(indexDefinition), schema);
     }
 
 
     //load JSON Objects for testing
     private static void loadData(boolean onlyLoadTwoObjects,int howManyObjects){
         if(onlyLoadTwoObjects) {
-            JedisPooled jedis = connectionHelper.getPooledJedis();
+            UnifiedJedis jedis = connectionHelper.getPooledJedis();
                 jedis.del("zew:activities:gf");
                 jedis.del("zew:activities:bl");
 
                 JSONObject obj = new JSONObject();
+                obj.put(JsonZewActivityBuilder.SEQ_FIELD, -1); // the generated activities use their key numbers (1..n)
                 obj.put("name", "Gorilla Feeding");
                 obj.put("cost", 0.00);
                 obj.put("location", "Gorilla House South");
@@ -502,6 +1333,7 @@ public class Main {
 
                 //build second zew event:
                 obj = new JSONObject();
+                obj.put(JsonZewActivityBuilder.SEQ_FIELD, 0);
                 obj.put("name", "Bonobo Lecture");
                 obj.put("cost", 10.00);
                 obj.put("location", "Mammalian Lecture Theater");
@@ -527,185 +1359,57 @@ public class Main {
                 obj.put("responsible-parties", hostsHolder);
                 jedis.jsonSet("zew:activities:bl", obj);
         }
-        else{
-            Pipeline pipeline = connectionHelper.getPipeline();
-            int howManyBatches = (howManyObjects/200)>0?(howManyObjects/200)+1:1;//makes sure at least 1 batch gets fired
-            int countDownOfObjects = howManyObjects;
-            System.out.println("Writing "+howManyObjects+" objects to Redis in "+howManyBatches+" batches of 200 or less...");
-            for (int x = 0; x < howManyBatches; x++) {
-                int innerBatchQuantity = 200;
-                if(countDownOfObjects<=200){
-                    innerBatchQuantity=countDownOfObjects;
-                }
-                for(int innerX = 0; innerX < innerBatchQuantity; innerX++) {
-                    //System.out.println("innerX == "+innerX);
-                    pipeline.jsonSet(PREFIX_FOR_SEARCH + countDownOfObjects, JsonZewActivityBuilder.createFakeJsonZewActivityObject());
-                    countDownOfObjects--;
-                }
-                pipeline.sync(); // execute batch of 200 JSON Set commands
-                if(countDownOfObjects%1000==0) {
-                    System.out.print("<" + countDownOfObjects + " JSON objects still to go> ");
-                }
+        else if(datasetSeed!=null||snapshotPath!=null){
+            IntFunction<byte[]> documents;
+            int howManyDocuments = howManyObjects;
+            if(snapshotPath!=null){
+                DatasetSnapshot snapshot = openOrWriteSnapshot(Paths.get(snapshotPath),howManyObjects);
+                System.out.println("Loading from snapshot "+snapshot);
+                documents = snapshot::document;
+                howManyDocuments = snapshot.documentCount;
+            }else{
+                long seed = datasetSeed;
+                documents = documentNumber -> FastJsonZewActivityGenerator.createSeededJsonZewActivityBytes(seed,documentNumber);
+            }
+            if(connectionHelper.isCluster()){
+                new ClusterJsonLoader(connectionHelper,PREFIX_FOR_SEARCH,documents,loadBatchSize).load(howManyDocuments);
+            }else{
+                new ParallelJsonLoader(connectionHelper,PREFIX_FOR_SEARCH,documents,loadThreads,loadBatchSize,maxInFlightBatches).load(howManyDocuments);
             }
         }
-    }
-}
-
-class JsonZewActivityBuilder{
-
-    static final String[] DAYS_OF_WEEK = {"Mon","Tue","Wed","Thu","Fri","Sat","Sun"};
-    static Faker faker = new Faker();
-    static String[] activityTypes = new String[]{"Feeding","Training","Live Show","Lecture","Documentary","Petting","Ride"};
-    static String[] locationTypes = new String[]{"House","Habitat","Theater","Lecture Hall","Area"};
-    static String[] locationDirections = new String[]{"North","South","East","West"};
-    static float[] costsOverZero = new float[]{2.00f,5.00f,10.00f,25.00f};
-    static String[] animalSpecies = new String[]{"Lion","Tiger","Elephant","Giant Panda","Gorilla","Giraffe","Polar Bear","Hippo","Cheeta","Zebra","Meerkat","Penguin","Kangaroo","Flamingo","Koala","Chimpanzee","Llama","Green Anaconda","Hyena","Bonobo","Alligator","Orangutan"};
-    static String[] militaryTimes = new String[]{"0800","0900","1000","1100","1130","1200","1230","1300","1330","1400","1430","1500","1600","1700","1800","1900","2000","2030","2100","2200"};
-    static String[] civilianTimes = new String[]{"8 AM","9 AM","10 AM","11 AM","11:30 AM","12 Noon","12:30 PM","1:00 PM","1:30 PM","2:00 PM","2:30 PM","3:00 PM","4:00 PM","5:00 PM","6:00 PM","7:00 PM","8:00 PM","8:30 PM","9:00 PM","10:00 PM"};
-
-    static JSONObject createFakeJsonZewActivityObject(){
-        Random random = new Random();
-        int randomValue = random.nextInt(111);
-        JSONObject obj = new JSONObject();
-        obj.put("name", animalSpecies[randomValue%animalSpecies.length]+" "+activityTypes[randomValue%activityTypes.length]);
-        obj.put("cost", random.nextInt(3)>1?0.00f:costsOverZero[random.nextInt(111) % costsOverZero.length]);
-        obj.put("location", animalSpecies[randomValue%animalSpecies.length]+" "+locationTypes[random.nextInt(111)%locationTypes.length]+" "+locationDirections[random.nextInt(111)%locationDirections.length]);
-
-        JSONObject timeObj1 = new JSONObject();
-        randomValue = randomValue+random.nextInt(111);
-        timeObj1.put("military", militaryTimes[randomValue%militaryTimes.length]);
-        timeObj1.put("civilian", civilianTimes[randomValue%civilianTimes.length]);
-        JSONObject timeObj2 = new JSONObject();
-        randomValue = randomValue+3;
-        timeObj2.put("military", militaryTimes[randomValue%militaryTimes.length]);
-        timeObj2.put("civilian", civilianTimes[randomValue%civilianTimes.length]);
-        JSONObject timeObj3 = new JSONObject();
-        //included a null value to test the processing of null:
-        timeObj3.put("military", (Object) null);
-        timeObj3.put("civilian", (Object) null);
-
-        ArrayList<JSONObject> timeObjects = new ArrayList<>();
-        timeObjects.add(timeObj1);
-        timeObjects.add(timeObj2);
-        timeObjects.add(timeObj3);
-
-        JSONArray times = new JSONArray(timeObjects);
-        obj.put("times", times);
-        JSONArray days = new JSONArray(DAYS_OF_WEEK);//start with 7 days - then remove some random days:
-        for(int dayVal=random.nextInt(111)%DAYS_OF_WEEK.length;dayVal < DAYS_OF_WEEK.length;dayVal=dayVal+2){
-            days.remove(dayVal);
-        }
-        obj.put("days", days);
-
-        JSONObject hostsHolder = new JSONObject();
-        int numberOfContacts = (random.nextInt(111)%3)+1; //1-3 contacts for the event
-        hostsHolder.put("number_of_contacts", numberOfContacts);
-        JSONArray hosts = new JSONArray();
-        JSONObject contact = new JSONObject();
-        contact.put("name", faker.name().fullName());
-        contact.put("phone", faker.phoneNumber().cellPhone());
-        contact.put("email", ((String)contact.get("name")).split(" ")[0]+"@zew.org");
-        hosts.put(contact);
-        if(numberOfContacts>1) {
-            JSONObject contact2 = new JSONObject();
-            contact2.put("name", faker.name().fullName());
-            contact2.put("phone", faker.phoneNumber().cellPhone());
-            contact2.put("email", ((String)contact2.get("name")).split(" ")[0]+"@zew.org");
-            hosts.put(contact2);
-        }
-        if(numberOfContacts>2) {
-            JSONObject contact3 = new JSONObject();
-            contact3.put("name", faker.name().fullName());
-            contact3.put("phone", faker.phoneNumber().cellPhone());
-            contact3.put("email", ((String)contact3.get("name")).split(" ")[0]+"@zew.org");
-            hosts.put(contact3);
-        }
-
-        hostsHolder.put("hosts", hosts);
-        obj.put("responsible_parties", hostsHolder);
-        return obj;
-    }
-}
-
-class ConnectionHelper{
-
-    final PooledConnectionProvider connectionProvider;
-    final JedisPooled jedisPooled;
-
-    /**
-     * Used when you want to send a batch of commands to the Redis Server
-     * @return Pipeline
-     */
-    public Pipeline getPipeline(){
-        return  new Pipeline(jedisPooled.getPool().getResource());
-    }
-
-    /**
-     * Assuming use of Jedis 4.3.1:
-     * https://github.com/redis/jedis/blob/82f286b4d1441cf15e32cc629c66b5c9caa0f286/src/main/java/redis/clients/jedis/Transaction.java#L22-L23
-     * @return Transaction
-     */
-    public Transaction getTransaction(){
-        return new Transaction(jedisPooled.getPool().getResource());
-    }
-
-    /**
-     * Obtain the default object used to perform Redis commands
-     * @return JedisPooled
-     */
-    public JedisPooled getPooledJedis(){
-        return jedisPooled;
+        else if(connectionHelper.isCluster()){
+            new ClusterJsonLoader(connectionHelper,PREFIX_FOR_SEARCH,
+                    useFastGenerator ? keyNumber -> FastJsonZewActivityGenerator.createFakeJsonZewActivityBytes(keyNumber) :
+                            JsonZewActivityBuilder::createFakeJsonZewActivityBytes,
+                    loadBatchSize).load(howManyObjects);
+        }
+        else{
+            ParallelJsonLoader loader = useFastGenerator ?
+                    new ParallelJsonLoader(connectionHelper,PREFIX_FOR_SEARCH,keyNumber -> FastJsonZewActivityGenerator.createFakeJsonZewActivityBytes(keyNumber),
+                            loadThreads,loadBatchSize,maxInFlightBatches) :
+                    new ParallelJsonLoader(connectionHelper,PREFIX_FOR_SEARCH,loadThreads,loadBatchSize,maxInFlightBatches);
+            loader.load(howManyObjects);
+        }
     }
 
-    /**
-     * Use this to build the URI expected in this classes' Constructor
-     * @param host
-     * @param port
-     * @param username
-     * @param password
-     * @return
-     */
-    public static URI buildURI(String host,int port,String username,String password){
-        URI uri = null;
+    // an existing snapshot is replayed as it is - otherwise one holding howManyObjects seeded documents is written first
+    private static DatasetSnapshot openOrWriteSnapshot(Path path,int howManyObjects){
         try {
-            if (!("".equalsIgnoreCase(password))) {
-                uri = new URI("redis://" + username + ":" + password + "@" + host + ":" + port);
-            } else {
-                uri = new URI("redis://" + host + ":" + port);
+            if(!Files.exists(path)){
+                long seed = datasetSeed==null ? 1 : datasetSeed;
+                System.out.println("Snapshot "+path+" does not exist yet - generating "+howManyObjects+" documents with seed "+seed);
+                DatasetSnapshot.write(path,seed,howManyObjects);
             }
-        } catch (URISyntaxException use) {
-            use.printStackTrace();
-            System.exit(1);
+            DatasetSnapshot snapshot = DatasetSnapshot.open(path);
+            if(snapshot.documentCount!=howManyObjects){
+                System.out.println("Note: the snapshot holds "+snapshot.documentCount+" documents - --quantity "+howManyObjects+" is ignored");
+            }
+            if(datasetSeed!=null&&snapshot.seed!=datasetSeed){
+                System.out.println("Note: the snapshot was generated with seed "+snapshot.seed+" - --seed "+datasetSeed+" is ignored");
+            }
+            return snapshot;
+        }catch(IOException ioe){
+            throw new UncheckedIOException(ioe);
         }
-        return uri;
-    }
-
-
-    public ConnectionHelper(URI uri){
-        HostAndPort address = new HostAndPort(uri.getHost(), uri.getPort());
-        JedisClientConfig clientConfig = null;
-        System.out.println("$$$ "+uri.getAuthority().split(":").length);
-        if(uri.getAuthority().split(":").length==3){
-            String user = uri.getAuthority().split(":")[0];
-            String password = uri.getAuthority().split(":")[1];
-            password = password.split("@")[0];
-            System.out.println("\n\nUsing user: "+user+" / password @@@@@@@@@@"+password);
-            clientConfig = DefaultJedisClientConfig.builder().user(user).password(password)
-                    .connectionTimeoutMillis(30000).timeoutMillis(120000).build(); // timeout and client settings
-
-        }else {
-            clientConfig = DefaultJedisClientConfig.builder()
-                    .connectionTimeoutMillis(30000).timeoutMillis(120000).build(); // timeout and client settings
-        }
-        GenericObjectPoolConfig<Connection> poolConfig = new ConnectionPoolConfig();
-        poolConfig.setMaxIdle(100);
-        poolConfig.setMaxTotal(1000);
-        poolConfig.setMinIdle(1);
-        poolConfig.setMaxWait(Duration.ofMinutes(1));
-        poolConfig.setTestOnCreate(true);
-
-        this.connectionProvider = new PooledConnectionProvider(new ConnectionFactory(address, clientConfig), poolConfig);
-        this.jedisPooled = new JedisPooled(connectionProvider);
-        System.out.println("TESTING CONNECTION: "+jedisPooled.incr("junk:incrme"));
     }
 }
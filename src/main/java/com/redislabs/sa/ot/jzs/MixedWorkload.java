@@ -0,0 +1,256 @@
+package com.redislabs.sa.ot.jzs;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import redis.clients.jedis.UnifiedJedis;
+import redis.clients.jedis.json.Path2;
+import redis.clients.jedis.search.Query;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs the query benchmark twice - once on its own and once while activities are being edited - and compares the two.
+ * While the queries run, writer threads apply path-level JSON updates to random existing keys (keyPrefix+2 ... keyPrefix+keyCount)
+ * at a fixed total rate (or as fast as they can when the rate is 0). Each update is one of:
+ *  - cost: JSON.SET key $.cost with a new cost
+ *  - time_added: JSON.SET key $.times[2] with a new time (the third time slot is always empty when the activity is generated)
+ *  - hosts_replaced: JSON.SET key $.responsible_parties with new hosts and their number_of_contacts (one command)
+ * Write latency is measured per update type from the intended start time (like the fixed rate query benchmark).
+ * The new values are generated before the intended start time, so the latency is the write alone and not the Faker calls.
+ * A probe thread measures visibility lag: it sets a unique cost on keyPrefix+1 (never touched by the writers)
+ * and then searches for that cost until the document is found. The lag is the time from the JSON.SET being acknowledged
+ * until the search first returns the document - it includes the round trip of that search, so the smallest possible lag is one query.
+ * The probed document's original cost is put back at the end.
+ * Nothing is recorded during warm-up.
+ */
+class MixedWorkload {
+
+    static final String[] UPDATE_TYPES = {"cost","time_added","hosts_replaced"};
+    private static final long VISIBILITY_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+    private static final Path2 COST_PATH = Path2.of("$.cost");
+    private static final Path2 ADDED_TIME_PATH = Path2.of("$.times[2]");
+    private static final Path2 RESPONSIBLE_PARTIES_PATH = Path2.of("$.responsible_parties");
+
+    private final UnifiedJedis jedis;
+    private final String indexName;
+    private final String keyPrefix;
+    private final int keyCount;
+    private final int updateThreads;
+    private final double updateRate;
+    private final long probeIntervalMillis;
+    private final int dialect;
+    private final long warmupNanos;
+    private final double measureSeconds;
+    private final Recorder[] writeLatencies = new Recorder[UPDATE_TYPES.length];
+    private final AtomicLong writeErrors = new AtomicLong();
+    private final Histogram visibilityLags = LatencyStats.newHistogram();
+    private long probesTimedOut = 0;
+    private long probePolls = 0;
+    private volatile boolean running = false;
+    private volatile long recordAfter = Long.MAX_VALUE;
+
+    /**
+     * @param jedis
+     * @param indexName the index (or alias) the probe searches
+     * @param keyPrefix
+     * @param keyCount how many keys (keyPrefix+1 ... keyPrefix+keyCount) exist
+     * @param updateThreads
+     * @param updateRate updates/sec across all writer threads - 0 means as fast as they can go
+     * @param probeIntervalMillis pause between visibility probes
+     * @param dialect
+     * @param warmupSeconds
+     * @param measureSeconds how long the query benchmark measures for
+     */
+    MixedWorkload(UnifiedJedis jedis,String indexName,String keyPrefix,int keyCount,int updateThreads,double updateRate,
+                  long probeIntervalMillis,int dialect,int warmupSeconds,int measureSeconds){
+        this.jedis = jedis;
+        this.indexName = indexName;
+        this.keyPrefix = keyPrefix;
+        this.keyCount = keyCount;
+        this.updateThreads = Math.max(1,updateThreads);
+        this.updateRate = updateRate;
+        this.probeIntervalMillis = Math.max(1,probeIntervalMillis);
+        this.dialect = dialect;
+        this.warmupNanos = TimeUnit.SECONDS.toNanos(warmupSeconds);
+        this.measureSeconds = measureSeconds;
+        for(int i=0;i<writeLatencies.length;i++){
+            writeLatencies[i] = new Recorder(3);
+        }
+    }
+
+    /**
+     * @param readOnly the query benchmark to run without writes
+     * @param mixed the same query benchmark to run while the writers and the probe are running
+     */
+    void run(QueryLoadGenerator readOnly,QueryLoadGenerator mixed){
+        if(keyCount<2){
+            System.out.println("The mixed workload needs at least 2 loaded activities ("+keyPrefix+"1 and up) - skipping it");
+            return;
+        }
+        System.out.println("\nMixed workload: read-only phase");
+        QueryLoadGenerator.Results readOnlyLatencies = readOnly.run();
+
+        System.out.println("\nMixed workload: "+updateThreads+" writer threads "+
+                (updateRate>0?"at "+updateRate+" updates/sec":"in closed-loop mode")+" editing "+(keyCount-1)+" activities while the queries run");
+        String probeKey = keyPrefix+1;
+        Object originalCost = jedis.jsonGet(probeKey,Path2.of("$.cost"));
+        ExecutorService threads = Executors.newFixedThreadPool(updateThreads+1);
+        running = true;
+        long startTime = System.nanoTime();
+        recordAfter = startTime+warmupNanos;
+        for(int t=0;t<updateThreads;t++){
+            threads.submit(() -> runWriter(startTime));
+        }
+        threads.submit(() -> runProbe(probeKey));
+        QueryLoadGenerator.Results mixedLatencies = mixed.run();
+        running = false;
+        threads.shutdown();
+        try {
+            threads.awaitTermination(VISIBILITY_TIMEOUT_NANOS*2,TimeUnit.NANOSECONDS);
+        }catch(InterruptedException ie){
+            Thread.currentThread().interrupt();
+        }
+        if(originalCost instanceof JSONArray&&((JSONArray)originalCost).length()>0){
+            jedis.jsonSet(probeKey,Path2.of("$.cost"),((JSONArray)originalCost).get(0).toString());
+        }
+        printResults(readOnlyLatencies,mixedLatencies,(System.nanoTime()-recordAfter)/1_000_000_000.0);
+    }
+
+    private void runWriter(long startTime){
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long intervalNanos = updateRate>0?(long)(TimeUnit.SECONDS.toNanos(1)*updateThreads/updateRate):0;
+        long nextIntendedStart = startTime+(intervalNanos>0?random.nextLong(intervalNanos):0);
+        while(running){
+            String key = keyPrefix+(2+random.nextInt(keyCount-1));
+            int type = random.nextInt(UPDATE_TYPES.length);
+            Update update = nextUpdate(type,random);
+            long intendedStart;
+            if(intervalNanos>0){
+                intendedStart = nextIntendedStart;
+                nextIntendedStart+=intervalNanos;
+                long wait;
+                while((wait = intendedStart-System.nanoTime())>0&&running){
+                    LockSupport.parkNanos(wait);
+                }
+            }else{
+                intendedStart = System.nanoTime();
+            }
+            try {
+                jedis.jsonSet(key,update.path,update.json);
+                if(intendedStart>=recordAfter){
+                    writeLatencies[type].recordValue(System.nanoTime()-intendedStart);
+                }
+            }catch(RuntimeException re){
+                writeErrors.incrementAndGet();
+            }
+        }
+    }
+
+    // the path and serialized value of one update of the given type
+    private static Update nextUpdate(int type,ThreadLocalRandom random){
+        if(type==0){
+            float cost = random.nextInt(3)>1?0.00f:JsonZewActivityBuilder.costsOverZero[random.nextInt(JsonZewActivityBuilder.costsOverZero.length)];
+            return new Update(COST_PATH,String.valueOf(cost));
+        }else if(type==1){
+            int t = random.nextInt(JsonZewActivityBuilder.militaryTimes.length);
+            JSONObject time = new JSONObject();
+            time.put("military",JsonZewActivityBuilder.militaryTimes[t]);
+            time.put("civilian",JsonZewActivityBuilder.civilianTimes[t]);
+            return new Update(ADDED_TIME_PATH,time.toString());
+        }else{
+            int numberOfContacts = random.nextInt(3)+1;
+            JSONArray hosts = new JSONArray();
+            for(int i=0;i<numberOfContacts;i++){
+                JSONObject contact = new JSONObject();
+                String name = JsonZewActivityBuilder.faker.name().fullName();
+                contact.put("name",name);
+                contact.put("phone",JsonZewActivityBuilder.faker.phoneNumber().cellPhone());
+                contact.put("email",name.split(" ")[0]+"@zew.org");
+                hosts.put(contact);
+            }
+            JSONObject responsibleParties = new JSONObject();
+            responsibleParties.put("number_of_contacts",numberOfContacts);
+            responsibleParties.put("hosts",hosts);
+            return new Update(RESPONSIBLE_PARTIES_PATH,responsibleParties.toString());
+        }
+    }
+
+    private static class Update{
+        final Path2 path;
+        final String json;
+
+        Update(Path2 path,String json){
+            this.path = path;
+            this.json = json;
+        }
+    }
+
+    // writes a cost no other activity has and then searches for it until the document shows up
+    private void runProbe(String probeKey){
+        long marker = 1_000_000;
+        while(running){
+            marker++;
+            Query probe = new Query("@cost:["+marker+" "+marker+"]").setNoContent().limit(0,0).dialect(dialect);
+            try {
+                jedis.jsonSet(probeKey,Path2.of("$.cost"),String.valueOf(marker));
+                long acknowledged = System.nanoTime();
+                boolean found = false;
+                long now = acknowledged;
+                while(!found&&now-acknowledged<VISIBILITY_TIMEOUT_NANOS){
+                    found = jedis.ftSearch(indexName,probe).getTotalResults()>0;
+                    now = System.nanoTime();
+                    if(acknowledged>=recordAfter){
+                        probePolls++;
+                    }
+                }
+                if(acknowledged>=recordAfter){
+                    if(found){
+                        visibilityLags.recordValue(now-acknowledged);
+                    }else{
+                        probesTimedOut++;
+                    }
+                }
+            }catch(RuntimeException re){
+                writeErrors.incrementAndGet();
+            }
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(probeIntervalMillis));
+        }
+    }
+
+    private void printResults(QueryLoadGenerator.Results readOnlyLatencies,QueryLoadGenerator.Results mixedLatencies,double seconds){
+        System.out.println("\n\tMixed workload write latencies (from the intended start time):\n");
+        System.out.println(LatencyStats.HEADER);
+        Histogram allWrites = LatencyStats.newHistogram();
+        for(int i=0;i<UPDATE_TYPES.length;i++){
+            Histogram h = writeLatencies[i].getIntervalHistogram();
+            allWrites.add(h);
+            System.out.println(LatencyStats.row(UPDATE_TYPES[i],h,seconds));
+        }
+        System.out.println(LatencyStats.row("ALL",allWrites,seconds));
+        System.out.println("\n\tVisibility lag (write acknowledged -> document returned by FT.SEARCH):\n");
+        System.out.println(LatencyStats.HEADER);
+        System.out.println(LatencyStats.row("visibility_lag",visibilityLags,seconds));
+        System.out.println(String.format("%d probes | %.2f searches per probe | %d probes not visible after %d seconds | %d failed writes",
+                visibilityLags.getTotalCount()+probesTimedOut,
+                visibilityLags.getTotalCount()>0?probePolls/(double)(visibilityLags.getTotalCount()+probesTimedOut):0.0,
+                probesTimedOut,TimeUnit.NANOSECONDS.toSeconds(VISIBILITY_TIMEOUT_NANOS),writeErrors.get()));
+        System.out.println("\n\tSearch latency with and without concurrent writes (all queries):\n");
+        System.out.println(LatencyStats.HEADER);
+        System.out.println(LatencyStats.row("read_only",readOnlyLatencies.responseTimes,readOnlyLatencies.queries,measureSeconds));
+        System.out.println(LatencyStats.row("with_writes",mixedLatencies.responseTimes,mixedLatencies.queries,measureSeconds));
+        System.out.println(String.format("p50 %+.1f%% | p99 %+.1f%% with writes",
+                change(readOnlyLatencies.responseTimes.getValueAtPercentile(50.0),mixedLatencies.responseTimes.getValueAtPercentile(50.0)),
+                change(readOnlyLatencies.responseTimes.getValueAtPercentile(99.0),mixedLatencies.responseTimes.getValueAtPercentile(99.0))));
+    }
+
+    private static double change(long before,long after){
+        return before>0?(after-before)*100.0/before:0.0;
+    }
+}
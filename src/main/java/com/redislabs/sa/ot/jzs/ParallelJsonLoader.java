@@ -0,0 +1,153 @@
+package com.redislabs.sa.ot.jzs;
+
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.json.Path2;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+
+/**
+ * Loads fake JSON activity objects using several writer threads.
+ * Each thread borrows its own connection from the pool (via a Pipeline) and owns
+ * a contiguous range of keys under the zew:activities: prefix so no two threads write the same key.
+ * The number of batches that are sent but not yet acknowledged (across all threads) is bounded
+ * by maxInFlightBatches - this keeps a large number of threads from flooding the server.
+ * Without a limit (0) every thread may have a batch in flight, so the writers never wait on each other.
+ * To run the program using 8 writer threads, batches of 500 and no more than 4 batches in flight:
+ * mvn compile exec:java -Dexec.cleanupDaemonThreads=false -Dexec.args="--host 192.168.1.21 --port 12000 --quantity 2000000 --loadthreads 8 --batchsize 500 --maxinflight 4"
+ */
+class ParallelJsonLoader {
+
+    private final ConnectionHelper connectionHelper;
+    private final String keyPrefix;
+    private final IntFunction<byte[]> documentSource;
+    private final int threadCount;
+    private final int batchSize;
+    private final Semaphore inFlightBatches;
+    private final AtomicLong objectsStillToGo = new AtomicLong();
+
+    ParallelJsonLoader(ConnectionHelper connectionHelper,String keyPrefix,int threadCount,int batchSize,int maxInFlightBatches){
+        this(connectionHelper,keyPrefix,JsonZewActivityBuilder::createFakeJsonZewActivityBytes,threadCount,batchSize,maxInFlightBatches);
+    }
+
+    /**
+     * @param documentSource returns the serialized JSON for the document stored under keyPrefix+keyNumber, with keyNumber as its seq
+     *                       - it is called concurrently by all writer threads
+     */
+    ParallelJsonLoader(ConnectionHelper connectionHelper,String keyPrefix,IntFunction<byte[]> documentSource,int threadCount,int batchSize,int maxInFlightBatches){
+        this.connectionHelper = connectionHelper;
+        this.keyPrefix = keyPrefix;
+        this.documentSource = documentSource;
+        this.threadCount = Math.max(1,threadCount);
+        this.batchSize = Math.max(1,batchSize);
+        this.inFlightBatches = new Semaphore(maxInFlightBatches>0 ? maxInFlightBatches : this.threadCount);
+    }
+
+    /**
+     * Writes howManyObjects documents with keys keyPrefix+1 ... keyPrefix+howManyObjects
+     * and prints the throughput achieved by each writer thread and overall
+     * @param howManyObjects
+     */
+    void load(int howManyObjects){
+        objectsStillToGo.set(howManyObjects);
+        int threads = Math.min(threadCount,Math.max(1,howManyObjects));
+        System.out.println("Writing "+howManyObjects+" objects to Redis using "+threads+" threads in batches of "+batchSize+
+                " or less with at most "+inFlightBatches.availablePermits()+" batches in flight...");
+        long startTime = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<LoadStats>> futures = new ArrayList<>();
+        int rangeSize = howManyObjects/threads;
+        int firstKey = 1;
+        for(int t=0;t<threads;t++){
+            // the last thread picks up whatever remains after the even split:
+            int lastKey = (t==threads-1) ? howManyObjects : firstKey+rangeSize-1;
+            final int start = firstKey;
+            final int end = lastKey;
+            final String threadName = "writer-"+t;
+            futures.add(executor.submit(() -> loadRange(threadName,start,end)));
+            firstKey = lastKey+1;
+        }
+        LoadStats overall = new LoadStats("overall");
+        try {
+            List<LoadStats> perThread = new ArrayList<>();
+            for (Future<LoadStats> f : futures) {
+                perThread.add(f.get());
+            }
+            overall.elapsedNanos = System.nanoTime()-startTime;
+            System.out.println("\n\n\tLoad Results (per thread and overall):\n");
+            for(LoadStats stats:perThread){
+                overall.docs+=stats.docs;
+                overall.bytes+=stats.bytes;
+                System.out.println(stats);
+            }
+            System.out.println(overall);
+        }catch(Throwable t){
+            System.out.println("Parallel load failed: "+t.getMessage());
+        }finally {
+            executor.shutdown();
+        }
+    }
+
+    private LoadStats loadRange(String threadName,int firstKey,int lastKey) throws InterruptedException{
+        LoadStats stats = new LoadStats(threadName);
+        long startTime = System.nanoTime();
+        // try-with-resources makes sure the borrowed connection goes back to the pool:
+        try(Pipeline pipeline = connectionHelper.getPipeline()) {
+            int keyNumber = lastKey;
+            while (keyNumber >= firstKey) {
+                int innerBatchQuantity = Math.min(batchSize, keyNumber - firstKey + 1);
+                for (int innerX = 0; innerX < innerBatchQuantity; innerX++) {
+                    byte[] json = documentSource.apply(keyNumber);
+                    pipeline.jsonSet(keyPrefix + keyNumber, Path2.ROOT_PATH, json);
+                    stats.bytes += json.length;
+                    keyNumber--;
+                }
+                inFlightBatches.acquire();
+                try {
+                    pipeline.sync(); // execute batch of JSON Set commands
+                } finally {
+                    inFlightBatches.release();
+                }
+                stats.docs += innerBatchQuantity;
+                long remaining = objectsStillToGo.addAndGet(-innerBatchQuantity);
+                if ((remaining + innerBatchQuantity) / 10000 != remaining / 10000) {
+                    System.out.print("<" + remaining + " JSON objects still to go> ");
+                }
+            }
+        }
+        stats.elapsedNanos = System.nanoTime()-startTime;
+        return stats;
+    }
+
+    static class LoadStats{
+        final String name;
+        long docs = 0;
+        long bytes = 0;
+        long elapsedNanos = 0;
+
+        LoadStats(String name){
+            this.name = name;
+        }
+
+        double docsPerSecond(){
+            return elapsedNanos==0 ? 0 : docs/(elapsedNanos/1_000_000_000.0);
+        }
+
+        double megabytesPerSecond(){
+            return elapsedNanos==0 ? 0 : (bytes/(1024.0*1024.0))/(elapsedNanos/1_000_000_000.0);
+        }
+
+        @Override
+        public String toString(){
+            return String.format("%-10s wrote %d docs (%.2f MB) in %d milliseconds: %.1f docs/sec  %.2f MB/sec",
+                    name,docs,bytes/(1024.0*1024.0),elapsedNanos/1_000_000,docsPerSecond(),megabytesPerSecond());
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.redislabs.sa.ot.jzs;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.apache.commons.pool2.impl.GenericObjectPool;
+import redis.clients.jedis.Connection;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Instruments the connection pool(s) ConnectionHelper borrows from:
+ *  - how long every borrow waited for a connection (HdrHistogram, recorded without locking)
+ *  - how many borrows failed because the pool was exhausted (no connection became free within maxWait)
+ *  - active / idle / waiting counts and the number of connections created and destroyed (read from the pools themselves)
+ * The numbers are registered as an MBean (com.redislabs.sa.ot.jzs:type=ConnectionPool) and can optionally be printed
+ * as one line every few seconds - that line shows wait times and create/destroy rates for the last interval only.
+ * In cluster mode the gauges are summed over the pools of every node.
+ */
+class PoolMetrics implements PoolMetricsMBean {
+
+    static final String OBJECT_NAME = "com.redislabs.sa.ot.jzs:type=ConnectionPool";
+
+    private final Supplier<Collection<? extends GenericObjectPool<Connection>>> pools;
+    private final Recorder borrowWaits = new Recorder(3);
+    private final Histogram allBorrowWaits = LatencyStats.newHistogram();
+    private final Histogram borrowWaitsSinceLastLog = LatencyStats.newHistogram();
+    private final AtomicLong exhausted = new AtomicLong();
+    private ScheduledExecutorService logger = null;
+    private long lastCreated = 0;
+    private long lastDestroyed = 0;
+    private long lastExhausted = 0;
+
+    /**
+     * @param pools supplies the pools to report on (looked up each time - cluster nodes can come and go)
+     */
+    PoolMetrics(Supplier<Collection<? extends GenericObjectPool<Connection>>> pools){
+        this.pools = pools;
+    }
+
+    /**
+     * Times one borrow from the pool
+     * @param borrow
+     * @return the borrowed connection
+     */
+    Connection timeBorrow(Supplier<Connection> borrow){
+        long start = System.nanoTime();
+        try {
+            Connection connection = borrow.get();
+            borrowWaits.recordValue(System.nanoTime()-start);
+            return connection;
+        }catch(RuntimeException re){
+            // the pool wraps the NoSuchElementException it throws when maxWait passes without a free connection
+            if(re instanceof NoSuchElementException||re.getCause() instanceof NoSuchElementException){
+                exhausted.incrementAndGet();
+            }
+            throw re;
+        }
+    }
+
+    PoolMetrics registerMBean(){
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this,new ObjectName(OBJECT_NAME));
+        }catch(Exception e){
+            System.out.println("Could not register the connection pool MBean: "+e.getMessage());
+        }
+        return this;
+    }
+
+    /**
+     * Prints a line describing the pool(s) every periodSeconds
+     * @param periodSeconds
+     * @return this
+     */
+    PoolMetrics startLogging(int periodSeconds){
+        if(periodSeconds<=0){
+            return this;
+        }
+        logger = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r,"pool-metrics");
+            t.setDaemon(true);
+            return t;
+        });
+        logger.scheduleAtFixedRate(() -> System.out.println(logLine(periodSeconds)),periodSeconds,periodSeconds,TimeUnit.SECONDS);
+        return this;
+    }
+
+    void close(){
+        if(logger!=null){
+            logger.shutdownNow();
+        }
+    }
+
+    // moves whatever was recorded since the last call into the longer lived histograms
+    private synchronized void update(){
+        Histogram interval = borrowWaits.getIntervalHistogram();
+        allBorrowWaits.add(interval);
+        borrowWaitsSinceLastLog.add(interval);
+    }
+
+    synchronized String logLine(int periodSeconds){
+        update();
+        long created = getCreatedCount();
+        long destroyed = getDestroyedCount();
+        long exhaustedNow = exhausted.get();
+        String line = String.format("[pool] active %d | idle %d | waiting %d | created %.1f/s | destroyed %.1f/s | borrows %d | wait p50 %.1f us p99 %.1f us max %.1f us | exhausted %d",
+                getActive(),getIdle(),getWaiters(),
+                (created-lastCreated)/(double)periodSeconds,(destroyed-lastDestroyed)/(double)periodSeconds,
+                borrowWaitsSinceLastLog.getTotalCount(),
+                LatencyStats.micros(borrowWaitsSinceLastLog.getValueAtPercentile(50.0)),
+                LatencyStats.micros(borrowWaitsSinceLastLog.getValueAtPercentile(99.0)),
+                LatencyStats.micros(borrowWaitsSinceLastLog.getMaxValue()),
+                exhaustedNow-lastExhausted);
+        borrowWaitsSinceLastLog.reset();
+        lastCreated = created;
+        lastDestroyed = destroyed;
+        lastExhausted = exhaustedNow;
+        return line;
+    }
+
+    @Override
+    public synchronized long getBorrowCount(){
+        update();
+        return allBorrowWaits.getTotalCount();
+    }
+
+    @Override
+    public synchronized double getBorrowWaitP50Micros(){
+        update();
+        return LatencyStats.micros(allBorrowWaits.getValueAtPercentile(50.0));
+    }
+
+    @Override
+    public synchronized double getBorrowWaitP99Micros(){
+        update();
+        return LatencyStats.micros(allBorrowWaits.getValueAtPercentile(99.0));
+    }
+
+    @Override
+    public synchronized double getBorrowWaitP999Micros(){
+        update();
+        return LatencyStats.micros(allBorrowWaits.getValueAtPercentile(99.9));
+    }
+
+    @Override
+    public synchronized double getBorrowWaitMaxMicros(){
+        update();
+        return LatencyStats.micros(allBorrowWaits.getMaxValue());
+    }
+
+    @Override
+    public long getExhaustedCount(){
+        return exhausted.get();
+    }
+
+    @Override
+    public int getActive(){
+        int total = 0;
+        for(GenericObjectPool<Connection> pool:pools.get()){
+            total+=pool.getNumActive();
+        }
+        return total;
+    }
+
+    @Override
+    public int getIdle(){
+        int total = 0;
+        for(GenericObjectPool<Connection> pool:pools.get()){
+            total+=pool.getNumIdle();
+        }
+        return total;
+    }
+
+    @Override
+    public int getWaiters(){
+        int total = 0;
+        for(GenericObjectPool<Connection> pool:pools.get()){
+            total+=pool.getNumWaiters();
+        }
+        return total;
+    }
+
+    @Override
+    public long getCreatedCount(){
+        long total = 0;
+        for(GenericObjectPool<Connection> pool:pools.get()){
+            total+=pool.getCreatedCount();
+        }
+        return total;
+    }
+
+    @Override
+    public long getDestroyedCount(){
+        long total = 0;
+        for(GenericObjectPool<Connection> pool:pools.get()){
+            total+=pool.getDestroyedCount();
+        }
+        return total;
+    }
+}
@@ -0,0 +1,31 @@
+package com.redislabs.sa.ot.jzs;
+
+/**
+ * What PoolMetrics exposes through JMX (com.redislabs.sa.ot.jzs:type=ConnectionPool)
+ * JMX only introspects public MBean interfaces - which is why this one is public
+ * Wait times are in microseconds and cover every borrow since the program started
+ */
+public interface PoolMetricsMBean {
+
+    long getBorrowCount();
+
+    double getBorrowWaitP50Micros();
+
+    double getBorrowWaitP99Micros();
+
+    double getBorrowWaitP999Micros();
+
+    double getBorrowWaitMaxMicros();
+
+    long getExhaustedCount();
+
+    int getActive();
+
+    int getIdle();
+
+    int getWaiters();
+
+    long getCreatedCount();
+
+    long getDestroyedCount();
+}
@@ -0,0 +1,191 @@
+package com.redislabs.sa.ot.jzs;
+
+import redis.clients.jedis.Connection;
+import redis.clients.jedis.UnifiedJedis;
+import redis.clients.jedis.search.Query;
+import redis.clients.jedis.search.SearchResult;
+import redis.clients.jedis.search.aggr.AggregationBuilder;
+import redis.clients.jedis.search.aggr.AggregationResult;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Sends a set of independent searches and aggregations together instead of one after another
+ * so a page that needs several of them waits for roughly the slowest one rather than the sum of all of them.
+ * Two ways to dispatch:
+ *  - pipelined(): every command is written to one connection before any reply is read.
+ *    Replies arrive in order so each result's completion time is when its own reply was read.
+ *    In cluster mode the connection serving the first request's index is used for the whole batch.
+ *  - fanOut(): each request runs on its own pooled connection, on a caller supplied (bounded) executor -
+ *    the server can work on several of them at once.
+ * Either way the results come back in the order the requests were added, each with its own timing
+ * (nanoseconds measured from the start of the batch). A failed request carries its exception - the others are unaffected.
+ */
+class QueryBatch {
+
+    private final ConnectionHelper connectionHelper;
+    private final List<Request> requests = new ArrayList<>();
+
+    QueryBatch(ConnectionHelper connectionHelper){
+        this.connectionHelper = connectionHelper;
+    }
+
+    QueryBatch add(String indexName,ZewQueries.NamedQuery query){
+        requests.add(new Request(indexName,query));
+        return this;
+    }
+
+    QueryBatch add(String indexName,String name,Query query){
+        return add(indexName,new ZewQueries.NamedQuery(name,query.toString(),query));
+    }
+
+    QueryBatch add(String indexName,String name,AggregationBuilder aggregation){
+        return add(indexName,new ZewQueries.NamedQuery(name,name,aggregation));
+    }
+
+    int size(){
+        return requests.size();
+    }
+
+    /**
+     * Writes every request to one connection, then reads the replies in order
+     * @return one Result per request in the order they were added
+     */
+    List<Result> pipelined(){
+        List<Result> results = new ArrayList<>(requests.size());
+        if(requests.isEmpty()){
+            return results;
+        }
+        long batchStart = System.nanoTime();
+        try(Connection connection = connectionHelper.getConnectionForKey(requests.get(0).indexName)){
+            for(Request r:requests){
+                connection.sendCommand(r.query.command(r.indexName));
+            }
+            for(Request r:requests){
+                Result result = new Result(r,0);
+                try {
+                    result.value = r.query.decode(connection.getOne()); // getOne() flushes the commands before the first read
+                }catch(RuntimeException re){
+                    // an error reply is fully read before it is thrown - the replies that follow are still intact
+                    result.error = re;
+                }
+                result.completedNanos = System.nanoTime()-batchStart;
+                results.add(result);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Runs every request on its own pooled connection using the given executor
+     * (its size bounds how many of the requests are in flight at once)
+     * @param executor
+     * @return one Result per request in the order they were added
+     */
+    List<Result> fanOut(ExecutorService executor){
+        UnifiedJedis jedis = connectionHelper.getPooledJedis();
+        long batchStart = System.nanoTime();
+        List<Future<Result>> futures = new ArrayList<>(requests.size());
+        for(Request r:requests){
+            futures.add(executor.submit(() -> {
+                Result result = new Result(r,System.nanoTime()-batchStart);
+                try {
+                    result.value = r.query.execute(jedis,r.indexName);
+                }catch(RuntimeException re){
+                    result.error = re;
+                }
+                result.completedNanos = System.nanoTime()-batchStart;
+                return result;
+            }));
+        }
+        List<Result> results = new ArrayList<>(requests.size());
+        for(int i=0;i<futures.size();i++){
+            try {
+                results.add(futures.get(i).get());
+            }catch(Exception e){
+                Result result = new Result(requests.get(i),0);
+                result.error = new RuntimeException(e);
+                result.completedNanos = System.nanoTime()-batchStart;
+                results.add(result);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Prints one line per result and the latency of the whole batch (the latest completion)
+     * @param label
+     * @param results
+     * @return the latency of the whole batch in nanoseconds
+     */
+    static long print(String label,List<Result> results){
+        long batchNanos = 0;
+        System.out.println("\n\t"+label+" (times in microseconds from the start of the batch):\n");
+        System.out.println(String.format("%-28s %12s %12s %12s  %s","name","started","completed","own time","result"));
+        for(Result r:results){
+            batchNanos = Math.max(batchNanos,r.completedNanos);
+            System.out.println(String.format("%-28s %12.1f %12.1f %12.1f  %s",r.name,
+                    LatencyStats.micros(r.startedNanos),LatencyStats.micros(r.completedNanos),
+                    LatencyStats.micros(r.completedNanos-r.startedNanos),r.summary()));
+        }
+        System.out.println(String.format("%-28s %12s %12.1f","whole batch","",LatencyStats.micros(batchNanos)));
+        return batchNanos;
+    }
+
+    private static class Request{
+        final String indexName;
+        final ZewQueries.NamedQuery query;
+
+        Request(String indexName,ZewQueries.NamedQuery query){
+            this.indexName = indexName;
+            this.query = query;
+        }
+    }
+
+    /**
+     * The outcome of one request in a batch
+     */
+    static class Result{
+        final String name;
+        final long startedNanos;
+        long completedNanos;
+        Object value;
+        RuntimeException error;
+
+        private Result(Request request,long startedNanos){
+            this.name = request.query.name;
+            this.startedNanos = startedNanos;
+        }
+
+        boolean failed(){
+            return error!=null;
+        }
+
+        SearchResult searchResult(){
+            if(failed()){
+                throw error;
+            }
+            return (SearchResult) value;
+        }
+
+        AggregationResult aggregationResult(){
+            if(failed()){
+                throw error;
+            }
+            return (AggregationResult) value;
+        }
+
+        String summary(){
+            if(failed()){
+                return "failed: "+error.getMessage();
+            }
+            if(value instanceof SearchResult){
+                return ((SearchResult)value).getTotalResults()+" matches";
+            }
+            return ((AggregationResult)value).getTotalResults()+" groups";
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.redislabs.sa.ot.jzs;
+
+/**
+ * Something that can fire one of the ZewQueries and return its SearchResult or AggregationResult
+ * The benchmark modes fire their queries through this so the path a query takes (straight to the server,
+ * through a cache, through a replica...) can be swapped without changing the benchmark
+ */
+interface QueryExecutor {
+
+    Object execute(ZewQueries.NamedQuery query,String indexName);
+}
@@ -0,0 +1,254 @@
+package com.redislabs.sa.ot.jzs;
+
+import org.HdrHistogram.Histogram;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Fires a weighted mix of the ZewQueries from several client threads for a fixed amount of time
+ * and reports throughput and latency percentiles for each query.
+ * There are two ways to drive the load:
+ *  - closed-loop (targetRate of 0): every thread sends its next query as soon as the previous one returns
+ *  - fixed rate (targetRate > 0 queries/sec across all threads): every query has an intended start time on a fixed schedule
+ * In fixed rate mode latency is measured from the intended start time rather than from the moment the query was sent,
+ * so a stalled server is charged for all the queries that should have been sent while it was stalled
+ * (this is the usual correction for coordinated omission).
+ * In closed-loop mode the same correction is approximated by HdrHistogram's recordValueWithExpectedInterval()
+ * using, for each query, the median latency the thread observed for that query during warm-up as the expected interval
+ * (so a query that is always slow is not mistaken for a stall). The synthetic values only shape the percentiles -
+ * counts and throughput are those of the queries that really ran.
+ * Nothing is recorded during warm-up.
+ * Example: 16 threads, 2000 queries/sec, 10 seconds of warm-up and 60 seconds of measurement:
+ * --querybenchmark true --querythreads 16 --targetrate 2000 --warmupseconds 10 --measureseconds 60 --querymix "Query1:4,Query2:2,Query3:2,Dialect3:1,Aggregation:1"
+ */
+class QueryLoadGenerator {
+
+    private final QueryExecutor executor;
+    private final String indexName;
+    private final List<ZewQueries.NamedQuery> queries = new ArrayList<>();
+    private final int[] cumulativeWeights;
+    private final int threadCount;
+    private final double targetRate;
+    private final long warmupNanos;
+    private final long measureNanos;
+
+    QueryLoadGenerator(QueryExecutor executor,String indexName,List<ZewQueries.NamedQuery> availableQueries,Map<String,Integer> mix,
+                       int threadCount,double targetRate,int warmupSeconds,int measureSeconds){
+        this.executor = executor;
+        this.indexName = indexName;
+        List<Integer> weights = new ArrayList<>();
+        for(ZewQueries.NamedQuery q:availableQueries){
+            int weight = mix.isEmpty() ? 1 : mix.getOrDefault(q.name,0);
+            if(weight>0){
+                queries.add(q);
+                weights.add(weight);
+            }
+        }
+        if(queries.isEmpty()){
+            throw new IllegalArgumentException("The query mix "+mix+" does not name any of the known queries: "+availableQueries);
+        }
+        cumulativeWeights = new int[weights.size()];
+        int total = 0;
+        for(int i=0;i<weights.size();i++){
+            total+=weights.get(i);
+            cumulativeWeights[i]=total;
+        }
+        this.threadCount = Math.max(1,threadCount);
+        this.targetRate = targetRate;
+        this.warmupNanos = TimeUnit.SECONDS.toNanos(warmupSeconds);
+        this.measureNanos = TimeUnit.SECONDS.toNanos(measureSeconds);
+    }
+
+    /**
+     * Parses a mix such as "Query1:4,Query2:2,Aggregation:1" into query name -> weight
+     * @param mix
+     * @return Map
+     */
+    static Map<String,Integer> parseMix(String mix){
+        Map<String,Integer> weights = new LinkedHashMap<>();
+        if(mix==null||mix.trim().isEmpty()){
+            return weights;
+        }
+        for(String entry:mix.split(",")){
+            String[] nameAndWeight = entry.trim().split(":");
+            weights.put(nameAndWeight[0].trim(),nameAndWeight.length>1?Integer.parseInt(nameAndWeight[1].trim()):1);
+        }
+        return weights;
+    }
+
+    /**
+     * @return the response times of all queries together and how many queries really ran (see printResults)
+     */
+    Results run(){
+        System.out.println("\nRunning query benchmark with "+threadCount+" threads "+
+                (targetRate>0?"at a target rate of "+targetRate+" queries/sec":"in closed-loop mode")+
+                " ("+TimeUnit.NANOSECONDS.toSeconds(warmupNanos)+" seconds warm-up, "+
+                TimeUnit.NANOSECONDS.toSeconds(measureNanos)+" seconds measured) using: ");
+        for(ZewQueries.NamedQuery q:queries){
+            System.out.println("\t"+q);
+        }
+        ExecutorService threadPool = Executors.newFixedThreadPool(threadCount);
+        long startTime = System.nanoTime();
+        List<Future<WorkerResults>> futures = new ArrayList<>();
+        for(int t=0;t<threadCount;t++){
+            futures.add(threadPool.submit(() -> runWorker(startTime)));
+        }
+        WorkerResults totals = new WorkerResults(queries.size());
+        try {
+            for (Future<WorkerResults> f : futures) {
+                totals.add(f.get());
+            }
+        }catch(Throwable t){
+            System.out.println("Query benchmark failed: "+t.getMessage());
+        }finally {
+            threadPool.shutdown();
+        }
+        return printResults(totals);
+    }
+
+    private WorkerResults runWorker(long startTime){
+        WorkerResults results = new WorkerResults(queries.size());
+        Histogram[] warmupLatencies = new Histogram[queries.size()];
+        for(int i=0;i<warmupLatencies.length;i++){
+            warmupLatencies[i] = LatencyStats.newHistogram();
+        }
+        long warmupEnd = startTime+warmupNanos;
+        long measureEnd = warmupEnd+measureNanos;
+        long intervalNanos = targetRate>0 ? (long)(TimeUnit.SECONDS.toNanos(1)*threadCount/targetRate) : 0;
+        long[] expectedIntervalNanos = new long[queries.size()];
+        boolean measuring = false;
+        // stagger the threads so a fixed rate is not delivered in bursts of threadCount queries:
+        long nextIntendedStart = startTime+(intervalNanos>0?ThreadLocalRandom.current().nextLong(intervalNanos):0);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while(true){
+            long intendedStart;
+            if(intervalNanos>0){
+                intendedStart = nextIntendedStart;
+                nextIntendedStart+=intervalNanos;
+                long wait;
+                while((wait = intendedStart-System.nanoTime())>0){
+                    LockSupport.parkNanos(wait);
+                }
+            }else{
+                intendedStart = System.nanoTime();
+            }
+            if(intendedStart>=measureEnd){
+                break;
+            }
+            if(!measuring&&intendedStart>=warmupEnd){
+                measuring = true;
+                for(int i=0;i<warmupLatencies.length;i++){
+                    expectedIntervalNanos[i] = warmupLatencies[i].getTotalCount()>0?warmupLatencies[i].getValueAtPercentile(50.0):0;
+                }
+            }
+            int queryIndex = pickQuery(random);
+            long sendTime = System.nanoTime();
+            boolean failed = false;
+            try {
+                executor.execute(queries.get(queryIndex), indexName);
+            }catch(RuntimeException re){
+                failed = true;
+            }
+            long endTime = System.nanoTime();
+            if(!measuring){
+                warmupLatencies[queryIndex].recordValue(endTime-sendTime);
+                continue;
+            }
+            if(failed){
+                results.errors[queryIndex]++;
+            }else if(intervalNanos>0){
+                results.responseTimes[queryIndex].recordValue(endTime-intendedStart);
+                results.serviceTimes[queryIndex].recordValue(endTime-sendTime);
+            }else{
+                results.responseTimes[queryIndex].recordValueWithExpectedInterval(endTime-sendTime,expectedIntervalNanos[queryIndex]);
+                results.serviceTimes[queryIndex].recordValue(endTime-sendTime);
+            }
+        }
+        return results;
+    }
+
+    private int pickQuery(ThreadLocalRandom random){
+        int r = random.nextInt(cumulativeWeights[cumulativeWeights.length-1]);
+        for(int i=0;i<cumulativeWeights.length;i++){
+            if(r<cumulativeWeights[i]){
+                return i;
+            }
+        }
+        return cumulativeWeights.length-1;
+    }
+
+    // counts and ops/sec come from the service times - they hold exactly one value per query that ran
+    private Results printResults(WorkerResults totals){
+        double seconds = measureNanos/1_000_000_000.0;
+        Histogram allResponseTimes = LatencyStats.newHistogram();
+        Histogram allServiceTimes = LatencyStats.newHistogram();
+        System.out.println("\n\tQuery benchmark response times (corrected for coordinated omission):\n");
+        System.out.println(LatencyStats.HEADER);
+        for(int i=0;i<queries.size();i++){
+            allResponseTimes.add(totals.responseTimes[i]);
+            allServiceTimes.add(totals.serviceTimes[i]);
+            System.out.println(LatencyStats.row(queries.get(i).name,totals.responseTimes[i],totals.serviceTimes[i].getTotalCount(),seconds));
+        }
+        System.out.println(LatencyStats.row("ALL",allResponseTimes,allServiceTimes.getTotalCount(),seconds));
+        System.out.println("\n\tQuery benchmark service times (measured from the moment each query was sent):\n");
+        System.out.println(LatencyStats.HEADER);
+        for(int i=0;i<queries.size();i++){
+            System.out.println(LatencyStats.row(queries.get(i).name,totals.serviceTimes[i],seconds));
+        }
+        System.out.println(LatencyStats.row("ALL",allServiceTimes,seconds));
+        for(int i=0;i<queries.size();i++){
+            if(totals.errors[i]>0){
+                System.out.println(queries.get(i).name+" failed "+totals.errors[i]+" times during measurement");
+            }
+        }
+        return new Results(allResponseTimes,allServiceTimes.getTotalCount());
+    }
+
+    /**
+     * The response times of all queries together and the number of queries that really ran
+     * (in closed-loop mode the response times also hold the values added to correct for coordinated omission)
+     */
+    static class Results{
+        final Histogram responseTimes;
+        final long queries;
+
+        Results(Histogram responseTimes,long queries){
+            this.responseTimes = responseTimes;
+            this.queries = queries;
+        }
+    }
+
+    // each worker records into its own histograms - they are only merged once all workers are done
+    private static class WorkerResults{
+        final Histogram[] responseTimes;
+        final Histogram[] serviceTimes;
+        final long[] errors;
+
+        WorkerResults(int size){
+            responseTimes = new Histogram[size];
+            serviceTimes = new Histogram[size];
+            errors = new long[size];
+            for(int i=0;i<size;i++){
+                responseTimes[i] = LatencyStats.newHistogram();
+                serviceTimes[i] = LatencyStats.newHistogram();
+            }
+        }
+
+        void add(WorkerResults other){
+            for(int i=0;i<responseTimes.length;i++){
+                responseTimes[i].add(other.responseTimes[i]);
+                serviceTimes[i].add(other.serviceTimes[i]);
+                errors[i]+=other.errors[i];
+            }
+        }
+    }
+}
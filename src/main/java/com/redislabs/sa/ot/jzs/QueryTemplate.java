@@ -0,0 +1,173 @@
+package com.redislabs.sa.ot.jzs;
+
+import redis.clients.jedis.BuilderFactory;
+import redis.clients.jedis.CommandArguments;
+import redis.clients.jedis.CommandObject;
+import redis.clients.jedis.UnifiedJedis;
+import redis.clients.jedis.args.Rawable;
+import redis.clients.jedis.args.RawableFactory;
+import redis.clients.jedis.search.Query;
+import redis.clients.jedis.search.SearchProtocol;
+import redis.clients.jedis.search.aggr.AggregationBuilder;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A search or aggregation whose query string holds dialect 2 parameters ($name) that are filled in every time the command is built.
+ * Everything except the parameter values is encoded once, when the template is created: the query string, RETURN, LIMIT,
+ * GROUPBY ... arguments are kept as ready-to-send Rawables and each parameter's possible values are encoded up front too.
+ * Building a command is then just picking values and adding references to already encoded bytes -
+ * no Query / FieldName objects are built and no String is encoded per call.
+ * Parameters that depend on each other (a cost range, two different days) are declared together as one slot
+ * whose choices are complete tuples of values.
+ * Templates are NamedQuery objects so the benchmark modes, the cache, the profiler and QueryBatch can fire them unchanged.
+ */
+class QueryTemplate extends ZewQueries.NamedQuery {
+
+    private static final Rawable PARAMS = SearchProtocol.SearchKeyword.PARAMS;
+    private static final Rawable DIALECT = SearchProtocol.SearchKeyword.DIALECT;
+
+    private final SearchProtocol.SearchCommand searchCommand;
+    private final Rawable[] staticArgs;
+    private final Rawable dialect;
+    private final List<Slot> slots = new ArrayList<>();
+    private Rawable paramsCount = RawableFactory.from(0);
+    private final Map<String,Rawable> indexNames = new ConcurrentHashMap<>();
+
+    /**
+     * @param name
+     * @param displayQuery
+     * @param query the query string (with $parameters) and every other option - without a dialect
+     * @param dialect at least 2 (parameters need dialect 2)
+     */
+    QueryTemplate(String name,String displayQuery,Query query,int dialect){
+        super(name,displayQuery,query);
+        this.searchCommand = SearchProtocol.SearchCommand.SEARCH;
+        this.staticArgs = encode(new CommandArguments(searchCommand).add("").addParams(query));
+        this.dialect = RawableFactory.from(Math.max(2,dialect));
+    }
+
+    /**
+     * @param name
+     * @param displayQuery
+     * @param aggregation the query string (with $parameters) and the GROUPBY / REDUCE / FILTER steps - without a dialect
+     * @param dialect at least 2 (parameters need dialect 2)
+     */
+    QueryTemplate(String name,String displayQuery,AggregationBuilder aggregation,int dialect){
+        super(name,displayQuery,aggregation);
+        this.searchCommand = SearchProtocol.SearchCommand.AGGREGATE;
+        this.staticArgs = encode(new CommandArguments(searchCommand).add("").addObjects(aggregation.getArgs()));
+        this.dialect = RawableFactory.from(Math.max(2,dialect));
+    }
+
+    /**
+     * Declares a parameter that takes any of the given values
+     * @param paramName
+     * @param values
+     * @return this
+     */
+    QueryTemplate param(String paramName,String... values){
+        String[][] choices = new String[values.length][];
+        for(int i=0;i<values.length;i++){
+            choices[i] = new String[]{values[i]};
+        }
+        return params(new String[]{paramName},choices);
+    }
+
+    /**
+     * Declares parameters whose values are chosen together
+     * @param paramNames
+     * @param choices each choice holds one value per parameter name
+     * @return this
+     */
+    QueryTemplate params(String[] paramNames,String[][] choices){
+        if(choices.length==0){
+            throw new IllegalArgumentException("No values given for "+String.join(",",paramNames));
+        }
+        Rawable[] names = new Rawable[paramNames.length];
+        for(int i=0;i<paramNames.length;i++){
+            names[i] = RawableFactory.from(paramNames[i]);
+        }
+        Rawable[][] values = new Rawable[choices.length][];
+        for(int c=0;c<choices.length;c++){
+            values[c] = new Rawable[paramNames.length];
+            for(int i=0;i<paramNames.length;i++){
+                values[c][i] = RawableFactory.from(choices[c][i]);
+            }
+        }
+        slots.add(new Slot(names,values));
+        int count = 0;
+        for(Slot slot:slots){
+            count+=slot.names.length*2;
+        }
+        paramsCount = RawableFactory.from(count);
+        return this;
+    }
+
+    /**
+     * @param indexName
+     * @return the command with a random choice for every parameter slot
+     */
+    @Override
+    CommandArguments command(String indexName){
+        CommandArguments args = new CommandArguments(searchCommand)
+                .key(indexNames.computeIfAbsent(indexName,RawableFactory::from));
+        for(Rawable arg:staticArgs){
+            args.add(arg);
+        }
+        args.add(PARAMS).add(paramsCount);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for(Slot slot:slots){
+            Rawable[] choice = slot.values[random.nextInt(slot.values.length)];
+            for(int i=0;i<choice.length;i++){
+                args.add(slot.names[i]).add(choice[i]);
+            }
+        }
+        return args.add(DIALECT).add(dialect);
+    }
+
+    @Override
+    Object execute(UnifiedJedis jedis,String indexName){
+        return decode(jedis.executeCommand(new CommandObject<>(command(indexName),BuilderFactory.RAW_OBJECT)));
+    }
+
+    @Override
+    public String toString(){
+        StringBuilder sb = new StringBuilder(super.toString());
+        for(Slot slot:slots){
+            sb.append(" | ");
+            for(int i=0;i<slot.names.length;i++){
+                sb.append(i>0?",":"").append('$').append(new String(slot.names[i].getRaw()));
+            }
+            sb.append(" from ").append(slot.values.length).append(" values");
+        }
+        return sb.toString();
+    }
+
+    // the arguments after the command name and the (placeholder) index name
+    private static Rawable[] encode(CommandArguments args){
+        List<Rawable> encoded = new ArrayList<>();
+        Iterator<Rawable> iterator = args.iterator();
+        iterator.next();
+        iterator.next();
+        while(iterator.hasNext()){
+            encoded.add(RawableFactory.from(iterator.next().getRaw()));
+        }
+        return encoded.toArray(new Rawable[0]);
+    }
+
+    private static class Slot{
+        final Rawable[] names;
+        final Rawable[][] values;
+
+        Slot(Rawable[] names,Rawable[][] values){
+            this.names = names;
+            this.values = values;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.redislabs.sa.ot.jzs;
+
+import org.HdrHistogram.Histogram;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Separates the cold-start cost of each query from its steady-state latency before any other timing is taken:
+ *  1. cold: every query is fired once, as its very first use in this JVM (class loading, code that is still interpreted
+ *     rather than JIT compiled, and a new connection if the pool had none idle are all part of that one call)
+ *  2. connections: the pool is filled up front (ConnectionHelper.warmUp) so no later call pays for connecting
+ *  3. warm-up: each query is fired in rounds of ROUND_SIZE until the medians of the last STABLE_ROUNDS rounds are all within
+ *     tolerance of each other (and at least minIterations calls were made) - or maxSeconds pass
+ *  4. steady state: steadyIterations more calls per query are recorded
+ * A failing call is counted as an error for its query (and not timed) - a query with errors is never reported as stable,
+ * and its warm-up stops after a round in which every call failed.
+ * Only the steady-state numbers should be compared with production - the cold column shows what the first user pays.
+ */
+class QueryWarmUp {
+
+    static final String TABLE_HEADER = String.format("%-28s %10s %10s %8s %8s %10s %10s %10s %10s",
+            "query","cold(us)","warm-up","stable","errors","p50(us)","p90(us)","p99(us)","cold/p50");
+    static final int ROUND_SIZE = 20;
+    static final int STABLE_ROUNDS = 3;
+
+    private final ConnectionHelper connectionHelper;
+    private final QueryExecutor executor;
+    private final String indexName;
+    private final List<ZewQueries.NamedQuery> queries;
+    private final int connections;
+    private final int minIterations;
+    private final long maxNanos;
+    private final double tolerance;
+    private final int steadyIterations;
+
+    /**
+     * @param connectionHelper
+     * @param executor
+     * @param indexName
+     * @param queries
+     * @param connections how many connections the pool should hold before the warm-up (0 leaves the pool alone)
+     * @param minIterations the fewest warm-up calls per query
+     * @param maxSeconds how long the warm-up of one query may take before it is measured anyway
+     * @param tolerance e.g. 0.05 - round medians within 5% of each other count as stable
+     * @param steadyIterations recorded calls per query
+     */
+    QueryWarmUp(ConnectionHelper connectionHelper,QueryExecutor executor,String indexName,List<ZewQueries.NamedQuery> queries,
+                int connections,int minIterations,int maxSeconds,double tolerance,int steadyIterations){
+        this.connectionHelper = connectionHelper;
+        this.executor = executor;
+        this.indexName = indexName;
+        this.queries = queries;
+        this.connections = connections;
+        this.minIterations = Math.max(0,minIterations);
+        this.maxNanos = TimeUnit.SECONDS.toNanos(Math.max(1,maxSeconds));
+        this.tolerance = tolerance;
+        this.steadyIterations = Math.max(1,steadyIterations);
+    }
+
+    void run(){
+        System.out.println("\nWarming up "+queries.size()+" queries (at least "+minIterations+" calls each, stable when "+STABLE_ROUNDS+
+                " rounds of "+ROUND_SIZE+" have medians within "+Math.round(tolerance*100)+"% of each other, at most "+
+                TimeUnit.NANOSECONDS.toSeconds(maxNanos)+" seconds per query)");
+        List<Result> results = new ArrayList<>();
+        for(ZewQueries.NamedQuery q:queries){
+            Result result = new Result(q.name);
+            result.coldNanos = time(q,result);
+            results.add(result);
+        }
+        if(connections>0){
+            connectionHelper.warmUp(connections);
+        }
+        for(int i=0;i<queries.size();i++){
+            warmUp(queries.get(i),results.get(i));
+        }
+        for(int i=0;i<queries.size();i++){
+            Result result = results.get(i);
+            for(int n=0;n<steadyIterations;n++){
+                long nanos = time(queries.get(i),result);
+                if(nanos>=0){
+                    result.steady.recordValue(nanos);
+                }
+            }
+        }
+        System.out.println("\n\tCold start vs steady state (latencies in microseconds, steady state over "+steadyIterations+" calls per query):\n");
+        System.out.println(TABLE_HEADER);
+        for(Result result:results){
+            System.out.println(result);
+        }
+        for(Result result:results){
+            if(result.errors>0){
+                System.out.println(result.name+" failed "+result.errors+" times - last error: "+result.lastError);
+            }
+        }
+    }
+
+    private void warmUp(ZewQueries.NamedQuery q,Result result){
+        long deadline = System.nanoTime()+maxNanos;
+        ArrayDeque<Long> medians = new ArrayDeque<>(STABLE_ROUNDS);
+        while(System.nanoTime()<deadline){
+            Histogram round = LatencyStats.newHistogram();
+            long errorsBefore = result.errors;
+            for(int i=0;i<ROUND_SIZE;i++){
+                long nanos = time(q,result);
+                if(nanos>=0){
+                    round.recordValue(nanos);
+                }
+            }
+            result.warmUpCalls+=ROUND_SIZE;
+            if(result.errors-errorsBefore==ROUND_SIZE){
+                return; // it fails every time - waiting for it to settle is pointless
+            }
+            if(result.errors>errorsBefore){
+                medians.clear(); // a round with failures says nothing about stability
+                continue;
+            }
+            if(medians.size()==STABLE_ROUNDS){
+                medians.removeFirst();
+            }
+            medians.addLast(round.getValueAtPercentile(50.0));
+            long lowest = Collections.min(medians);
+            if(medians.size()==STABLE_ROUNDS&&Collections.max(medians)-lowest<=tolerance*lowest
+                    &&result.warmUpCalls>=minIterations){
+                result.stable = result.errors==0;
+                return;
+            }
+        }
+    }
+
+    // -1 if the call failed (it is counted as an error of the result)
+    private long time(ZewQueries.NamedQuery q,Result result){
+        long start = System.nanoTime();
+        try {
+            executor.execute(q,indexName);
+        }catch(RuntimeException re){
+            result.errors++;
+            result.lastError = re.getMessage();
+            return -1;
+        }
+        return System.nanoTime()-start;
+    }
+
+    private static class Result{
+        final String name;
+        final Histogram steady = LatencyStats.newHistogram();
+        long coldNanos;
+        int warmUpCalls = 0;
+        boolean stable = false;
+        long errors = 0;
+        String lastError = null;
+
+        Result(String name){
+            this.name = name;
+        }
+
+        @Override
+        public String toString(){
+            long p50 = steady.getValueAtPercentile(50.0);
+            return String.format("%-28s %10s %10d %8s %8d %10.1f %10.1f %10.1f %10.1f",
+                    name,coldNanos<0?"failed":String.format("%.1f",LatencyStats.micros(coldNanos)),warmUpCalls,
+                    stable&&errors==0?"yes":"no",errors,LatencyStats.micros(p50),
+                    LatencyStats.micros(steady.getValueAtPercentile(90.0)),LatencyStats.micros(steady.getValueAtPercentile(99.0)),
+                    p50>0&&coldNanos>0?coldNanos/(double)p50:0.0);
+        }
+    }
+}
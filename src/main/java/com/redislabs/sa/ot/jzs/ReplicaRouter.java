@@ -0,0 +1,292 @@
+package com.redislabs.sa.ot.jzs;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.UnifiedJedis;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisDataException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Sends the read-only search commands (FT.SEARCH, FT.AGGREGATE, FT.SUGGET) to replicas and leaves everything else on the primary.
+ *  - roundrobin spreads the reads evenly, leastlatency picks the replica with the lowest moving average latency
+ *    (every EXPLORE_EVERY-th read still goes round-robin so the averages of the other replicas stay current)
+ *  - staleness: a health check writes the time to HEARTBEAT_KEY on the primary every healthCheckMillis and reads it back from
+ *    each replica - a replica whose copy is more than maxLagMillis old is skipped until it catches up (-1 never skips)
+ *    The lag is only known to within healthCheckMillis: a replica that has the previous heartbeat counts as 0 behind.
+ *  - a replica that cannot be reached (or is still LOADING / has lost its primary) is marked down and the read is retried
+ *    on the primary - the health check brings it back once it answers again
+ *  - with no eligible replica every read goes to the primary
+ * Reads that need to see a write the caller just made (read-your-writes) should not go through this class.
+ * Not for cluster mode - there every shard has its own replicas.
+ */
+class ReplicaRouter implements QueryExecutor, AutoCloseable {
+
+    static final String HEARTBEAT_KEY = "zew:replica:heartbeat";
+    static final String ROUND_ROBIN = "roundrobin";
+    static final String LEAST_LATENCY = "leastlatency";
+    static final String TABLE_HEADER = String.format("%-28s %8s %10s %8s %9s %9s %10s %10s %10s %10s",
+            "endpoint","state","requests","share","errors","lag(ms)","ewma(us)","p50(us)","p99(us)","max(us)");
+    private static final int EXPLORE_EVERY = 16;
+    private static final double EWMA_WEIGHT = 0.2;
+
+    private final Endpoint primary;
+    private final List<Endpoint> replicas = new ArrayList<>();
+    private final boolean leastLatency;
+    private final long maxLagMillis;
+    private final long healthCheckMillis;
+    private final AtomicInteger nextReplica = new AtomicInteger();
+    private final AtomicLong reads = new AtomicLong();
+    private final AtomicLong fallbacks = new AtomicLong();
+    private final long startTime = System.nanoTime();
+    private volatile long lastHeartbeat = 0;
+    private ScheduledExecutorService healthChecker = null;
+
+    /**
+     * @param connectionHelper its pool is the primary - each replica gets a pool with the same credentials and settings
+     * @param replicaAddresses
+     * @param policy roundrobin or leastlatency
+     * @param maxLagMillis how far behind the primary a replica may be and still serve reads (-1 means any lag is fine)
+     * @param healthCheckMillis how often the heartbeat is written and every replica is checked
+     */
+    ReplicaRouter(ConnectionHelper connectionHelper,List<HostAndPort> replicaAddresses,String policy,long maxLagMillis,long healthCheckMillis){
+        if(connectionHelper.isCluster()){
+            throw new IllegalArgumentException("Replica routing is not supported in cluster mode");
+        }
+        String p = policy.trim().toLowerCase(Locale.ROOT);
+        if(!ROUND_ROBIN.equals(p)&&!LEAST_LATENCY.equals(p)){
+            throw new IllegalArgumentException("Unknown replica routing policy "+policy+" - use "+ROUND_ROBIN+" or "+LEAST_LATENCY);
+        }
+        this.leastLatency = LEAST_LATENCY.equals(p);
+        this.maxLagMillis = maxLagMillis;
+        this.healthCheckMillis = Math.max(10,healthCheckMillis);
+        this.primary = new Endpoint("primary",connectionHelper.jedisPooled,false);
+        for(HostAndPort address:replicaAddresses){
+            replicas.add(new Endpoint("replica "+address,connectionHelper.pooledFor(address),true));
+        }
+    }
+
+    /**
+     * @param addresses host:port,host:port...
+     * @return the parsed addresses
+     */
+    static List<HostAndPort> parseAddresses(String addresses){
+        List<HostAndPort> parsed = new ArrayList<>();
+        for(String address:addresses.split(",")){
+            if(!address.trim().isEmpty()){
+                parsed.add(HostAndPort.from(address.trim()));
+            }
+        }
+        return parsed;
+    }
+
+    /**
+     * Checks every replica once (a replica only serves reads once it is known to be up and current) and then schedules the health check
+     * @return this
+     */
+    ReplicaRouter start(){
+        checkHealth();
+        try {
+            Thread.sleep(Math.min(healthCheckMillis,1000)); // give the replicas time to receive the first heartbeat
+        }catch(InterruptedException ie){
+            Thread.currentThread().interrupt();
+        }
+        checkHealth();
+        healthChecker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r,"replica-health");
+            t.setDaemon(true);
+            return t;
+        });
+        healthChecker.scheduleWithFixedDelay(() -> {
+            try {
+                checkHealth();
+            }catch(Throwable t){
+                System.out.println("Replica health check failed: "+t.getMessage());
+            }
+        },healthCheckMillis,healthCheckMillis,TimeUnit.MILLISECONDS);
+        for(Endpoint replica:replicas){
+            System.out.println("Routing reads to "+replica.name+": "+replica.state());
+        }
+        return this;
+    }
+
+    @Override
+    public Object execute(ZewQueries.NamedQuery query,String indexName){
+        return route(jedis -> query.execute(jedis,indexName));
+    }
+
+    /**
+     * @param suggestionKey
+     * @param prefix
+     * @return FT.SUGGET from a replica (or the primary)
+     */
+    List<String> ftSugGet(String suggestionKey,String prefix){
+        return route(jedis -> jedis.ftSugGet(suggestionKey,prefix));
+    }
+
+    private <T> T route(Function<UnifiedJedis,T> read){
+        reads.incrementAndGet();
+        Endpoint replica = choose();
+        if(replica!=null){
+            try {
+                return replica.time(read);
+            }catch(JedisConnectionException jce){
+                replica.markDown(jce);
+            }catch(JedisDataException jde){
+                if(!isUnavailable(jde)){
+                    throw jde; // a bad query fails on the primary just the same
+                }
+                replica.markDown(jde);
+            }
+            fallbacks.incrementAndGet();
+        }
+        return primary.time(read);
+    }
+
+    // e.g. "LOADING Redis is loading the dataset in memory" or "MASTERDOWN Link with MASTER is down and replica-serve-stale-data is set to 'no'"
+    private static boolean isUnavailable(JedisDataException jde){
+        String message = jde.getMessage();
+        return message!=null&&(message.startsWith("LOADING")||message.startsWith("MASTERDOWN"));
+    }
+
+    // null means the primary
+    private Endpoint choose(){
+        List<Endpoint> eligible = new ArrayList<>(replicas.size());
+        for(Endpoint replica:replicas){
+            if(replica.isEligible(maxLagMillis)){
+                eligible.add(replica);
+            }
+        }
+        if(eligible.isEmpty()){
+            return null;
+        }
+        int turn = nextReplica.getAndIncrement();
+        if(!leastLatency||turn%EXPLORE_EVERY==0){
+            return eligible.get(Math.floorMod(turn,eligible.size()));
+        }
+        Endpoint fastest = eligible.get(0);
+        for(Endpoint replica:eligible){
+            if(replica.ewmaNanos<fastest.ewmaNanos){
+                fastest = replica;
+            }
+        }
+        return fastest;
+    }
+
+    // checks the replicas against the previous heartbeat before the next one is written - so each had a full interval to receive it
+    private void checkHealth(){
+        long previous = lastHeartbeat;
+        for(Endpoint replica:replicas){
+            try {
+                String value = replica.jedis.get(HEARTBEAT_KEY);
+                long written = value==null?0:Long.parseLong(value);
+                replica.lagMillis = written==0||previous==0?Long.MAX_VALUE:(written>=previous?0:System.currentTimeMillis()-written);
+                if(!replica.up){
+                    System.out.println(replica.name+" is back up");
+                }
+                replica.up = true;
+            }catch(RuntimeException re){
+                replica.markDown(re);
+            }
+        }
+        long now = System.currentTimeMillis();
+        primary.jedis.set(HEARTBEAT_KEY,Long.toString(now));
+        lastHeartbeat = now;
+    }
+
+    void printStats(){
+        double seconds = (System.nanoTime()-startTime)/1_000_000_000.0;
+        long total = reads.get();
+        System.out.println(String.format("\n\tRead routing (%s, max lag %s, %.1f seconds): %d reads | %d fell back to the primary after a replica failed\n",
+                leastLatency?LEAST_LATENCY:ROUND_ROBIN,maxLagMillis<0?"unlimited":maxLagMillis+" ms",seconds,total,fallbacks.get()));
+        System.out.println(TABLE_HEADER);
+        System.out.println(primary.row(total));
+        for(Endpoint replica:replicas){
+            System.out.println(replica.row(total));
+        }
+    }
+
+    @Override
+    public void close(){
+        if(healthChecker!=null){
+            healthChecker.shutdownNow();
+        }
+        for(Endpoint replica:replicas){
+            replica.jedis.close();
+        }
+    }
+
+    private static class Endpoint{
+        final String name;
+        final UnifiedJedis jedis;
+        final boolean replica;
+        final Recorder latencies = new Recorder(3);
+        final Histogram allLatencies = LatencyStats.newHistogram();
+        final AtomicLong errors = new AtomicLong();
+        volatile boolean up;
+        volatile long lagMillis = Long.MAX_VALUE;
+        volatile double ewmaNanos = 0; // updated without a lock - a lost update only nudges the average
+
+        Endpoint(String name,UnifiedJedis jedis,boolean replica){
+            this.name = name;
+            this.jedis = jedis;
+            this.replica = replica;
+            this.up = !replica; // replicas wait for their first health check
+        }
+
+        boolean isEligible(long maxLagMillis){
+            return up&&(maxLagMillis<0||lagMillis<=maxLagMillis);
+        }
+
+        <T> T time(Function<UnifiedJedis,T> read){
+            long start = System.nanoTime();
+            try {
+                return read.apply(jedis);
+            }catch(RuntimeException re){
+                errors.incrementAndGet();
+                throw re;
+            }finally {
+                long nanos = System.nanoTime()-start;
+                latencies.recordValue(nanos);
+                ewmaNanos = ewmaNanos==0?nanos:ewmaNanos+EWMA_WEIGHT*(nanos-ewmaNanos);
+            }
+        }
+
+        void markDown(RuntimeException cause){
+            if(!up){
+                return; // another reader got there first
+            }
+            up = false;
+            System.out.println(name+" is down - reading from the primary until it answers again: "+cause.getMessage());
+        }
+
+        String state(){
+            if(!up){
+                return "down";
+            }
+            return lagMillis==Long.MAX_VALUE?"no heartbeat yet":"up, "+lagMillis+" ms behind";
+        }
+
+        synchronized String row(long totalReads){
+            allLatencies.add(latencies.getIntervalHistogram());
+            long count = allLatencies.getTotalCount();
+            return String.format("%-28s %8s %10d %7.1f%% %9d %9s %10.1f %10.1f %10.1f %10.1f",
+                    name,!replica?"writes":up?"up":"down",count,totalReads>0?count*100.0/totalReads:0.0,errors.get(),
+                    !replica?"-":lagMillis==Long.MAX_VALUE?"?":Long.toString(lagMillis),
+                    LatencyStats.micros((long)ewmaNanos),
+                    LatencyStats.micros(allLatencies.getValueAtPercentile(50.0)),
+                    LatencyStats.micros(allLatencies.getValueAtPercentile(99.0)),
+                    LatencyStats.micros(allLatencies.getMaxValue()));
+        }
+    }
+}
@@ -0,0 +1,297 @@
+package com.redislabs.sa.ot.jzs;
+
+import org.HdrHistogram.Histogram;
+import redis.clients.jedis.UnifiedJedis;
+import redis.clients.jedis.search.FTCreateParams;
+import redis.clients.jedis.search.IndexDataType;
+import redis.clients.jedis.search.schemafields.NumericField;
+import redis.clients.jedis.search.schemafields.SchemaField;
+import redis.clients.jedis.search.schemafields.TagField;
+import redis.clients.jedis.search.schemafields.TextField;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds several variants of the idx_zew_events schema - one at a time - over the documents already loaded under the prefix
+ * and for each of them records:
+ *  - index memory as reported by FT.INFO (inverted index, offset vectors, sortable values, doc table ...)
+ *  - indexing throughput (documents indexed per second from FT.CREATE until FT.INFO reports indexing has finished)
+ *  - latency and throughput of the ZewQueries when fired against that variant
+ * Each variant index is dropped (keeping the documents) before the next one is built so they do not compete for the server.
+ * A variant can replace queries its schema cannot answer - location_tag runs Query1 and the aggregation in TAG syntax on @location.
+ * Queries that still fail are counted as errors (also during the warm-up).
+ * Example: --schemavariants baseline,nooffsets,location_tag --variantqueryiterations 500  (or --schemavariants all)
+ */
+class SchemaVariantHarness {
+
+    static final String VARIANT_INDEX_PREFIX = "idx_zew_variant_";
+    static final String TABLE_HEADER = String.format("%-26s %10s %10s %10s %10s %10s %10s %10s %10s %10s %8s",
+            "variant","index(MB)","inverted","offsets","sortable","doctable","docs/sec","queries/s","p50(us)","p99(us)","errors");
+
+    private final UnifiedJedis jedis;
+    private final List<SchemaVariant> variants;
+    private final List<ZewQueries.NamedQuery> queries;
+    private final int queryIterations;
+    private final long pollIntervalMillis;
+    private final long timeoutMillis;
+
+    SchemaVariantHarness(UnifiedJedis jedis,List<SchemaVariant> variants,List<ZewQueries.NamedQuery> queries,
+                         int queryIterations,long pollIntervalMillis,long timeoutMillis){
+        this.jedis = jedis;
+        this.variants = variants;
+        this.queries = queries;
+        this.queryIterations = Math.max(1,queryIterations);
+        this.pollIntervalMillis = pollIntervalMillis;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * The variants compared by default - each differs from the baseline (the schema Main.createIndex() uses) in one way
+     * @param prefix the key prefix every variant indexes
+     * @param limit the LIMIT of the queries a variant replaces
+     * @param dialect the dialect of the queries a variant replaces
+     * @return name -> variant
+     */
+    static Map<String,SchemaVariant> defaultVariants(String prefix,int limit,int dialect){
+        Map<String,SchemaVariant> variants = new LinkedHashMap<>();
+        variants.put("baseline",new SchemaVariant("baseline","the schema idx_zew_events uses",
+                FTCreateParams.createParams().on(IndexDataType.JSON).prefix(prefix),baselineFields()));
+        variants.put("nooffsets",new SchemaVariant("nooffsets","NOOFFSETS (no exact phrase, slop or highlighting)",
+                FTCreateParams.createParams().on(IndexDataType.JSON).prefix(prefix).noOffsets(),baselineFields()));
+        variants.put("nooffsets_nofreqs",new SchemaVariant("nooffsets_nofreqs","NOOFFSETS NOFREQS (no term frequency scoring)",
+                FTCreateParams.createParams().on(IndexDataType.JSON).prefix(prefix).noOffsets().noFreqs(),baselineFields()));
+        variants.put("nohl",new SchemaVariant("nohl","NOHL (no highlighting data)",
+                FTCreateParams.createParams().on(IndexDataType.JSON).prefix(prefix).noHL(),baselineFields()));
+        variants.put("location_tag",new SchemaVariant("location_tag","location as TAG instead of TEXT",
+                FTCreateParams.createParams().on(IndexDataType.JSON).prefix(prefix),
+                Arrays.asList(eventName(),cost(),seq(),days(),times(),TagField.of("$.location").as("location"),contactName()))
+                .replacing(ZewQueries.tagLocation(limit,dialect)));
+        variants.put("event_name_sortable_unf",new SchemaVariant("event_name_sortable_unf","event_name TEXT SORTABLE UNF",
+                FTCreateParams.createParams().on(IndexDataType.JSON).prefix(prefix),
+                Arrays.asList(eventName().sortableUNF(),cost(),seq(),days(),times(),location(),contactName())));
+        variants.put("phonetic",new SchemaVariant("phonetic","PHONETIC dm:en on event_name, location and contact_name",
+                FTCreateParams.createParams().on(IndexDataType.JSON).prefix(prefix),
+                Arrays.asList(eventName().phonetic("dm:en"),cost(),seq(),days(),times(),location().phonetic("dm:en"),contactName().phonetic("dm:en"))));
+        return variants;
+    }
+
+    /**
+     * @param names a comma separated list of variant names or "all"
+     * @param prefix
+     * @param limit
+     * @param dialect
+     * @return the matching default variants in the order they were named
+     */
+    static List<SchemaVariant> select(String names,String prefix,int limit,int dialect){
+        Map<String,SchemaVariant> available = defaultVariants(prefix,limit,dialect);
+        if(names==null||names.trim().isEmpty()||"all".equalsIgnoreCase(names.trim())){
+            return new ArrayList<>(available.values());
+        }
+        List<SchemaVariant> selected = new ArrayList<>();
+        for(String name:names.split(",")){
+            SchemaVariant variant = available.get(name.trim());
+            if(variant==null){
+                throw new IllegalArgumentException("Unknown schema variant "+name.trim()+" - choose from "+available.keySet());
+            }
+            selected.add(variant);
+        }
+        return selected;
+    }
+
+    void run() throws InterruptedException{
+        System.out.println("\nComparing "+variants.size()+" schema variants ("+queryIterations+" runs of each query per variant):");
+        List<String> rows = new ArrayList<>();
+        for(SchemaVariant variant:variants){
+            String row = measure(variant);
+            if(row!=null){
+                rows.add(row);
+            }
+        }
+        System.out.println("\n\tSchema variant comparison (memory in MB from FT.INFO, latencies over all queries):\n");
+        System.out.println(TABLE_HEADER);
+        for(String row:rows){
+            System.out.println(row);
+        }
+    }
+
+    private String measure(SchemaVariant variant) throws InterruptedException{
+        String indexName = VARIANT_INDEX_PREFIX+variant.name;
+        System.out.println("\n"+variant.name+": "+variant.description);
+        dropQuietly(indexName); // left over from an interrupted run
+        long start = System.currentTimeMillis();
+        jedis.ftCreate(indexName,variant.params,variant.fields);
+        if(!IndexRebuilder.waitUntilIndexed(jedis,indexName,pollIntervalMillis,timeoutMillis)){
+            System.out.println("Gave up waiting for "+indexName+" after "+timeoutMillis+" milliseconds - skipping it");
+            dropQuietly(indexName);
+            return null;
+        }
+        long indexingMillis = Math.max(1,System.currentTimeMillis()-start);
+        Map<String,Object> info = jedis.ftInfo(indexName);
+        double docsPerSecond = IndexRebuilder.number(info.get("num_docs"))*1000.0/indexingMillis;
+
+        QueryTimings timings = timeQueries(jedis,indexName,variant.queries(queries),queryIterations);
+        dropQuietly(indexName);
+        return String.format("%-26s %10.2f %10.2f %10.2f %10.2f %10.2f %10.0f %10.1f %10.1f %10.1f %8d",
+                variant.name,indexMemoryMegabytes(info),
+                IndexRebuilder.number(info.get("inverted_sz_mb")),
+                IndexRebuilder.number(info.get("offset_vectors_sz_mb")),
+                IndexRebuilder.number(info.get("sortable_values_size_mb")),
+                IndexRebuilder.number(info.get("doc_table_size_mb")),
+                docsPerSecond,
+                timings.queriesPerSecond(),
+                LatencyStats.micros(timings.all.getValueAtPercentile(50.0)),
+                LatencyStats.micros(timings.all.getValueAtPercentile(99.0)),
+                timings.errors);
+    }
+
+    /**
+     * Fires each query queryIterations times (after an unrecorded warm-up) and prints a latency row per query
+     * Failed calls are counted as errors - warm-up failures too, so a query that cannot run still shows up
+     * @param jedis
+     * @param indexName
+     * @param queries
+     * @param queryIterations
+     * @return the latencies over all queries
+     */
+    static QueryTimings timeQueries(UnifiedJedis jedis,String indexName,List<ZewQueries.NamedQuery> queries,int queryIterations){
+        System.out.println(LatencyStats.HEADER);
+        QueryTimings timings = new QueryTimings();
+        for(ZewQueries.NamedQuery q:queries){
+            Histogram latencies = LatencyStats.newHistogram();
+            for(int i=0;i<Math.max(1,queryIterations/10);i++){ // warm-up - not recorded
+                try {
+                    q.execute(jedis,indexName);
+                }catch(RuntimeException re){
+                    timings.errors++;
+                }
+            }
+            long queryStart = System.nanoTime();
+            for(int i=0;i<queryIterations;i++){
+                long sendTime = System.nanoTime();
+                try {
+                    q.execute(jedis,indexName);
+                    latencies.recordValue(System.nanoTime()-sendTime);
+                }catch(RuntimeException re){
+                    timings.errors++;
+                }
+            }
+            long elapsed = System.nanoTime()-queryStart;
+            timings.queryNanos+=elapsed;
+            timings.all.add(latencies);
+            System.out.println(LatencyStats.row(q.name,latencies,elapsed/1_000_000_000.0));
+        }
+        return timings;
+    }
+
+    // newer servers report the total directly - older ones only report its parts
+    static double indexMemoryMegabytes(Map<String,Object> info){
+        if(info.containsKey("total_index_memory_sz_mb")){
+            return IndexRebuilder.number(info.get("total_index_memory_sz_mb"));
+        }
+        double total = 0;
+        for(String part:new String[]{"inverted_sz_mb","offset_vectors_sz_mb","doc_table_size_mb","sortable_values_size_mb",
+                "key_table_size_mb","text_overhead_sz_mb","tag_overhead_sz_mb","vector_index_sz_mb"}){
+            total+=IndexRebuilder.number(info.get(part));
+        }
+        return total;
+    }
+
+    private void dropQuietly(String indexName){
+        try {
+            jedis.ftDropIndex(indexName); // keeps the documents
+        }catch(RuntimeException re){
+            // the index did not exist
+        }
+    }
+
+    /**
+     * @return the fields of the schema Main.createIndex() uses
+     */
+    static List<SchemaField> baselineFields(){
+        return Arrays.asList(eventName(),cost(),seq(),days(),times(),location(),contactName());
+    }
+
+    private static TextField eventName(){
+        return TextField.of("$.name").as("event_name");
+    }
+
+    private static SchemaField cost(){
+        return NumericField.of("$.cost").as("cost").sortable();
+    }
+
+    // the keyset paging tie-breaker
+    private static SchemaField seq(){
+        return NumericField.of("$."+JsonZewActivityBuilder.SEQ_FIELD).as(JsonZewActivityBuilder.SEQ_FIELD).sortable();
+    }
+
+    private static SchemaField days(){
+        return TagField.of("$.days.*").as("days");
+    }
+
+    private static SchemaField times(){
+        return TagField.of("$.times[*].military").as("times");
+    }
+
+    private static TextField location(){
+        return TextField.of("$.location").as("location");
+    }
+
+    private static TextField contactName(){
+        return TextField.of("$.responsible_parties.hosts[*].name").as("contact_name").weight(.75);
+    }
+
+    static class QueryTimings{
+        final Histogram all = LatencyStats.newHistogram();
+        long errors = 0;
+        long queryNanos = 0;
+
+        double queriesPerSecond(){
+            return queryNanos>0?all.getTotalCount()*1_000_000_000.0/queryNanos:0.0;
+        }
+    }
+
+    /**
+     * A named set of FT.CREATE options and fields
+     */
+    static class SchemaVariant{
+        final String name;
+        final String description;
+        final FTCreateParams params;
+        final List<SchemaField> fields;
+        final Map<String,ZewQueries.NamedQuery> replacements = new LinkedHashMap<>();
+
+        SchemaVariant(String name,String description,FTCreateParams params,List<SchemaField> fields){
+            this.name = name;
+            this.description = description;
+            this.params = params;
+            this.fields = fields;
+        }
+
+        /**
+         * @param queries run instead of the queries with the same names
+         * @return this
+         */
+        SchemaVariant replacing(List<ZewQueries.NamedQuery> queries){
+            for(ZewQueries.NamedQuery q:queries){
+                replacements.put(q.name,q);
+            }
+            return this;
+        }
+
+        /**
+         * @param queries
+         * @return the queries with this variant's replacements swapped in
+         */
+        List<ZewQueries.NamedQuery> queries(List<ZewQueries.NamedQuery> queries){
+            List<ZewQueries.NamedQuery> variantQueries = new ArrayList<>(queries.size());
+            for(ZewQueries.NamedQuery q:queries){
+                variantQueries.add(replacements.getOrDefault(q.name,q));
+            }
+            return variantQueries;
+        }
+    }
+}
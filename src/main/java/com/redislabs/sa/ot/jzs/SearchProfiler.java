@@ -0,0 +1,209 @@
+package com.redislabs.sa.ot.jzs;
+
+import redis.clients.jedis.BuilderFactory;
+import redis.clients.jedis.CommandArguments;
+import redis.clients.jedis.CommandObject;
+import redis.clients.jedis.UnifiedJedis;
+import redis.clients.jedis.args.Rawable;
+import redis.clients.jedis.commands.ProtocolCommand;
+import redis.clients.jedis.util.SafeEncoder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shows where the time goes for each of the ZewQueries:
+ *  - server side: FT.PROFILE breaks the work down into parsing, pipeline creation, the iterator tree and the result processors
+ *  - client side: the round trip of the plain FT.SEARCH / FT.AGGREGATE command (server + network + reading the RESP reply)
+ *    and, separately, the time spent decoding that reply into SearchResult / AggregationResult objects
+ * Everything is reported in nanoseconds (FT.PROFILE reports milliseconds with a fractional part - they are converted).
+ * The iterator tree names each iterator type and term so the expensive parts of a query
+ * (TEXT on contact_name, TAG on times and days, TEXT on location, NUMERIC on cost) can be spotted.
+ * Jedis 4.3.1 has no FT.PROFILE support so the command is built here from the arguments of the query's own FT.SEARCH / FT.AGGREGATE.
+ */
+class SearchProfiler {
+
+    static final ProtocolCommand PROFILE = () -> SafeEncoder.encode("FT.PROFILE");
+
+    private final UnifiedJedis jedis;
+    private final String indexName;
+    private final int iterations;
+
+    SearchProfiler(UnifiedJedis jedis,String indexName,int iterations){
+        this.jedis = jedis;
+        this.indexName = indexName;
+        this.iterations = Math.max(1,iterations);
+    }
+
+    void profile(List<ZewQueries.NamedQuery> queries){
+        System.out.println("\n\tProfiling each query (median of "+iterations+" runs - the server breakdown and trees are those of the median run, all times in nanoseconds):\n");
+        for(ZewQueries.NamedQuery q:queries){
+            profile(q);
+        }
+    }
+
+    void profile(ZewQueries.NamedQuery namedQuery){
+        long[] roundTrips = new long[iterations];
+        long[] decodes = new long[iterations];
+        ProfileSummary[] summaries = new ProfileSummary[iterations];
+        for(int i=0;i<iterations;i++){
+            long start = System.nanoTime();
+            Object rawReply = jedis.executeCommand(new CommandObject<>(namedQuery.command(indexName),BuilderFactory.RAW_OBJECT));
+            roundTrips[i] = System.nanoTime()-start;
+            start = System.nanoTime();
+            namedQuery.decode(rawReply);
+            decodes[i] = System.nanoTime()-start;
+
+            List<?> profileReply = (List<?>) jedis.executeCommand(new CommandObject<>(profileCommand(namedQuery),BuilderFactory.RAW_OBJECT));
+            summaries[i] = ProfileSummary.parse(profileReply.get(1));
+        }
+        long roundTrip = median(roundTrips);
+        // the run with the median server total - its parts add up to the total printed next to them
+        ProfileSummary[] byTotal = summaries.clone();
+        Arrays.sort(byTotal,(a,b) -> Long.compare(a.totalNanos,b.totalNanos));
+        ProfileSummary summary = byTotal[byTotal.length/2];
+        long serverTotal = summary.totalNanos;
+        System.out.println(namedQuery);
+        System.out.println(String.format("\tserver: total %,d | parsing %,d | pipeline creation %,d | iterators %,d | result processors %,d",
+                serverTotal,summary.parsingNanos,summary.pipelineCreationNanos,summary.iteratorsNanos,summary.resultProcessorsNanos));
+        System.out.println(String.format("\tclient: round trip %,d | decode %,d | network and reply parsing (round trip - server total) %,d",
+                roundTrip,median(decodes),Math.max(0,roundTrip-serverTotal)));
+        System.out.println("\titerator tree (time / counter):");
+        for(String line:summary.iteratorLines){
+            System.out.println("\t\t"+line);
+        }
+        System.out.println("\tresult processors (time / counter):");
+        for(String line:summary.resultProcessorLines){
+            System.out.println("\t\t"+line);
+        }
+        System.out.println();
+    }
+
+    // FT.PROFILE <index> SEARCH|AGGREGATE QUERY <the arguments that follow the index name in the query's own command>
+    // built from NamedQuery.command() so a QueryTemplate brings its PARAMS and DIALECT along
+    private CommandArguments profileCommand(ZewQueries.NamedQuery q){
+        CommandArguments args = new CommandArguments(PROFILE).add(indexName).add(q.isAggregation()?"AGGREGATE":"SEARCH").add("QUERY");
+        Iterator<Rawable> queryArgs = q.command(indexName).iterator();
+        queryArgs.next(); // FT.SEARCH / FT.AGGREGATE
+        queryArgs.next(); // the index name
+        while(queryArgs.hasNext()){
+            args.add(queryArgs.next());
+        }
+        return args;
+    }
+
+    static long median(long[] values){
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length/2];
+    }
+
+    /**
+     * The interesting parts of the second element of an FT.PROFILE reply
+     */
+    static class ProfileSummary{
+        long totalNanos;
+        long parsingNanos;
+        long pipelineCreationNanos;
+        long iteratorsNanos;
+        long resultProcessorsNanos;
+        final List<String> iteratorLines = new ArrayList<>();
+        final List<String> resultProcessorLines = new ArrayList<>();
+
+        static ProfileSummary parse(Object profile){
+            ProfileSummary summary = new ProfileSummary();
+            for(Object section:(List<?>)profile){
+                if(!(section instanceof List)||((List<?>)section).isEmpty()){
+                    continue;
+                }
+                List<?> entry = (List<?>)section;
+                String label = asString(entry.get(0));
+                if("Total profile time".equals(label)){
+                    summary.totalNanos = millisToNanos(entry.get(1));
+                }else if("Parsing time".equals(label)){
+                    summary.parsingNanos = millisToNanos(entry.get(1));
+                }else if("Pipeline creation time".equals(label)){
+                    summary.pipelineCreationNanos = millisToNanos(entry.get(1));
+                }else if("Iterators profile".equals(label)){
+                    for(Object iterator:entry.subList(1,entry.size())){
+                        if(iterator instanceof List) {
+                            summary.iteratorsNanos += summary.addIterator((List<?>) iterator, 0);
+                        }
+                    }
+                }else if("Result processors profile".equals(label)){
+                    for(Object processor:entry.subList(1,entry.size())){
+                        if(processor instanceof List) {
+                            Map<String, Object> fields = keyValues((List<?>) processor);
+                            long nanos = millisToNanos(fields.get("Time"));
+                            summary.resultProcessorsNanos += nanos;
+                            summary.resultProcessorLines.add(String.format("%-20s %,12d ns  %s", asString(fields.get("Type")), nanos, asString(fields.get("Counter"))));
+                        }
+                    }
+                }
+            }
+            return summary;
+        }
+
+        // adds one line per iterator (children indented below their parent) and returns the iterator's own time
+        private long addIterator(List<?> iterator,int depth){
+            Map<String,Object> fields = keyValues(iterator);
+            long nanos = millisToNanos(fields.get("Time"));
+            StringBuilder line = new StringBuilder();
+            for(int i=0;i<depth;i++){
+                line.append("  ");
+            }
+            line.append(asString(fields.get("Type")));
+            Object term = fields.containsKey("Term")?fields.get("Term"):fields.get("Query Type");
+            if(term!=null){
+                line.append(" ").append(asString(term));
+            }
+            iteratorLines.add(String.format("%-48s %,12d ns  %s",line,nanos,asString(fields.get("Counter"))));
+            for(Object value:iterator){
+                // child iterators either follow "Child iterators" directly or are wrapped in one more list
+                if(value instanceof List&&!((List<?>)value).isEmpty()){
+                    List<?> child = (List<?>)value;
+                    if(child.get(0) instanceof List){
+                        for(Object grandChild:child){
+                            addIterator((List<?>)grandChild,depth+1);
+                        }
+                    }else{
+                        addIterator(child,depth+1);
+                    }
+                }
+            }
+            return nanos;
+        }
+
+        private static Map<String,Object> keyValues(List<?> list){
+            Map<String,Object> fields = new LinkedHashMap<>();
+            for(int i=0;i+1<list.size();i+=2){
+                if(!(list.get(i) instanceof List)){
+                    fields.put(asString(list.get(i)),list.get(i+1));
+                }
+            }
+            return fields;
+        }
+
+        static long millisToNanos(Object millis){
+            if(millis==null){
+                return 0;
+            }
+            try {
+                return (long) (Double.parseDouble(asString(millis)) * 1_000_000);
+            }catch(NumberFormatException nfe){
+                return 0;
+            }
+        }
+
+        static String asString(Object o){
+            if(o==null){
+                return "";
+            }
+            return o instanceof byte[] ? SafeEncoder.encode((byte[])o) : String.valueOf(o);
+        }
+    }
+}
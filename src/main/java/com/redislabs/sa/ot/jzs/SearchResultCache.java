@@ -0,0 +1,302 @@
+package com.redislabs.sa.ot.jzs;
+
+import redis.clients.jedis.BuilderFactory;
+import redis.clients.jedis.CommandArguments;
+import redis.clients.jedis.CommandObject;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPooled;
+import redis.clients.jedis.JedisPubSub;
+import redis.clients.jedis.args.Rawable;
+import redis.clients.jedis.search.Query;
+import redis.clients.jedis.search.SearchProtocol;
+import redis.clients.jedis.search.SearchResult;
+import redis.clients.jedis.search.aggr.AggregationBuilder;
+import redis.clients.jedis.search.aggr.AggregationResult;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Client-side cache of FT.SEARCH and FT.AGGREGATE results
+ *  - the cache key is the complete encoded command (index, query string, return fields, limit, dialect and any other option)
+ *  - memory is bounded by a maximum number of entries and by a maximum number of reply bytes - least recently used entries are evicted first
+ *  - every entry expires maxStalenessMillis after it was fetched, which bounds staleness even if an invalidation is missed
+ *  - the whole cache is invalidated when any key under the watched prefix changes (keyspace notifications on a dedicated connection)
+ *  - while the notification subscriber is not connected the cache is bypassed so nothing stale can be served
+ * A write to any zew:activities: key may change the result of any query - so invalidation is all-or-nothing.
+ * A result fetched while an invalidation arrives is not cached (a generation counter detects this).
+ * Keyspace notifications must be enabled - the cache tries to enable the K (keyspace), d (module/JSON), g (del/unlink), x (expired) and e (evicted) classes itself.
+ */
+class SearchResultCache implements QueryExecutor{
+
+    private final JedisPooled jedis;
+    private final String watchedPrefix;
+    private final int maxEntries;
+    private final long maxBytes;
+    private final long maxStalenessMillis;
+    private final LinkedHashMap<String,Entry> entries = new LinkedHashMap<>(16,0.75f,true);
+    private long currentBytes = 0;
+    private long generation = 0;
+    private volatile boolean subscribed = false;
+    private volatile boolean closed = false;
+    private Thread subscriberThread;
+    private Jedis subscriberJedis;
+
+    final AtomicLong hits = new AtomicLong();
+    final AtomicLong misses = new AtomicLong();
+    final AtomicLong evictions = new AtomicLong();
+    final AtomicLong expirations = new AtomicLong();
+    final AtomicLong invalidations = new AtomicLong();
+    final AtomicLong bypasses = new AtomicLong();
+
+    SearchResultCache(JedisPooled jedis,String watchedPrefix,int maxEntries,long maxBytes,long maxStalenessMillis){
+        this.jedis = jedis;
+        this.watchedPrefix = watchedPrefix;
+        this.maxEntries = Math.max(1,maxEntries);
+        this.maxBytes = Math.max(1,maxBytes);
+        this.maxStalenessMillis = maxStalenessMillis;
+    }
+
+    /**
+     * Starts the thread that listens for changes to keys under the watched prefix
+     * (it reconnects if its connection is lost)
+     * @return this
+     */
+    SearchResultCache start(){
+        subscriberThread = new Thread(this::listenForChanges,"search-cache-invalidator");
+        subscriberThread.setDaemon(true);
+        subscriberThread.start();
+        return this;
+    }
+
+    SearchResult ftSearch(String indexName,Query query){
+        CommandArguments args = new CommandArguments(SearchProtocol.SearchCommand.SEARCH).add(indexName).addParams(query);
+        return (SearchResult) get(args,raw -> new SearchResult.SearchResultBuilder(!query.getNoContent(),query.getWithScores(),query.getWithPayloads(),true).build(raw));
+    }
+
+    AggregationResult ftAggregate(String indexName,AggregationBuilder aggregation){
+        CommandArguments args = new CommandArguments(SearchProtocol.SearchCommand.AGGREGATE).add(indexName).addObjects(aggregation.getArgs());
+        return (AggregationResult) get(args,AggregationResult::new);
+    }
+
+    @Override
+    public Object execute(ZewQueries.NamedQuery query,String indexName){
+        return get(query.command(indexName),query::decode); // query templates fill in new parameter values in command()
+    }
+
+    private Object get(CommandArguments args,Function<Object,Object> decoder){
+        return get(cacheKey(args),() -> {
+            Object raw = fetch(args);
+            return new Fetched(decoder.apply(raw),replySize(raw));
+        });
+    }
+
+    /**
+     * Looks up a result that is not the reply to a single command (facet counts built from several replies, for example)
+     * - it follows the same expiry, eviction and invalidation rules as the search results
+     * @param key must not collide with the encoded commands used as keys for search results
+     * @param loader fetches the result (and estimates its size) on a miss
+     * @return the cached or freshly loaded result
+     */
+    Object get(String key,Supplier<Fetched> loader){
+        if(!subscribed){
+            bypasses.incrementAndGet();
+            return loader.get().result;
+        }
+        long fetchGeneration;
+        synchronized (this){
+            Entry entry = entries.get(key);
+            if(entry!=null){
+                if(System.currentTimeMillis()<entry.expiresAt){
+                    hits.incrementAndGet();
+                    return entry.result;
+                }
+                remove(key);
+                expirations.incrementAndGet();
+            }
+            fetchGeneration = generation;
+        }
+        misses.incrementAndGet();
+        long fetchedAt = System.currentTimeMillis();
+        Fetched fetched = loader.get();
+        synchronized (this){
+            // an invalidation that arrived while we were fetching means this result may already be stale:
+            if(fetchGeneration==generation&&subscribed){
+                Entry entry = new Entry(fetched.result,fetched.bytes,fetchedAt+maxStalenessMillis);
+                Entry previous = entries.put(key,entry);
+                if(previous!=null){
+                    currentBytes-=previous.bytes;
+                }
+                currentBytes+=entry.bytes;
+                evictIfNeeded();
+            }
+        }
+        return fetched.result;
+    }
+
+    private Object fetch(CommandArguments args){
+        return jedis.executeCommand(new CommandObject<>(args,BuilderFactory.RAW_OBJECT));
+    }
+
+    synchronized void invalidateAll(){
+        generation++;
+        if(!entries.isEmpty()) {
+            invalidations.incrementAndGet();
+        }
+        entries.clear();
+        currentBytes = 0;
+    }
+
+    private void evictIfNeeded(){
+        Iterator<Map.Entry<String,Entry>> lru = entries.entrySet().iterator();
+        while((entries.size()>maxEntries||currentBytes>maxBytes)&&lru.hasNext()){
+            currentBytes-=lru.next().getValue().bytes;
+            lru.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    private void remove(String key){
+        Entry removed = entries.remove(key);
+        if(removed!=null){
+            currentBytes-=removed.bytes;
+        }
+    }
+
+    private void listenForChanges(){
+        long backoffMillis = 100;
+        while(!closed){
+            try(Jedis subscriber = new Jedis(jedis.getPool().getResource())){
+                subscriberJedis = subscriber;
+                enableKeyspaceNotifications(subscriber);
+                subscriber.psubscribe(new JedisPubSub() {
+                    @Override
+                    public void onPSubscribe(String pattern,int subscribedChannels){
+                        // anything written before we were listening may not be reflected in cached results:
+                        invalidateAll();
+                        subscribed = true;
+                        System.out.println("Search result cache is listening for changes on "+pattern);
+                    }
+
+                    @Override
+                    public void onPMessage(String pattern,String channel,String message){
+                        invalidateAll();
+                    }
+                },"__keyspace@*__:"+watchedPrefix+"*");
+            }catch(Throwable t){
+                if(!closed) {
+                    System.out.println("Search result cache lost its invalidation connection (cache bypassed until it reconnects): " + t.getMessage());
+                }
+            }finally {
+                subscribed = false;
+                invalidateAll();
+            }
+            try {
+                Thread.sleep(backoffMillis);
+            }catch(InterruptedException ie){
+                return;
+            }
+            backoffMillis = Math.min(backoffMillis*2,5000);
+        }
+    }
+
+    // adds the notification classes this cache needs to whatever is already configured
+    private void enableKeyspaceNotifications(Jedis subscriber){
+        try {
+            List<String> reply = subscriber.configGet("notify-keyspace-events"); // [name, value]
+            String current = reply.size()>1?reply.get(1):"";
+            StringBuilder wanted = new StringBuilder(current);
+            for(char c:"Kdgxe".toCharArray()){
+                if(current.indexOf(c)<0&&!(current.indexOf('A')>=0&&"dgxe".indexOf(c)>=0)){
+                    wanted.append(c);
+                }
+            }
+            if(!wanted.toString().equals(current)) {
+                subscriber.configSet("notify-keyspace-events", wanted.toString());
+            }
+        }catch(Throwable t){
+            System.out.println("Unable to enable keyspace notifications (they must be enabled on the server for the cache to be invalidated): "+t.getMessage());
+        }
+    }
+
+    void close(){
+        closed = true;
+        subscribed = false;
+        Jedis subscriber = subscriberJedis;
+        if(subscriber!=null){
+            try {
+                subscriber.getClient().disconnect();
+            }catch(Throwable t){
+                // the subscriber thread exits either way
+            }
+        }
+    }
+
+    void printStats(){
+        long lookups = hits.get()+misses.get();
+        System.out.println(String.format("Search result cache: %d hits, %d misses (hit ratio %.1f%%), %d evictions, %d expirations, %d invalidations, %d bypassed lookups, %d entries holding %d reply bytes",
+                hits.get(),misses.get(),lookups==0?0.0:100.0*hits.get()/lookups,evictions.get(),expirations.get(),invalidations.get(),bypasses.get(),size(),bytes()));
+    }
+
+    synchronized int size(){
+        return entries.size();
+    }
+
+    synchronized long bytes(){
+        return currentBytes;
+    }
+
+    private static String cacheKey(CommandArguments args){
+        StringBuilder key = new StringBuilder();
+        for(Rawable arg:args){
+            key.append(new String(arg.getRaw(),StandardCharsets.UTF_8)).append('\u0000');
+        }
+        return key.toString();
+    }
+
+    // approximate size of a raw reply: the bytes of every bulk string plus a small allowance per element
+    static long replySize(Object raw){
+        if(raw instanceof byte[]){
+            return ((byte[])raw).length+16;
+        }
+        if(raw instanceof List){
+            long size = 16;
+            for(Object o:(List<?>)raw){
+                size+=replySize(o);
+            }
+            return size;
+        }
+        return 16;
+    }
+
+    /**
+     * A freshly fetched result and roughly how many bytes it holds
+     */
+    static class Fetched{
+        final Object result;
+        final long bytes;
+
+        Fetched(Object result,long bytes){
+            this.result = result;
+            this.bytes = bytes;
+        }
+    }
+
+    private static class Entry{
+        final Object result;
+        final long bytes;
+        final long expiresAt;
+
+        Entry(Object result,long bytes,long expiresAt){
+            this.result = result;
+            this.bytes = bytes;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
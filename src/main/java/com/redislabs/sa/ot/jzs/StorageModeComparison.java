@@ -0,0 +1,333 @@
+package com.redislabs.sa.ot.jzs;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Protocol;
+import redis.clients.jedis.UnifiedJedis;
+import redis.clients.jedis.json.Path2;
+import redis.clients.jedis.search.FTCreateParams;
+import redis.clients.jedis.search.FieldName;
+import redis.clients.jedis.search.IndexDataType;
+import redis.clients.jedis.search.Query;
+import redis.clients.jedis.search.schemafields.NumericField;
+import redis.clients.jedis.search.schemafields.SchemaField;
+import redis.clients.jedis.search.schemafields.TagField;
+import redis.clients.jedis.search.schemafields.TextField;
+import redis.clients.jedis.util.SafeEncoder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * Writes the same generated activities once as JSON documents and once as flattened HASHes - each under its own prefix
+ * with its own index - and compares the two storage modes:
+ *  - load rate (documents are written while the index exists so the rate includes indexing, as it does for the main load)
+ *  - growth of used_memory (INFO memory) caused by the documents plus their index, and index memory from FT.INFO
+ *  - latency of equivalent queries (the same query strings - the HASH versions RETURN the flattened fields)
+ * HASH layout: name, cost, location and number_of_contacts as they are; days and times (military) joined with ',' (TAG SEPARATOR ',');
+ * civilian_times joined with '|'; contact_name / contact_phone / contact_email with the values of every host joined with ', '
+ * The documents are generated (and converted) before anything is timed and are held in memory for both modes
+ * so keep the number of documents moderate (100,000 documents need roughly 300MB of heap).
+ * Each mode's index is dropped together with its documents (FT.DROPINDEX DD) once it has been measured.
+ * Not supported in cluster mode (used_memory would only describe one node).
+ */
+class StorageModeComparison {
+
+    static final String JSON_MODE = "json";
+    static final String HASH_MODE = "hash";
+    static final String JSON_PREFIX = "zew:cmp:json:";
+    static final String HASH_PREFIX = "zew:cmp:hash:";
+    static final String INDEX_PREFIX = "idx_zew_cmp_";
+    static final String TABLE_HEADER = String.format("%-6s %10s %10s %12s %12s %12s %10s %10s %10s %10s %8s",
+            "mode","docs","docs/sec","MB/sec","memory(MB)","bytes/doc","index(MB)","queries/s","p50(us)","p99(us)","errors");
+
+    private final ConnectionHelper connectionHelper;
+    private final Supplier<byte[]> documentSource;
+    private final List<String> modes;
+    private final int limit;
+    private final int dialect;
+    private final int threadCount;
+    private final int batchSize;
+    private final int queryIterations;
+    private final long pollIntervalMillis;
+    private final long timeoutMillis;
+
+    StorageModeComparison(ConnectionHelper connectionHelper,Supplier<byte[]> documentSource,String modes,int limit,int dialect,
+                          int threadCount,int batchSize,int queryIterations,long pollIntervalMillis,long timeoutMillis){
+        this.connectionHelper = connectionHelper;
+        this.documentSource = documentSource;
+        this.modes = new ArrayList<>();
+        for(String mode:modes.split(",")){
+            String m = mode.trim().toLowerCase();
+            if(!JSON_MODE.equals(m)&&!HASH_MODE.equals(m)){
+                throw new IllegalArgumentException("Unknown storage mode "+mode.trim()+" - choose from json,hash");
+            }
+            this.modes.add(m);
+        }
+        this.limit = limit;
+        this.dialect = dialect;
+        this.threadCount = Math.max(1,threadCount);
+        this.batchSize = Math.max(1,batchSize);
+        this.queryIterations = Math.max(1,queryIterations);
+        this.pollIntervalMillis = pollIntervalMillis;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    void run(int howManyDocuments) throws InterruptedException{
+        if(connectionHelper.isCluster()){
+            System.out.println("The storage mode comparison is not supported in cluster mode - skipping it");
+            return;
+        }
+        System.out.println("\nGenerating "+howManyDocuments+" activities to write in each storage mode "+modes+"...");
+        List<byte[]> jsonDocuments = new ArrayList<>(howManyDocuments);
+        List<Map<byte[],byte[]>> hashDocuments = new ArrayList<>(howManyDocuments);
+        for(int i=0;i<howManyDocuments;i++){
+            byte[] json = documentSource.get();
+            jsonDocuments.add(json);
+            if(modes.contains(HASH_MODE)){
+                hashDocuments.add(toHash(new JSONObject(new String(json,StandardCharsets.UTF_8))));
+            }
+        }
+        List<String> rows = new ArrayList<>();
+        for(String mode:modes){
+            String row = measure(mode,jsonDocuments,hashDocuments);
+            if(row!=null){
+                rows.add(row);
+            }
+        }
+        System.out.println("\n\tStorage mode comparison (memory is the growth of used_memory, latencies over all queries):\n");
+        System.out.println(TABLE_HEADER);
+        for(String row:rows){
+            System.out.println(row);
+        }
+    }
+
+    private String measure(String mode,List<byte[]> jsonDocuments,List<Map<byte[],byte[]>> hashDocuments) throws InterruptedException{
+        UnifiedJedis jedis = connectionHelper.getPooledJedis();
+        boolean hash = HASH_MODE.equals(mode);
+        String indexName = INDEX_PREFIX+mode;
+        String prefix = hash?HASH_PREFIX:JSON_PREFIX;
+        System.out.println("\n"+mode+": writing "+jsonDocuments.size()+" documents under "+prefix+" indexed by "+indexName);
+        dropWithDocuments(jedis,indexName); // left over from an interrupted run
+        long usedMemoryBefore = usedMemory(jedis);
+        if(hash){
+            jedis.ftCreate(indexName,FTCreateParams.createParams().on(IndexDataType.HASH).prefix(prefix),hashFields());
+        }else{
+            jedis.ftCreate(indexName,FTCreateParams.createParams().on(IndexDataType.JSON).prefix(prefix),SchemaVariantHarness.baselineFields());
+        }
+        ParallelJsonLoader.LoadStats load = load(mode,prefix,jsonDocuments,hashDocuments);
+        System.out.println(load);
+        if(!IndexRebuilder.waitUntilIndexed(jedis,indexName,pollIntervalMillis,timeoutMillis)){
+            System.out.println("Gave up waiting for "+indexName+" after "+timeoutMillis+" milliseconds - skipping it");
+            dropWithDocuments(jedis,indexName);
+            return null;
+        }
+        long memoryGrowth = usedMemory(jedis)-usedMemoryBefore;
+        Map<String,Object> info = jedis.ftInfo(indexName);
+        SchemaVariantHarness.QueryTimings timings = SchemaVariantHarness.timeQueries(jedis,indexName,
+                hash?hashQueries(limit,dialect):ZewQueries.all(limit,dialect),queryIterations);
+        dropWithDocuments(jedis,indexName);
+        return String.format("%-6s %10d %10.0f %12.2f %12.2f %12.0f %10.2f %10.1f %10.1f %10.1f %8d",
+                mode,load.docs,load.docsPerSecond(),load.megabytesPerSecond(),
+                memoryGrowth/(1024.0*1024.0),load.docs>0?memoryGrowth/(double)load.docs:0.0,
+                SchemaVariantHarness.indexMemoryMegabytes(info),
+                timings.queriesPerSecond(),
+                LatencyStats.micros(timings.all.getValueAtPercentile(50.0)),
+                LatencyStats.micros(timings.all.getValueAtPercentile(99.0)),
+                timings.errors);
+    }
+
+    // every thread writes its own contiguous slice of the documents on its own pipeline
+    private ParallelJsonLoader.LoadStats load(String mode,String prefix,List<byte[]> jsonDocuments,List<Map<byte[],byte[]>> hashDocuments){
+        int threads = Math.min(threadCount,Math.max(1,jsonDocuments.size()));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        ParallelJsonLoader.LoadStats overall = new ParallelJsonLoader.LoadStats(mode);
+        long startTime = System.nanoTime();
+        try {
+            List<Future<ParallelJsonLoader.LoadStats>> futures = new ArrayList<>();
+            int sliceSize = (jsonDocuments.size()+threads-1)/threads;
+            for(int t=0;t<threads;t++){
+                int first = t*sliceSize;
+                int end = Math.min(jsonDocuments.size(),first+sliceSize);
+                futures.add(executor.submit(() -> {
+                    ParallelJsonLoader.LoadStats stats = new ParallelJsonLoader.LoadStats(mode);
+                    try(Pipeline pipeline = connectionHelper.getPipeline()){
+                        for(int i=first;i<end;i++){
+                            String key = prefix+(i+1);
+                            if(HASH_MODE.equals(mode)){
+                                Map<byte[],byte[]> fields = hashDocuments.get(i);
+                                pipeline.hset(SafeEncoder.encode(key),fields);
+                                for(Map.Entry<byte[],byte[]> field:fields.entrySet()){
+                                    stats.bytes+=field.getKey().length+field.getValue().length;
+                                }
+                            }else{
+                                byte[] json = jsonDocuments.get(i);
+                                pipeline.jsonSet(key,Path2.ROOT_PATH,json);
+                                stats.bytes+=json.length;
+                            }
+                            stats.docs++;
+                            if(stats.docs%batchSize==0){
+                                pipeline.sync();
+                            }
+                        }
+                        pipeline.sync();
+                    }
+                    return stats;
+                }));
+            }
+            for(Future<ParallelJsonLoader.LoadStats> f:futures){
+                ParallelJsonLoader.LoadStats stats = f.get();
+                overall.docs+=stats.docs;
+                overall.bytes+=stats.bytes;
+            }
+        }catch(Exception e){
+            System.out.println("Writing the "+mode+" documents failed: "+e.getMessage());
+        }finally {
+            executor.shutdown();
+        }
+        overall.elapsedNanos = System.nanoTime()-startTime;
+        return overall;
+    }
+
+    /**
+     * Flattens one activity into HASH fields
+     * @param activity
+     * @return field name -> value
+     */
+    static Map<byte[],byte[]> toHash(JSONObject activity){
+        Map<byte[],byte[]> fields = new LinkedHashMap<>();
+        put(fields,"name",activity.optString("name",null));
+        put(fields,"cost",activity.has("cost")?String.valueOf(activity.getNumber("cost")):null);
+        put(fields,"location",activity.optString("location",null));
+        put(fields,"description",activity.optString("description",null));
+        JSONArray days = activity.optJSONArray("days");
+        put(fields,"days",days==null?null:join(days,null,","));
+        JSONArray times = activity.optJSONArray("times");
+        if(times!=null){
+            put(fields,"times",join(times,"military",","));
+            put(fields,"civilian_times",join(times,"civilian","|"));
+        }
+        JSONObject parties = activity.optJSONObject("responsible_parties");
+        if(parties!=null){
+            put(fields,"number_of_contacts",String.valueOf(parties.optInt("number_of_contacts")));
+            JSONArray hosts = parties.optJSONArray("hosts");
+            if(hosts!=null){
+                put(fields,"contact_name",join(hosts,"name",", "));
+                put(fields,"contact_phone",join(hosts,"phone",", "));
+                put(fields,"contact_email",join(hosts,"email",", "));
+            }
+        }
+        return fields;
+    }
+
+    private static void put(Map<byte[],byte[]> fields,String name,String value){
+        if(value!=null&&!value.isEmpty()){
+            fields.put(SafeEncoder.encode(name),SafeEncoder.encode(value));
+        }
+    }
+
+    // joins the array's values (or the given attribute of each of its objects) - missing and null values are left out
+    private static String join(JSONArray array,String attribute,String separator){
+        StringBuilder sb = new StringBuilder();
+        for(int i=0;i<array.length();i++){
+            String value = attribute==null?array.optString(i,null):
+                    (array.optJSONObject(i)==null?null:array.getJSONObject(i).optString(attribute,null));
+            if(value==null||value.isEmpty()||"null".equals(value)){
+                continue;
+            }
+            if(sb.length()>0){
+                sb.append(separator);
+            }
+            sb.append(value);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return the HASH version of the idx_zew_events schema (same aliases so the same query strings work)
+     */
+    static List<SchemaField> hashFields(){
+        return Arrays.asList(
+                TextField.of("name").as("event_name"),
+                NumericField.of("cost").as("cost").sortable(),
+                TagField.of("days").as("days").separator(','),
+                TagField.of("times").as("times").separator(','),
+                TextField.of("location").as("location"),
+                TextField.of("contact_name").as("contact_name").weight(.75));
+    }
+
+    /**
+     * The ZewQueries with RETURN clauses that ask for the flattened HASH fields instead of JSONPaths
+     * (a HASH cannot return just the matching host or time - the whole flattened field is returned)
+     * @param limit
+     * @param dialect
+     * @return the queries in the same order and with the same names as ZewQueries.all()
+     */
+    static List<ZewQueries.NamedQuery> hashQueries(int limit,int dialect){
+        List<ZewQueries.NamedQuery> queries = new ArrayList<>();
+        queries.add(new ZewQueries.NamedQuery(ZewQueries.DIALECT3,ZewQueries.DIALECT3_QUERY,
+                new Query(ZewQueries.DIALECT3_QUERY).returnFields(
+                        FieldName.of("name").as("event_name"),
+                        FieldName.of("location").as("EVENT_LOCATION"),
+                        FieldName.of("contact_name").as("matched_party_by_name")
+                ).limit(0,limit).dialect(dialect)));
+        queries.add(new ZewQueries.NamedQuery(ZewQueries.QUERY1,ZewQueries.QUERY1_QUERY,
+                new Query(ZewQueries.QUERY1_QUERY).returnFields(
+                        FieldName.of("location"),
+                        FieldName.of("civilian_times").as("civilian"),
+                        FieldName.of("days"),
+                        FieldName.of("contact_email"),
+                        FieldName.of("contact_phone"),
+                        FieldName.of("name").as("event_name"),
+                        FieldName.of("times").as("military")
+                ).limit(0,limit).dialect(dialect)));
+        queries.add(new ZewQueries.NamedQuery(ZewQueries.QUERY2,ZewQueries.QUERY2_QUERY,
+                new Query(ZewQueries.QUERY2_QUERY).returnFields(
+                        FieldName.of("location"),
+                        FieldName.of("civilian_times").as("all_times"),
+                        FieldName.of("days"),
+                        FieldName.of("contact_name"),
+                        FieldName.of("contact_phone"),
+                        FieldName.of("contact_email"),
+                        FieldName.of("name").as("event_name"),
+                        FieldName.of("number_of_contacts").as("hosts_size")
+                ).limit(0,limit).dialect(dialect)));
+        queries.add(new ZewQueries.NamedQuery(ZewQueries.QUERY3,ZewQueries.QUERY3_QUERY,
+                new Query(ZewQueries.QUERY3_QUERY).returnFields(
+                        FieldName.of("location"),
+                        FieldName.of("civilian_times").as("all_times"),
+                        FieldName.of("days"),
+                        FieldName.of("name").as("event_name"),
+                        FieldName.of("cost").as("cost_in_us_dollars")
+                ).limit(0,limit).dialect(dialect)));
+        queries.add(new ZewQueries.NamedQuery(ZewQueries.AGGREGATION,ZewQueries.AGGREGATION_DISPLAY,ZewQueries.aggregation(dialect)));
+        return queries;
+    }
+
+    static long usedMemory(UnifiedJedis jedis){
+        String info = SafeEncoder.encode((byte[]) jedis.sendCommand(Protocol.Command.INFO,"memory"));
+        for(String line:info.split("\r\n")){
+            if(line.startsWith("used_memory:")){
+                return Long.parseLong(line.substring("used_memory:".length()).trim());
+            }
+        }
+        return 0;
+    }
+
+    private static void dropWithDocuments(UnifiedJedis jedis,String indexName){
+        try {
+            jedis.ftDropIndexDD(indexName);
+        }catch(RuntimeException re){
+            // the index did not exist
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.redislabs.sa.ot.jzs;
+
+import redis.clients.jedis.UnifiedJedis;
+import redis.clients.jedis.search.aggr.AggregationBuilder;
+import redis.clients.jedis.search.aggr.AggregationResult;
+
+/**
+ * Runs an FT.AGGREGATE using WITHCURSOR and hands the rows to a consumer one chunk (of at most count rows) at a time
+ * Only one chunk is held in memory at once - no matter how many groups the aggregation produces.
+ * If the consumer asks to stop (or throws) the server-side cursor is deleted with FT.CURSOR DEL
+ * instead of being left to expire after maxIdleMillis.
+ */
+class StreamingAggregator {
+
+    /**
+     * Receives each chunk of rows as it arrives
+     */
+    interface ChunkConsumer{
+        /**
+         * @param chunk the next rows (getResults() / getRow())
+         * @return true to keep reading, false to stop and release the cursor
+         */
+        boolean accept(AggregationResult chunk);
+    }
+
+    private final UnifiedJedis jedis;
+    private final int count;
+    private final long maxIdleMillis;
+
+    /**
+     * @param jedis
+     * @param count the number of rows to read per round trip
+     * @param maxIdleMillis how long the server keeps an idle cursor before deleting it
+     */
+    StreamingAggregator(UnifiedJedis jedis,int count,long maxIdleMillis){
+        this.jedis = jedis;
+        this.count = Math.max(1,count);
+        this.maxIdleMillis = maxIdleMillis;
+    }
+
+    /**
+     * NB: adds WITHCURSOR COUNT/MAXIDLE to the builder - so pass a builder that is not used elsewhere
+     * @param indexName
+     * @param builder
+     * @param consumer
+     * @return the number of rows handed to the consumer
+     */
+    long stream(String indexName,AggregationBuilder builder,ChunkConsumer consumer){
+        long rowsDelivered = 0;
+        long cursorId = 0;
+        boolean completed = false;
+        try {
+            AggregationResult chunk = jedis.ftAggregate(indexName, builder.cursor(count, maxIdleMillis));
+            while (true) {
+                cursorId = chunk.getCursorId();
+                rowsDelivered += chunk.getResults().size();
+                boolean keepReading = consumer.accept(chunk);
+                if (cursorId == 0) {
+                    completed = true; // the server has already released the cursor
+                    break;
+                }
+                if (!keepReading) {
+                    break;
+                }
+                chunk = jedis.ftCursorRead(indexName, cursorId, count);
+            }
+        }finally {
+            if(!completed&&cursorId!=0){
+                try {
+                    jedis.ftCursorDel(indexName, cursorId);
+                }catch(Throwable t){
+                    System.out.println("Unable to delete cursor "+cursorId+" (it will expire after "+maxIdleMillis+" milliseconds): "+t.getMessage());
+                }
+            }
+        }
+        return rowsDelivered;
+    }
+}
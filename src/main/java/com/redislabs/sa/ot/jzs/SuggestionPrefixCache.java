@@ -0,0 +1,189 @@
+package com.redislabs.sa.ot.jzs;
+
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.resps.Tuple;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process prefix index over the suggestions stored in zew:suggest
+ * There is no command that lists the whole suggestion dictionary so it is copied by sending (in one pipeline)
+ * an FT.SUGGET WITHSCORES for every single letter and digit with a large MAX - each of those is a 'bucket'.
+ * Buckets that came back with fewer than MAX entries are complete: any prefix starting with that character
+ * is answered from the local trie without a round trip. Everything else (other first characters, truncated buckets)
+ * falls back to FT.SUGGET on the server.
+ * The copy is refreshed in the background every refreshMillis and swapped in atomically.
+ * Matching ignores case like the server does - local results are ordered by score then alphabetically
+ * which can differ from the server's ordering when scores tie.
+ */
+class SuggestionPrefixCache implements AutoCloseable {
+
+    static final String BUCKET_CHARS = "abcdefghijklmnopqrstuvwxyz0123456789";
+
+    private final ConnectionHelper connectionHelper;
+    private final String suggestionKey;
+    private final int maxSuggestions;
+    private final int bucketMax;
+    private final long refreshMillis;
+    private final AtomicLong localHits = new AtomicLong();
+    private final AtomicLong serverLookups = new AtomicLong();
+    private final AtomicLong refreshes = new AtomicLong();
+    private volatile Snapshot snapshot = null;
+    private ScheduledExecutorService refresher = null;
+
+    /**
+     * @param connectionHelper
+     * @param suggestionKey
+     * @param maxSuggestions how many suggestions a lookup returns (FT.SUGGET defaults to 5)
+     * @param bucketMax the MAX used when copying each single character bucket
+     * @param refreshMillis how often the local copy is refreshed (0 means never)
+     */
+    SuggestionPrefixCache(ConnectionHelper connectionHelper,String suggestionKey,int maxSuggestions,int bucketMax,long refreshMillis){
+        this.connectionHelper = connectionHelper;
+        this.suggestionKey = suggestionKey;
+        this.maxSuggestions = Math.max(1,maxSuggestions);
+        this.bucketMax = Math.max(1,bucketMax);
+        this.refreshMillis = refreshMillis;
+    }
+
+    /**
+     * Copies the suggestions once and then schedules the background refresh
+     * @return this
+     */
+    SuggestionPrefixCache start(){
+        refresh();
+        if(refreshMillis>0){
+            refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r,"suggestion-refresh");
+                t.setDaemon(true);
+                return t;
+            });
+            refresher.scheduleWithFixedDelay(() -> {
+                try {
+                    refresh();
+                }catch(Throwable t){
+                    System.out.println("Refreshing the suggestion cache failed: "+t.getMessage());
+                }
+            },refreshMillis,refreshMillis,TimeUnit.MILLISECONDS);
+        }
+        return this;
+    }
+
+    /**
+     * @param prefix
+     * @return the same suggestions FT.SUGGET key prefix MAX maxSuggestions would return
+     */
+    List<String> get(String prefix){
+        if(prefix==null||prefix.isEmpty()){
+            return Collections.emptyList();
+        }
+        String folded = prefix.toLowerCase(Locale.ROOT);
+        Snapshot current = snapshot;
+        if(current!=null&&current.completeBuckets.contains(folded.charAt(0))){
+            localHits.incrementAndGet();
+            return current.root.lookup(folded);
+        }
+        serverLookups.incrementAndGet();
+        return connectionHelper.getPooledJedis().ftSugGet(suggestionKey,prefix,false,maxSuggestions);
+    }
+
+    void refresh(){
+        Map<Character,Response<List<Tuple>>> responses = new HashMap<>();
+        try(Pipeline pipeline = connectionHelper.getPipelineForKey(suggestionKey)){
+            for(char bucket:BUCKET_CHARS.toCharArray()){
+                responses.put(bucket,pipeline.ftSugGetWithScores(suggestionKey,String.valueOf(bucket),false,bucketMax));
+            }
+            pipeline.sync();
+        }
+        List<Tuple> entries = new ArrayList<>();
+        Set<Character> completeBuckets = new HashSet<>();
+        Set<String> seen = new HashSet<>();
+        for(Map.Entry<Character,Response<List<Tuple>>> bucket:responses.entrySet()){
+            List<Tuple> suggestions = bucket.getValue().get();
+            if(suggestions.size()<bucketMax){
+                completeBuckets.add(bucket.getKey());
+            }
+            for(Tuple t:suggestions){
+                if(seen.add(t.getElement())){
+                    entries.add(t);
+                }
+            }
+        }
+        entries.sort((a,b) -> a.getScore()!=b.getScore()?Double.compare(b.getScore(),a.getScore()):a.getElement().compareTo(b.getElement()));
+        TrieNode root = new TrieNode();
+        for(Tuple t:entries){
+            root.insert(t.getElement(),maxSuggestions);
+        }
+        snapshot = new Snapshot(root,completeBuckets,entries.size());
+        refreshes.incrementAndGet();
+    }
+
+    void printStats(){
+        Snapshot current = snapshot;
+        long local = localHits.get();
+        long server = serverLookups.get();
+        System.out.println(String.format("Suggestion cache: %d suggestions copied into %d complete buckets | %d refreshes | %d local answers | %d server lookups | %.1f%% answered locally",
+                current==null?0:current.size,current==null?0:current.completeBuckets.size(),refreshes.get(),
+                local,server,local+server>0?local*100.0/(local+server):0.0));
+    }
+
+    @Override
+    public void close(){
+        if(refresher!=null){
+            refresher.shutdownNow();
+        }
+    }
+
+    // a fully built trie is never modified - a refresh builds a new one and swaps it in
+    private static class Snapshot{
+        final TrieNode root;
+        final Set<Character> completeBuckets;
+        final int size;
+
+        Snapshot(TrieNode root,Set<Character> completeBuckets,int size){
+            this.root = root;
+            this.completeBuckets = completeBuckets;
+            this.size = size;
+        }
+    }
+
+    /*
+    Every node keeps the best suggestions below it so a lookup is just a walk down the prefix.
+    Suggestions are inserted best first - so each node simply keeps the first maxSuggestions it sees.
+     */
+    private static class TrieNode{
+        final Map<Character,TrieNode> children = new HashMap<>();
+        final List<String> best = new ArrayList<>(2);
+
+        void insert(String suggestion,int maxSuggestions){
+            String folded = suggestion.toLowerCase(Locale.ROOT);
+            TrieNode node = this;
+            for(int i=0;i<folded.length();i++){
+                node = node.children.computeIfAbsent(folded.charAt(i),c -> new TrieNode());
+                if(node.best.size()<maxSuggestions){
+                    node.best.add(suggestion);
+                }
+            }
+        }
+
+        List<String> lookup(String foldedPrefix){
+            TrieNode node = this;
+            for(int i=0;i<foldedPrefix.length()&&node!=null;i++){
+                node = node.children.get(foldedPrefix.charAt(i));
+            }
+            return node==null?Collections.emptyList():Collections.unmodifiableList(node.best);
+        }
+    }
+}
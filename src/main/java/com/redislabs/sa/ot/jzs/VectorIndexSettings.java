@@ -0,0 +1,86 @@
+package com.redislabs.sa.ot.jzs;
+
+import redis.clients.jedis.search.FieldName;
+import redis.clients.jedis.search.Schema;
+import redis.clients.jedis.search.schemafields.VectorField;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * How the $.embedding VECTOR field is indexed: FLAT (exact - every query compares against every vector)
+ * or HNSW (approximate graph search - M links per node, EF_CONSTRUCTION candidates while building, EF_RUNTIME candidates while querying).
+ * The vectors are FLOAT32 and compared by COSINE distance. M and the EF values are only sent for HNSW.
+ */
+class VectorIndexSettings {
+
+    static final String FLAT = "FLAT";
+    static final String HNSW = "HNSW";
+
+    final String algorithm;
+    final int dimension;
+    final int m;
+    final int efConstruction;
+    final int efRuntime;
+
+    VectorIndexSettings(String algorithm,int dimension,int m,int efConstruction,int efRuntime){
+        this.algorithm = algorithm.trim().toUpperCase(Locale.ROOT);
+        if(!FLAT.equals(this.algorithm)&&!HNSW.equals(this.algorithm)){
+            throw new IllegalArgumentException("Unknown vector index algorithm "+algorithm+" - use flat or hnsw");
+        }
+        this.dimension = dimension;
+        this.m = m;
+        this.efConstruction = efConstruction;
+        this.efRuntime = efRuntime;
+    }
+
+    VectorIndexSettings withAlgorithm(String algorithm){
+        return new VectorIndexSettings(algorithm,dimension,m,efConstruction,efRuntime);
+    }
+
+    boolean isHnsw(){
+        return HNSW.equals(algorithm);
+    }
+
+    Map<String,Object> attributes(){
+        Map<String,Object> attributes = new LinkedHashMap<>();
+        attributes.put("TYPE","FLOAT32");
+        attributes.put("DIM",dimension);
+        attributes.put("DISTANCE_METRIC","COSINE");
+        if(isHnsw()){
+            attributes.put("M",m);
+            attributes.put("EF_CONSTRUCTION",efConstruction);
+            attributes.put("EF_RUNTIME",efRuntime);
+        }
+        return attributes;
+    }
+
+    /**
+     * Adds the vector field to a schema built the way Main.createIndex() builds its schema
+     * @param schema
+     * @return the schema
+     */
+    Schema addTo(Schema schema){
+        return schema.addVectorField("$."+ActivityEmbedding.FIELD,Schema.VectorField.VectorAlgo.valueOf(algorithm),attributes())
+                .as(ActivityEmbedding.FIELD);
+    }
+
+    /**
+     * @return the vector field for FT.CREATE calls made with FTCreateParams
+     */
+    VectorField field(){
+        return new VectorField(FieldName.of("$."+ActivityEmbedding.FIELD).as(ActivityEmbedding.FIELD),
+                VectorField.VectorAlgorithm.valueOf(algorithm),attributes());
+    }
+
+    // EF_RUNTIME is rejected in a query against a FLAT index
+    int queryEfRuntime(){
+        return isHnsw()?efRuntime:0;
+    }
+
+    @Override
+    public String toString(){
+        return algorithm+" DIM "+dimension+(isHnsw()?" M "+m+" EF_CONSTRUCTION "+efConstruction+" EF_RUNTIME "+efRuntime:"");
+    }
+}
@@ -0,0 +1,222 @@
+package com.redislabs.sa.ot.jzs;
+
+import org.HdrHistogram.Histogram;
+import redis.clients.jedis.UnifiedJedis;
+import redis.clients.jedis.search.Document;
+import redis.clients.jedis.search.FTCreateParams;
+import redis.clients.jedis.search.IndexDataType;
+import redis.clients.jedis.search.SearchResult;
+import redis.clients.jedis.search.schemafields.NumericField;
+import redis.clients.jedis.search.schemafields.TagField;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Indexes the $.embedding vectors of the loaded activities with FLAT and then with HNSW (one index at a time, each dropped
+ * - keeping the documents - before the next is built) and for each records:
+ *  - build time (FT.CREATE until FT.INFO reports indexing has finished) and index / vector index memory from FT.INFO
+ *  - latency percentiles of KNN queries and of hybrid KNN queries (KNN among the documents matching a filter on @days / @cost)
+ *  - recall@k against FLAT: FLAT compares the query with every vector, so its answer is the exact (brute-force) one
+ * Many activities share a description - and so a vector - which makes "the" k nearest keys ambiguous.
+ * Recall is therefore counted by distance: an approximate result counts as found when it is no further away than the exact k-th result.
+ * The query vectors are embeddings of short texts built from the generator's vocabularies with a fixed seed - the same every run.
+ */
+class VectorSearchBenchmark {
+
+    static final String INDEX_PREFIX = "idx_zew_vec_";
+    static final String TABLE_HEADER = String.format("%-6s %10s %10s %10s %10s %10s %10s %10s %10s %10s %10s",
+            "index","build(s)","docs","index(MB)","vector(MB)","knn p50","knn p99","hybrid p50","hybrid p99","recall@k","hybrid r@k");
+    private static final double DISTANCE_TOLERANCE = 1e-6;
+
+    private final UnifiedJedis jedis;
+    private final String prefix;
+    private final VectorIndexSettings settings;
+    private final int k;
+    private final String hybridFilter;
+    private final long pollIntervalMillis;
+    private final long timeoutMillis;
+    private final List<float[]> queryVectors = new ArrayList<>();
+
+    /**
+     * @param jedis
+     * @param prefix the key prefix of the activities to index
+     * @param settings the HNSW parameters to compare (FLAT uses the same dimension)
+     * @param k
+     * @param queryCount how many different query vectors to fire at each index (twice - plain KNN and hybrid)
+     * @param hybridFilter
+     * @param pollIntervalMillis
+     * @param timeoutMillis
+     */
+    VectorSearchBenchmark(UnifiedJedis jedis,String prefix,VectorIndexSettings settings,int k,int queryCount,String hybridFilter,
+                          long pollIntervalMillis,long timeoutMillis){
+        this.jedis = jedis;
+        this.prefix = prefix;
+        this.settings = settings;
+        this.k = Math.max(1,k);
+        this.hybridFilter = hybridFilter;
+        this.pollIntervalMillis = pollIntervalMillis;
+        this.timeoutMillis = timeoutMillis;
+        Random random = new Random(42);
+        for(int i=0;i<Math.max(1,queryCount);i++){
+            queryVectors.add(ActivityEmbedding.embed(queryText(random),settings.dimension));
+        }
+    }
+
+    // e.g. "Meet and pet the Giraffe North" - close to, but never the same as, a generated description
+    private static String queryText(Random random){
+        return ActivityEmbedding.ACTIVITY_PHRASES[random.nextInt(ActivityEmbedding.ACTIVITY_PHRASES.length)]+" "+
+                JsonZewActivityBuilder.animalSpecies[random.nextInt(JsonZewActivityBuilder.animalSpecies.length)]+" "+
+                JsonZewActivityBuilder.locationDirections[random.nextInt(JsonZewActivityBuilder.locationDirections.length)];
+    }
+
+    void run() throws InterruptedException{
+        System.out.println("\nComparing FLAT and "+settings+" vector indexes over "+prefix+"* ("+queryVectors.size()+
+                " query vectors, k = "+k+", hybrid filter "+hybridFilter+"):");
+        Run exact = measure(settings.withAlgorithm(VectorIndexSettings.FLAT),null);
+        if(exact==null){
+            return;
+        }
+        Run approximate = measure(settings,exact);
+        System.out.println("\n\tVector index comparison (latencies in microseconds, recall against FLAT):\n");
+        System.out.println(TABLE_HEADER);
+        System.out.println(exact);
+        if(approximate!=null){
+            System.out.println(approximate);
+        }
+    }
+
+    private Run measure(VectorIndexSettings indexSettings,Run exact) throws InterruptedException{
+        String indexName = INDEX_PREFIX+indexSettings.algorithm.toLowerCase();
+        System.out.println("\n"+indexName+": "+indexSettings);
+        dropQuietly(indexName); // left over from an interrupted run
+        long start = System.currentTimeMillis();
+        jedis.ftCreate(indexName,FTCreateParams.createParams().on(IndexDataType.JSON).prefix(prefix),
+                indexSettings.field(),TagField.of("$.days.*").as("days"),NumericField.of("$.cost").as("cost"));
+        try {
+            if(!IndexRebuilder.waitUntilIndexed(jedis,indexName,pollIntervalMillis,timeoutMillis)){
+                System.out.println("Gave up waiting for "+indexName+" after "+timeoutMillis+" milliseconds - skipping it");
+                return null;
+            }
+            long buildMillis = System.currentTimeMillis()-start;
+            Map<String,Object> info = jedis.ftInfo(indexName);
+            Run run = new Run(indexSettings.algorithm,buildMillis,info);
+            for(int i=0;i<Math.max(1,queryVectors.size()/10);i++){ // warm-up - not recorded
+                jedis.ftSearch(indexName,ZewQueries.knn("*",queryVectors.get(i),k,indexSettings.queryEfRuntime()));
+            }
+            for(int i=0;i<queryVectors.size();i++){
+                run.knnDistances.add(time(indexName,"*",queryVectors.get(i),indexSettings,run.knnLatencies));
+                run.hybridDistances.add(time(indexName,hybridFilter,queryVectors.get(i),indexSettings,run.hybridLatencies));
+            }
+            if(exact==null&&isEmpty(run.knnDistances)){
+                // num_docs also counts documents without an embedding - an index with nothing to search answers every KNN with 0 rows
+                System.out.println("The FLAT baseline found no neighbours for any query vector - no document under "+prefix+" has a $."+
+                        ActivityEmbedding.FIELD+" of dimension "+settings.dimension+": load the activities with --vectordim "+
+                        settings.dimension+" (or --vectorindex) first");
+                return null;
+            }
+            if(exact!=null){
+                run.knnRecall = recall(exact.knnDistances,run.knnDistances);
+                run.hybridRecall = recall(exact.hybridDistances,run.hybridDistances);
+            }
+            return run;
+        }finally {
+            dropQuietly(indexName);
+        }
+    }
+
+    // fires one KNN query and returns the distances of its results (nearest first)
+    private double[] time(String indexName,String filter,float[] vector,VectorIndexSettings indexSettings,Histogram latencies){
+        long start = System.nanoTime();
+        SearchResult result = jedis.ftSearch(indexName,ZewQueries.knn(filter,vector,k,indexSettings.queryEfRuntime()));
+        latencies.recordValue(System.nanoTime()-start);
+        List<Document> documents = result.getDocuments();
+        double[] distances = new double[documents.size()];
+        for(int i=0;i<distances.length;i++){
+            distances[i] = Double.parseDouble(documents.get(i).getString(ZewQueries.VECTOR_SCORE));
+        }
+        return distances;
+    }
+
+    /**
+     * @param exact the distances FLAT returned for each query
+     * @param approximate the distances the index under test returned for the same queries
+     * @return the mean share of each exact answer that the approximate answer matched - queries FLAT found nothing for are
+     *   left out (NaN if that is all of them)
+     */
+    static double recall(List<double[]> exact,List<double[]> approximate){
+        double total = 0;
+        int scored = 0;
+        for(int q=0;q<exact.size();q++){
+            double[] expected = exact.get(q);
+            if(expected.length==0){
+                continue; // nothing to find - an empty answer is no evidence either way
+            }
+            scored++;
+            double kthDistance = expected[expected.length-1];
+            int found = 0;
+            for(double distance:approximate.get(q)){
+                if(distance<=kthDistance+DISTANCE_TOLERANCE){
+                    found++;
+                }
+            }
+            total+=Math.min(1.0,found/(double)expected.length);
+        }
+        return scored==0?Double.NaN:total/scored;
+    }
+
+    private static boolean isEmpty(List<double[]> distances){
+        for(double[] d:distances){
+            if(d.length>0){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void dropQuietly(String indexName){
+        try {
+            jedis.ftDropIndex(indexName); // keeps the documents
+        }catch(RuntimeException re){
+            // the index did not exist
+        }
+    }
+
+    private static class Run{
+        final String algorithm;
+        final long buildMillis;
+        final long documents;
+        final double indexMegabytes;
+        final double vectorMegabytes;
+        final Histogram knnLatencies = LatencyStats.newHistogram();
+        final Histogram hybridLatencies = LatencyStats.newHistogram();
+        final List<double[]> knnDistances = new ArrayList<>();
+        final List<double[]> hybridDistances = new ArrayList<>();
+        double knnRecall = 1.0;
+        double hybridRecall = 1.0;
+
+        Run(String algorithm,long buildMillis,Map<String,Object> info){
+            this.algorithm = algorithm;
+            this.buildMillis = buildMillis;
+            this.documents = (long) IndexRebuilder.number(info.get("num_docs"));
+            this.indexMegabytes = SchemaVariantHarness.indexMemoryMegabytes(info);
+            this.vectorMegabytes = IndexRebuilder.number(info.get("vector_index_sz_mb"));
+        }
+
+        @Override
+        public String toString(){
+            return String.format("%-6s %10.1f %10d %10.2f %10.2f %10.1f %10.1f %10.1f %10.1f %10s %10s",
+                    algorithm,buildMillis/1000.0,documents,indexMegabytes,vectorMegabytes,
+                    LatencyStats.micros(knnLatencies.getValueAtPercentile(50.0)),LatencyStats.micros(knnLatencies.getValueAtPercentile(99.0)),
+                    LatencyStats.micros(hybridLatencies.getValueAtPercentile(50.0)),LatencyStats.micros(hybridLatencies.getValueAtPercentile(99.0)),
+                    format(knnRecall),format(hybridRecall));
+        }
+
+        // NaN: FLAT found nothing to recall (e.g. the hybrid filter matched no document)
+        private static String format(double recall){
+            return Double.isNaN(recall)?"-":String.format("%.3f",recall);
+        }
+    }
+}
@@ -0,0 +1,418 @@
+package com.redislabs.sa.ot.jzs;
+
+import org.apache.commons.pool2.PooledObject;
+import org.apache.commons.pool2.impl.DefaultPooledObject;
+import redis.clients.jedis.CommandArguments;
+import redis.clients.jedis.Connection;
+import redis.clients.jedis.ConnectionFactory;
+import redis.clients.jedis.DefaultJedisSocketFactory;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.JedisClientConfig;
+import redis.clients.jedis.JedisSocketFactory;
+import redis.clients.jedis.args.Rawable;
+
+import javax.management.ObjectName;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Counts the bytes sent and received and the round trips made by the connections ConnectionHelper creates -
+ * in total (counted at the socket) and per command type and per named query.
+ *  - a command's bytes sent are the size of its RESP encoding, its bytes received are what was read from the socket while its reply was parsed
+ *  - a round trip is counted for the first reply read after the client flushed - a pipeline of 50 commands is 1 round trip
+ *  - queries are named by running them through labelled(executor) (or label()) - the commands they send are counted under that name
+ * Within a pipeline one socket read can pull in the start of the next reply, so per-command received bytes are approximate
+ * there - single commands and the totals are exact. Bytes that no command accounts for (HELLO/AUTH while connecting,
+ * pub/sub messages) only show up in the totals.
+ * Only standalone connections are metered - the cluster connection pools are created inside Jedis.
+ */
+class WireMetrics implements WireMetricsMBean {
+
+    static final String OBJECT_NAME = "com.redislabs.sa.ot.jzs:type=WireMetrics";
+    static final String TABLE_HEADER = String.format("%-28s %10s %11s %14s %14s %12s %12s",
+            "name","commands","round trips","sent(bytes)","received(bytes)","sent/cmd","received/cmd");
+    private static final String UNLABELLED = "(no query)";
+
+    private final LongAdder socketBytesSent = new LongAdder();
+    private final LongAdder socketBytesReceived = new LongAdder();
+    private final LongAdder connectionsOpened = new LongAdder();
+    private final Counters total = new Counters();
+    private final Map<String,Counters> byCommand = new ConcurrentHashMap<>();
+    private final Map<String,Counters> byQuery = new ConcurrentHashMap<>();
+    private final ThreadLocal<String> currentQuery = new ThreadLocal<>();
+
+    WireMetrics registerMBean(){
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this,new ObjectName(OBJECT_NAME));
+        }catch(Exception e){
+            System.out.println("Could not register the wire metrics MBean: "+e.getMessage());
+        }
+        return this;
+    }
+
+    /**
+     * @param address
+     * @param clientConfig
+     * @return a factory for pooled connections whose traffic is counted here
+     */
+    ConnectionFactory connectionFactory(HostAndPort address,JedisClientConfig clientConfig){
+        return new ConnectionFactory(address,clientConfig){
+            @Override
+            public PooledObject<Connection> makeObject(){
+                MeteredConnection connection = new MeteredConnection(new CountingSocketFactory(address,clientConfig),clientConfig);
+                try {
+                    connection.connect();
+                }catch(RuntimeException re){
+                    connection.close();
+                    throw re;
+                }
+                return new DefaultPooledObject<>(connection);
+            }
+        };
+    }
+
+    /**
+     * @param executor
+     * @return an executor that counts the commands of each query under the query's name
+     */
+    QueryExecutor labelled(QueryExecutor executor){
+        return (query,indexName) -> label(query.name,() -> executor.execute(query,indexName));
+    }
+
+    /**
+     * Counts the commands the calling thread sends while running work under the given name
+     * @param name
+     * @param work
+     * @return what work returned
+     */
+    <T> T label(String name,Supplier<T> work){
+        String previous = currentQuery.get();
+        currentQuery.set(name);
+        try {
+            return work.get();
+        }finally {
+            if(previous==null){
+                currentQuery.remove();
+            }else {
+                currentQuery.set(previous);
+            }
+        }
+    }
+
+    void printSummary(){
+        System.out.println(String.format("\n\tNetwork cost: %d bytes sent, %d bytes received over %d connection(s) - %d commands in %d round trips\n",
+                getBytesSent(),getBytesReceived(),getConnectionsOpened(),getCommands(),getRoundTrips()));
+        printTable("by command",byCommand);
+        printTable("by query",byQuery);
+        long unaccountedSent = getBytesSent()-total.sent.sum();
+        long unaccountedReceived = getBytesReceived()-total.received.sum();
+        if(unaccountedSent>0||unaccountedReceived>0){
+            System.out.println("\n"+unaccountedSent+" bytes sent and "+unaccountedReceived+" bytes received were not part of a counted command (connection set-up, pub/sub messages)");
+        }
+    }
+
+    private static void printTable(String title,Map<String,Counters> counters){
+        System.out.println("\n"+title+":");
+        System.out.println(TABLE_HEADER);
+        List<String> names = new ArrayList<>(counters.keySet());
+        names.sort((a,b) -> Long.compare(counters.get(b).received.sum(),counters.get(a).received.sum()));
+        for(String name:names){
+            System.out.println(counters.get(name).row(name));
+        }
+    }
+
+    private void record(String command,String query,long sent,long received,boolean roundTrip){
+        String queryName = query==null?UNLABELLED:query;
+        for(Counters c:new Counters[]{total,byCommand.computeIfAbsent(command,k -> new Counters()),
+                byQuery.computeIfAbsent(queryName,k -> new Counters())}){
+            c.commands.increment();
+            c.sent.add(sent);
+            c.received.add(received);
+            if(roundTrip){
+                c.roundTrips.increment();
+            }
+        }
+    }
+
+    // the exact size of the RESP array a command is sent as
+    private static long encodedSize(CommandArguments args){
+        long size = 1+digits(args.size())+2;
+        for(Rawable arg:args){
+            int length = arg.getRaw().length;
+            size+=1+digits(length)+2+length+2;
+        }
+        return size;
+    }
+
+    private static int digits(int n){
+        return Integer.toString(n).length();
+    }
+
+    @Override
+    public long getBytesSent(){
+        return socketBytesSent.sum();
+    }
+
+    @Override
+    public long getBytesReceived(){
+        return socketBytesReceived.sum();
+    }
+
+    @Override
+    public long getCommands(){
+        return total.commands.sum();
+    }
+
+    @Override
+    public long getRoundTrips(){
+        return total.roundTrips.sum();
+    }
+
+    @Override
+    public long getConnectionsOpened(){
+        return connectionsOpened.sum();
+    }
+
+    private static class Counters{
+        final LongAdder commands = new LongAdder();
+        final LongAdder roundTrips = new LongAdder();
+        final LongAdder sent = new LongAdder();
+        final LongAdder received = new LongAdder();
+
+        String row(String name){
+            long n = commands.sum();
+            return String.format("%-28s %10d %11d %14d %14d %12.1f %12.1f",name,n,roundTrips.sum(),sent.sum(),received.sum(),
+                    n>0?sent.sum()/(double)n:0.0,n>0?received.sum()/(double)n:0.0);
+        }
+    }
+
+    private static class SentCommand{
+        final String command;
+        final String query;
+        final long bytes;
+
+        SentCommand(String command,String query,long bytes){
+            this.command = command;
+            this.query = query;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * A pooled connection is only used by one thread at a time - so the per-connection state needs no locking
+     */
+    private class MeteredConnection extends Connection{
+        // set after the super constructor has run - commands sent while connecting are only counted at the socket
+        private final CountingSocketFactory sockets;
+        private final ArrayDeque<SentCommand> awaitingReply;
+        private boolean flushed = false;
+
+        MeteredConnection(CountingSocketFactory sockets,JedisClientConfig clientConfig){
+            super(sockets,clientConfig);
+            this.sockets = sockets;
+            this.awaitingReply = new ArrayDeque<>();
+        }
+
+        @Override
+        public void sendCommand(CommandArguments args){
+            super.sendCommand(args);
+            if(awaitingReply!=null){
+                String command = new String(args.getCommand().getRaw(),StandardCharsets.UTF_8);
+                awaitingReply.add(new SentCommand(command,currentQuery.get(),encodedSize(args)));
+            }
+        }
+
+        @Override
+        protected void flush(){
+            super.flush();
+            flushed = true;
+        }
+
+        @Override
+        protected Object readProtocolWithCheckingBroken(){
+            if(awaitingReply==null){
+                return super.readProtocolWithCheckingBroken();
+            }
+            long before = sockets.received();
+            try {
+                return super.readProtocolWithCheckingBroken();
+            }finally {
+                SentCommand sent = awaitingReply.poll();
+                if(sent!=null){ // null for pub/sub messages
+                    record(sent.command,sent.query,sent.bytes,sockets.received()-before,flushed);
+                    flushed = false;
+                }
+            }
+        }
+
+        @Override
+        public void disconnect(){
+            super.disconnect();
+            if(awaitingReply!=null){
+                awaitingReply.clear(); // replies that never came
+            }
+        }
+    }
+
+    private class CountingSocketFactory implements JedisSocketFactory{
+        private final DefaultJedisSocketFactory delegate;
+        private volatile CountingSocket socket = null;
+
+        CountingSocketFactory(HostAndPort address,JedisClientConfig clientConfig){
+            this.delegate = new DefaultJedisSocketFactory(address,clientConfig);
+        }
+
+        @Override
+        public Socket createSocket(){
+            socket = new CountingSocket(delegate.createSocket());
+            connectionsOpened.increment();
+            return socket;
+        }
+
+        long received(){
+            CountingSocket current = socket;
+            return current==null?0:current.received;
+        }
+    }
+
+    /**
+     * Hands out counting streams over a connected socket and passes the calls Connection makes through to it
+     */
+    private class CountingSocket extends Socket{
+        private final Socket socket;
+        private final InputStream in;
+        private final OutputStream out;
+        private long received = 0;
+
+        CountingSocket(Socket socket){
+            this.socket = socket;
+            try {
+                this.in = new FilterInputStream(socket.getInputStream()){
+                    @Override
+                    public int read() throws IOException{
+                        int b = super.read();
+                        if(b>=0){
+                            count(1);
+                        }
+                        return b;
+                    }
+
+                    @Override
+                    public int read(byte[] b,int off,int len) throws IOException{
+                        int n = super.read(b,off,len);
+                        if(n>0){
+                            count(n);
+                        }
+                        return n;
+                    }
+                };
+                this.out = new FilterOutputStream(socket.getOutputStream()){
+                    @Override
+                    public void write(int b) throws IOException{
+                        out.write(b);
+                        socketBytesSent.increment();
+                    }
+
+                    @Override
+                    public void write(byte[] b,int off,int len) throws IOException{
+                        out.write(b,off,len);
+                        socketBytesSent.add(len);
+                    }
+                };
+            }catch(IOException ioe){
+                throw new IllegalStateException(ioe);
+            }
+        }
+
+        private void count(int n){
+            received+=n;
+            socketBytesReceived.add(n);
+        }
+
+        @Override
+        public InputStream getInputStream(){
+            return in;
+        }
+
+        @Override
+        public OutputStream getOutputStream(){
+            return out;
+        }
+
+        @Override
+        public int getSoTimeout() throws SocketException{
+            return socket.getSoTimeout();
+        }
+
+        @Override
+        public void setSoTimeout(int timeout) throws SocketException{
+            socket.setSoTimeout(timeout);
+        }
+
+        @Override
+        public boolean isConnected(){
+            return socket.isConnected();
+        }
+
+        @Override
+        public boolean isBound(){
+            return socket.isBound();
+        }
+
+        @Override
+        public boolean isClosed(){
+            return socket.isClosed();
+        }
+
+        @Override
+        public boolean isInputShutdown(){
+            return socket.isInputShutdown();
+        }
+
+        @Override
+        public boolean isOutputShutdown(){
+            return socket.isOutputShutdown();
+        }
+
+        @Override
+        public InetAddress getInetAddress(){
+            return socket.getInetAddress();
+        }
+
+        @Override
+        public int getPort(){
+            return socket.getPort();
+        }
+
+        @Override
+        public SocketAddress getRemoteSocketAddress(){
+            return socket.getRemoteSocketAddress();
+        }
+
+        @Override
+        public synchronized void close() throws IOException{
+            socket.close();
+        }
+
+        @Override
+        public String toString(){
+            return socket.toString();
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.redislabs.sa.ot.jzs;
+
+/**
+ * What WireMetrics exposes through JMX (com.redislabs.sa.ot.jzs:type=WireMetrics)
+ * Byte counts are what went through the sockets of the metered connections since the program started
+ */
+public interface WireMetricsMBean {
+
+    long getBytesSent();
+
+    long getBytesReceived();
+
+    long getCommands();
+
+    long getRoundTrips();
+
+    long getConnectionsOpened();
+}
@@ -0,0 +1,92 @@
+package com.redislabs.sa.ot.jzs;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Typed form of the (parts of) an activity document returned by a search - filled in by ActivityResultDecoder
+ * Anything the query did not return is left null / empty (cost is NaN)
+ * Times and hosts are matched up by position: when a query returns e.g. $.times[*].civilian and $.times[*].military
+ * as separate fields the n-th civilian and the n-th military time end up in the same EventTime
+ */
+class ZewActivity {
+
+    String key;
+    String eventName;
+    String location;
+    double cost = Double.NaN;
+    int numberOfContacts = 0;
+    final List<String> days = new ArrayList<>(7);
+    final List<EventTime> times = new ArrayList<>(3);
+    final List<EventTime> matchedTimes = new ArrayList<>(2);
+    final List<Host> hosts = new ArrayList<>(3);
+    final List<Host> matchedHosts = new ArrayList<>(2);
+
+    static EventTime timeAt(List<EventTime> times,int index){
+        while(times.size()<=index){
+            times.add(new EventTime());
+        }
+        return times.get(index);
+    }
+
+    static Host hostAt(List<Host> hosts,int index){
+        while(hosts.size()<=index){
+            hosts.add(new Host());
+        }
+        return hosts.get(index);
+    }
+
+    @Override
+    public String toString(){
+        StringBuilder sb = new StringBuilder(key==null?"?":key).append(" -> ");
+        if(eventName!=null){
+            sb.append("event_name: ").append(eventName).append(" | ");
+        }
+        if(location!=null){
+            sb.append("location: ").append(location).append(" | ");
+        }
+        if(!Double.isNaN(cost)){
+            sb.append("cost: ").append(cost).append(" | ");
+        }
+        if(!days.isEmpty()){
+            sb.append("days: ").append(days).append(" | ");
+        }
+        if(!times.isEmpty()){
+            sb.append("times: ").append(times).append(" | ");
+        }
+        if(!matchedTimes.isEmpty()){
+            sb.append("matched_times: ").append(matchedTimes).append(" | ");
+        }
+        if(numberOfContacts>0){
+            sb.append("number_of_contacts: ").append(numberOfContacts).append(" | ");
+        }
+        if(!hosts.isEmpty()){
+            sb.append("hosts: ").append(hosts).append(" | ");
+        }
+        if(!matchedHosts.isEmpty()){
+            sb.append("matched_hosts: ").append(matchedHosts).append(" | ");
+        }
+        return sb.toString();
+    }
+
+    static class EventTime{
+        String military;
+        String civilian;
+
+        @Override
+        public String toString(){
+            return (military==null?"":military)+"/"+(civilian==null?"":civilian);
+        }
+    }
+
+    static class Host{
+        String name;
+        String phone;
+        String email;
+
+        @Override
+        public String toString(){
+            return "{"+(name==null?"":name)+", "+(phone==null?"":phone)+", "+(email==null?"":email)+"}";
+        }
+    }
+}
@@ -0,0 +1,342 @@
+package com.redislabs.sa.ot.jzs;
+
+import redis.clients.jedis.CommandArguments;
+import redis.clients.jedis.UnifiedJedis;
+import redis.clients.jedis.search.FieldName;
+import redis.clients.jedis.search.Query;
+import redis.clients.jedis.search.SearchProtocol;
+import redis.clients.jedis.search.SearchResult;
+import redis.clients.jedis.search.aggr.AggregationBuilder;
+import redis.clients.jedis.search.aggr.AggregationResult;
+import redis.clients.jedis.search.aggr.Reducer;
+import redis.clients.jedis.search.aggr.Reducers;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The set of queries this example fires against the idxa_zew_events alias
+ * They are defined once here so the single-shot test in Main and the benchmark modes all run exactly the same commands
+ * (see the comments in Main.testJSONSearchQuery() for an explanation of what each query demonstrates)
+ * Query and AggregationBuilder objects are only read when a command is built - so one instance can be shared by many threads
+ */
+class ZewQueries {
+
+    static final String DIALECT3 = "Dialect3";
+    static final String QUERY1 = "Query1";
+    static final String QUERY2 = "Query2";
+    static final String QUERY3 = "Query3";
+    static final String AGGREGATION = "Aggregation";
+    static final String VECTOR_SCORE = "vector_score";
+
+    static final String DIALECT3_QUERY = "@contact_name:(Chadw*)";
+    static final String QUERY1_QUERY = "@days:{Sat} @days:{Sun} @times:{1400,2000} -@location:(House)";
+    static final String QUERY2_QUERY = "@contact_name:(Jo* Hu*) @times:{2000}";
+    static final String QUERY3_QUERY = "@cost:[-inf 5.00]";
+    static final String AGGREGATION_QUERY = "@event_name:Petting @cost:[1.00 +inf] " +
+            "@location:Gorilla @location:East -@days:{Tue} -@days:{Wed} -@days:{Thu}";
+    // the same two queries for an index where location is a TAG - the whole location is one tag, so words are matched with wildcards
+    static final String QUERY1_TAG_LOCATION_QUERY = "@days:{Sat} @days:{Sun} @times:{1400,2000} -@location:{*House*}";
+    static final String AGGREGATION_TAG_LOCATION_QUERY = "@event_name:Petting @cost:[1.00 +inf] " +
+            "@location:{Gorilla*} @location:{*East} -@days:{Tue} -@days:{Wed} -@days:{Thu}";
+    static final String AGGREGATION_DISPLAY = "FT.AGGREGATE idxa_zew_events \"@event_name:Petting @cost:[1.00 +inf] @location:Gorilla @location:East -@days:{Tue Wed Thu}\" GROUPBY 3 @cost @location @event_name REDUCE COUNT 0 AS event_match_count FILTER @cost <= 9";
+
+    // This query does not return the whole document but will return
+    // a specified subsection of the JSON document as well as individual indexed attributes:
+    static Query dialect3Query(int limit,int dialect){
+        return dialect3Query(DIALECT3_QUERY,limit,dialect);
+    }
+
+    // the same RETURN fields over a different query string (used by the query templates)
+    static Query dialect3Query(String queryString,int limit,int dialect){
+        return dialect3Query(queryString,true,limit,dialect);
+    }
+
+    // matched_party_by_name follows DIALECT3_QUERY's contact name prefix - the Dialect3 template does not filter on contact_name so it leaves the field out
+    static Query dialect3Query(String queryString,boolean matchedParty,int limit,int dialect){
+        List<FieldName> fields = new ArrayList<>();
+        fields.add(FieldName.of("event_name")); // This is a simple field from the root of the JSON doc (it is aliased in the index)
+        fields.add(FieldName.of("$.location").as("EVENT_LOCATION")); // This is a simple field from the root of the JSON doc
+        if(matchedParty){
+            fields.add(FieldName.of("$.responsible_parties.hosts[?(@.name =~ \"(?i)^Chadw\")]") // note the ability to partially match with regex
+                    .as("matched_party_by_name")); // this demonstrates the discreet and aligned response capability
+        }
+        return new Query(queryString).returnFields(fields.toArray(new FieldName[0])).limit(0,limit).dialect(dialect);
+    }
+
+    static Query query1(int limit,int dialect){
+        return query1(QUERY1_QUERY,limit,dialect);
+    }
+
+    static Query query1(String queryString,int limit,int dialect){
+        return query1(queryString,true,limit,dialect);
+    }
+
+    // matched_times names the times of QUERY1_QUERY - the Query1 template picks its times per call so it leaves the field out
+    static Query query1(String queryString,boolean matchedTimes,int limit,int dialect){
+        List<FieldName> fields = new ArrayList<>();
+        fields.add(FieldName.of("location")); // only a single value exists in a document
+        if(matchedTimes){
+            fields.add(FieldName.of("$.times[?(@.military==\"1400\" || @.military==\"2000\")]").as("matched_times"));
+        }
+        fields.add(FieldName.of("$.times[*].civilian").as("civilian")); //  dialect determines multiple or single results
+        fields.add(FieldName.of("$.days").as("days")); // multiple days may be returned
+        fields.add(FieldName.of("$.responsible_parties.hosts.[*].email").as("contact_email")); //  dialect determines multiple or single results
+        fields.add(FieldName.of("$.responsible_parties.hosts.[*].phone").as("contact_phone")); //  dialect determines multiple or single results
+        fields.add(FieldName.of("event_name")); // only a single value exists in a document
+        fields.add(FieldName.of("$.times[*].military").as("military")); //  dialect determines multiple or single results
+        fields.add(FieldName.of("$.description"));
+        return new Query(queryString).returnFields(fields.toArray(new FieldName[0])).limit(0,limit).dialect(dialect);
+    }
+
+    static Query query2(int limit,int dialect){
+        return query2(QUERY2_QUERY,limit,dialect);
+    }
+
+    static Query query2(String queryString,int limit,int dialect){
+        return query2(queryString,true,limit,dialect);
+    }
+
+    // matched_times names the time of QUERY2_QUERY - the Query2 template picks its time per call so it leaves the field out
+    static Query query2(String queryString,boolean matchedTimes,int limit,int dialect){
+        List<FieldName> fields = new ArrayList<>();
+        fields.add(FieldName.of("location")); // only a single value exists in a document
+        fields.add(FieldName.of("$.times[*].civilian").as("first_event_time")); // Dialect determines if this is a single result
+        fields.add(FieldName.of("$.times").as("all_times")); // multiple times may be returned when not filtered
+        if(matchedTimes){
+            fields.add(FieldName.of("$.times[?(@.military==\"2000\")]").as("matched_times")); //Dialect determines if this is a single result
+        }
+        fields.add(FieldName.of("$.days").as("days")); // multiple days may be returned
+        fields.add(FieldName.of("$.responsible_parties[*].hosts").as("hosts")); //Dialect determines if this is a single result
+        fields.add(FieldName.of("event_name")); // only a single value exists in a document
+        fields.add(FieldName.of("$.responsible_parties.number_of_contacts").as("hosts_size"));
+        return new Query(queryString).returnFields(fields.toArray(new FieldName[0])).limit(0,limit).dialect(dialect);
+    }
+
+    static Query query3(int limit,int dialect){
+        return query3(QUERY3_QUERY,limit,dialect);
+    }
+
+    static Query query3(String queryString,int limit,int dialect){
+        return new Query(queryString)
+                .returnFields(
+                        FieldName.of("location"), // only a single value exists in a document
+                        FieldName.of("$.times.[*].civilian").as("all_times"), //  dialect determines multiple or single results
+                        FieldName.of("$.days").as("days"), // multiple days may be returned
+                        FieldName.of("event_name"), // only a single value exists in a document
+                        FieldName.of("$.cost").as("cost_in_us_dollars")
+                ).limit(0,limit).dialect(dialect);
+    }
+
+    static AggregationBuilder aggregation(int dialect){
+        return aggregation(AGGREGATION_QUERY,dialect);
+    }
+
+    /**
+     * @param queryString
+     * @param dialect 0 leaves DIALECT out (the query templates add it themselves)
+     * @return the aggregation's GROUPBY, REDUCE and FILTER over a different query string
+     */
+    static AggregationBuilder aggregation(String queryString,int dialect){
+        ArrayList<String> groupByFields = new ArrayList<>();
+        groupByFields.add("@cost");
+        groupByFields.add("@location");
+        groupByFields.add("@event_name");
+        ArrayList<Reducer> reducerCollection = new ArrayList<>();
+        reducerCollection.add(Reducers.count().as("event_match_count"));
+        AggregationBuilder aggregation = new AggregationBuilder(queryString)
+                .groupBy(groupByFields,reducerCollection).filter("@cost <= 9");
+        return dialect>0 ? aggregation.dialect(dialect) : aggregation;
+    }
+
+    /**
+     * The nearest activities to a vector - among all activities or only among those matching a filter (a hybrid query)
+     * @param filter * for a pure KNN query
+     * @param vector
+     * @param k
+     * @param efRuntime 0 leaves EF_RUNTIME out (FLAT indexes do not accept it)
+     * @return the query - its results are sorted by VECTOR_SCORE, the cosine distance (smallest first)
+     */
+    static Query knn(String filter,float[] vector,int k,int efRuntime){
+        Query query = new Query("("+filter+")=>[KNN $K @"+ActivityEmbedding.FIELD+" $BLOB"+(efRuntime>0?" EF_RUNTIME $EF":"")+" AS "+VECTOR_SCORE+"]")
+                .addParam("K",k)
+                .addParam("BLOB",ActivityEmbedding.toBlob(vector));
+        if(efRuntime>0){
+            query.addParam("EF",efRuntime);
+        }
+        return query.returnFields(
+                        FieldName.of("event_name"),
+                        FieldName.of("location"),
+                        FieldName.of("$.description").as("description"),
+                        FieldName.of(VECTOR_SCORE)
+                ).setSortBy(VECTOR_SCORE,true).limit(0,k).dialect(2); // vector queries need dialect 2
+    }
+
+    /**
+     * @param limit
+     * @param dialect
+     * @return all the queries in the order they are fired by Main.testJSONSearchQuery()
+     */
+    static List<NamedQuery> all(int limit,int dialect){
+        List<NamedQuery> queries = new ArrayList<>();
+        queries.add(new NamedQuery(DIALECT3,DIALECT3_QUERY,dialect3Query(limit,dialect)));
+        queries.add(new NamedQuery(QUERY1,QUERY1_QUERY,query1(limit,dialect)));
+        queries.add(new NamedQuery(QUERY2,QUERY2_QUERY,query2(limit,dialect)));
+        queries.add(new NamedQuery(QUERY3,QUERY3_QUERY,query3(limit,dialect)));
+        queries.add(new NamedQuery(AGGREGATION,AGGREGATION_DISPLAY,aggregation(dialect)));
+        return queries;
+    }
+
+    /**
+     * @param limit
+     * @param dialect at least 2 is used - TAG wildcards need it
+     * @return Query1 and the aggregation written for a location TAG field instead of TEXT, named like the queries they replace
+     */
+    static List<NamedQuery> tagLocation(int limit,int dialect){
+        List<NamedQuery> queries = new ArrayList<>();
+        queries.add(new NamedQuery(QUERY1,QUERY1_TAG_LOCATION_QUERY,query1(QUERY1_TAG_LOCATION_QUERY,limit,Math.max(2,dialect))));
+        queries.add(new NamedQuery(AGGREGATION,"FT.AGGREGATE idxa_zew_events \""+AGGREGATION_TAG_LOCATION_QUERY+
+                "\" GROUPBY 3 @cost @location @event_name REDUCE COUNT 0 AS event_match_count FILTER @cost <= 9",
+                aggregation(AGGREGATION_TAG_LOCATION_QUERY,Math.max(2,dialect))));
+        return queries;
+    }
+
+    /**
+     * Parameterized versions of the queries above - the values are drawn from the JsonZewActivityBuilder vocabularies
+     * so each call asks for something different (Query2 and Dialect3 vary the species instead of the contact name prefix:
+     * a parameter cannot stand in for the prefix of a prefix query)
+     * @param limit
+     * @param dialect
+     * @return the templates, named like the queries they stand in for so the same --querymix applies
+     */
+    static List<NamedQuery> templates(int limit,int dialect){
+        String[] species = singleWords(JsonZewActivityBuilder.animalSpecies);
+        String[] costs = new String[JsonZewActivityBuilder.costsOverZero.length+1];
+        costs[0] = "0";
+        for(int i=0;i<JsonZewActivityBuilder.costsOverZero.length;i++){
+            costs[i+1] = String.valueOf(JsonZewActivityBuilder.costsOverZero[i]);
+        }
+        List<String[]> costRanges = new ArrayList<>();
+        for(int low=0;low<costs.length;low++){
+            for(int high=low;high<costs.length;high++){
+                costRanges.add(new String[]{costs[low],costs[high]});
+            }
+        }
+        List<String[]> dayPairs = new ArrayList<>();
+        for(int first=0;first<JsonZewActivityBuilder.DAYS_OF_WEEK.length;first++){
+            for(int second=first+1;second<JsonZewActivityBuilder.DAYS_OF_WEEK.length;second++){
+                dayPairs.add(new String[]{JsonZewActivityBuilder.DAYS_OF_WEEK[first],JsonZewActivityBuilder.DAYS_OF_WEEK[second]});
+            }
+        }
+        List<String[]> timePairs = new ArrayList<>();
+        for(int first=0;first<JsonZewActivityBuilder.militaryTimes.length;first++){
+            for(int second=first+1;second<JsonZewActivityBuilder.militaryTimes.length;second++){
+                timePairs.add(new String[]{JsonZewActivityBuilder.militaryTimes[first],JsonZewActivityBuilder.militaryTimes[second]});
+            }
+        }
+        List<NamedQuery> templates = new ArrayList<>();
+        String dialect3Template = "@event_name:$species @location:$direction";
+        templates.add(new QueryTemplate(DIALECT3,dialect3Template,dialect3Query(dialect3Template,false,limit,0),Math.max(3,dialect))
+                .param("species",species)
+                .param("direction",JsonZewActivityBuilder.locationDirections));
+        String query1Template = "@days:{$day1} @days:{$day2} @times:{$time1 | $time2} -@location:$location_type";
+        templates.add(new QueryTemplate(QUERY1,query1Template,query1(query1Template,false,limit,0),dialect)
+                .params(new String[]{"day1","day2"},dayPairs.toArray(new String[0][]))
+                .params(new String[]{"time1","time2"},timePairs.toArray(new String[0][]))
+                .param("location_type",singleWords(JsonZewActivityBuilder.locationTypes)));
+        String query2Template = "@event_name:$species @times:{$time}";
+        templates.add(new QueryTemplate(QUERY2,query2Template,query2(query2Template,false,limit,0),dialect)
+                .param("species",species)
+                .param("time",JsonZewActivityBuilder.militaryTimes));
+        String query3Template = "@cost:[$min_cost $max_cost]";
+        templates.add(new QueryTemplate(QUERY3,query3Template,query3(query3Template,limit,0),dialect)
+                .params(new String[]{"min_cost","max_cost"},costRanges.toArray(new String[0][])));
+        String aggregationTemplate = "@event_name:$activity @cost:[$min_cost +inf] @location:$species @location:$direction -@days:{$day}";
+        templates.add(new QueryTemplate(AGGREGATION,
+                "FT.AGGREGATE \""+aggregationTemplate+"\" GROUPBY 3 @cost @location @event_name REDUCE COUNT 0 AS event_match_count FILTER @cost <= 9",
+                aggregation(aggregationTemplate,0),dialect)
+                .param("activity",singleWords(JsonZewActivityBuilder.activityTypes))
+                .param("min_cost",costs)
+                .param("species",species)
+                .param("direction",JsonZewActivityBuilder.locationDirections)
+                .param("day",JsonZewActivityBuilder.DAYS_OF_WEEK));
+        return templates;
+    }
+
+    // a multi-word value passed as a parameter is one term - it would never match the separately indexed words
+    private static String[] singleWords(String[] values){
+        List<String> words = new ArrayList<>();
+        for(String value:values){
+            if(value.indexOf(' ')<0){
+                words.add(value);
+            }
+        }
+        return words.toArray(new String[0]);
+    }
+
+    /**
+     * A search or an aggregation along with the short name used when reporting on it
+     */
+    static class NamedQuery{
+        final String name;
+        final String displayQuery;
+        final Query query;
+        final AggregationBuilder aggregation;
+
+        NamedQuery(String name,String displayQuery,Query query){
+            this.name = name;
+            this.displayQuery = displayQuery;
+            this.query = query;
+            this.aggregation = null;
+        }
+
+        NamedQuery(String name,String displayQuery,AggregationBuilder aggregation){
+            this.name = name;
+            this.displayQuery = displayQuery;
+            this.query = null;
+            this.aggregation = aggregation;
+        }
+
+        boolean isAggregation(){
+            return aggregation!=null;
+        }
+
+        /**
+         * Fires the query and returns the SearchResult or AggregationResult
+         * @param jedis
+         * @param indexName
+         * @return Object
+         */
+        Object execute(UnifiedJedis jedis,String indexName){
+            return isAggregation() ? jedis.ftAggregate(indexName,aggregation) : jedis.ftSearch(indexName,query);
+        }
+
+        /**
+         * @param indexName
+         * @return the same FT.SEARCH / FT.AGGREGATE command Jedis sends for execute()
+         */
+        CommandArguments command(String indexName){
+            if(isAggregation()){
+                return new CommandArguments(SearchProtocol.SearchCommand.AGGREGATE).add(indexName).addObjects(aggregation.getArgs());
+            }
+            return new CommandArguments(SearchProtocol.SearchCommand.SEARCH).add(indexName).addParams(query);
+        }
+
+        /**
+         * Decodes a raw reply to command() the same way Jedis does for ftSearch / ftAggregate
+         * @param rawReply
+         * @return SearchResult or AggregationResult
+         */
+        Object decode(Object rawReply){
+            if(isAggregation()){
+                return new AggregationResult(rawReply);
+            }
+            return new SearchResult.SearchResultBuilder(!query.getNoContent(),query.getWithScores(),query.getWithPayloads(),true).build(rawReply);
+        }
+
+        @Override
+        public String toString(){
+            return name+" -> "+displayQuery;
+        }
+    }
+}